@@ -12,6 +12,19 @@ interface UploadResponse {
   youtubeVideoUrl: string;
 }
 
+// Status of the background job that encodes and uploads an accepted file
+interface UploadJob {
+  jobId: number;
+  fileId: number;
+  status: string;
+  uploadedBytes: number | null;
+  youtubeVideoId: string | null;
+  youtubeVideoUrl: string | null;
+  failureReason: string | null;
+}
+
+const JOB_POLL_INTERVAL_MS = 3000;
+
 // User-friendly file info (from search results)
 interface FileInfo {
   id: number;
@@ -95,7 +108,24 @@ export const uploadFile = createAsyncThunk(
           'Content-Type': 'multipart/form-data',
         },
       });
-      return response.data as UploadResponse;
+
+      // The upload is accepted right away and encoded in the background, poll until it is done
+      const jobId = response.data.jobId as number;
+      for (;;) {
+        await new Promise(resolve => setTimeout(resolve, JOB_POLL_INTERVAL_MS));
+        const job = (await axios.get(`${API_URL}/jobs/${jobId}`)).data as UploadJob;
+        if (job.status === 'FAILED') {
+          return rejectWithValue(job.failureReason || 'Upload failed');
+        }
+        if (job.status === 'UPLOADED') {
+          return {
+            message: 'File uploaded successfully',
+            fileId: job.fileId,
+            youtubeVideoId: job.youtubeVideoId ?? '',
+            youtubeVideoUrl: job.youtubeVideoUrl ?? '',
+          } as UploadResponse;
+        }
+      }
     } catch (err: any) {
       return rejectWithValue(extractErrorMessage(err, 'Upload failed'));
     }
@@ -4,11 +4,14 @@ import com.jaimin.justStore.dto.DownloadFileResponseDto;
 import com.jaimin.justStore.dto.FileDetailResponseDto;
 import com.jaimin.justStore.dto.FileSearchResponseDto;
 import com.jaimin.justStore.dto.UploadFileRequestDto;
+import com.jaimin.justStore.dto.UploadJobResponseDto;
 import com.jaimin.justStore.service.FileService;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
 import java.time.LocalDate;
@@ -70,6 +73,9 @@ public class FileController {
         return ResponseEntity.ok(file);
     }
 
+    /**
+     * Accept a file for upload; answers 202 with the job to poll while it is encoded and uploaded.
+     */
     @PostMapping("/upload")
     public ResponseEntity<?> uploadFile(
             @ModelAttribute UploadFileRequestDto uploadRequest
@@ -84,6 +90,14 @@ public class FileController {
         }
     }
 
+    /**
+     * Status of an upload job: SPOOLED, ENCODING, UPLOADING, then UPLOADED or FAILED.
+     */
+    @GetMapping("/jobs/{id}")
+    public ResponseEntity<UploadJobResponseDto> getJob(@PathVariable Long id) {
+        return ResponseEntity.ok(fileService.getJob(id));
+    }
+
 
     @GetMapping("/download/{videoId}")
     public ResponseEntity<?> downloadFile(
@@ -97,6 +111,19 @@ public class FileController {
                 .body(responseDto);
     }
 
+    /**
+     * Download the original file as a binary stream, written while frames are still being decoded.
+     * Honors a single byte {@code Range} with 206 Partial Content, e.g. to resume a download.
+     */
+    @GetMapping("/download/{videoId}/stream")
+    public ResponseEntity<StreamingResponseBody> streamFile(
+            @PathVariable Long videoId,
+            @RequestParam(required = false) String secretKey,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range
+    ) {
+        return fileService.streamFile(videoId, secretKey, range);
+    }
+
 
 }
 
@@ -16,6 +16,7 @@ public record FileDetailResponseDto(
         Set<String> tags,
         String youtubeVideoId,
         String youtubeVideoUrl,
+        String encodingProfile,
         String status,
         boolean isEncrypted,
         LocalDateTime createdAt,
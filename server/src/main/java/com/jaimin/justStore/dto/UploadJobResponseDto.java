@@ -0,0 +1,19 @@
+package com.jaimin.justStore.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * DTO for the status of an upload job, polled after an upload is accepted.
+ * The job id is the id of the file it uploads.
+ */
+public record UploadJobResponseDto(
+        Long jobId,
+        Long fileId,
+        String status,
+        Long uploadedBytes, // Video bytes YouTube has committed, null before the upload starts
+        String youtubeVideoId,
+        String youtubeVideoUrl,
+        String failureReason,
+        LocalDateTime createdAt,
+        LocalDateTime updatedAt
+) {}
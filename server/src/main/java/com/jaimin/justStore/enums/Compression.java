@@ -0,0 +1,11 @@
+package com.jaimin.justStore.enums;
+
+/**
+ * How file content was transformed before it was encoded into the video.
+ */
+public enum Compression {
+    /* Content encoded as uploaded */
+    NONE,
+    /* Independent Deflate blocks, see BlockCompression */
+    DEFLATE
+}
@@ -0,0 +1,11 @@
+package com.jaimin.justStore.enums;
+
+/**
+ * Library that compresses rendered frames into a video.
+ */
+public enum EncoderBackend {
+    /* Pure Java H.264 encoder, single-threaded */
+    JCODEC,
+    /* FFmpeg through javacv, codec and speed/quality trade-off are configurable */
+    FFMPEG
+}
@@ -0,0 +1,117 @@
+package com.jaimin.justStore.enums;
+
+/**
+ * How payload bits are laid out in video frames.
+ * <p>
+ * A frame is a grid of square blocks of {@code blockSize} pixels. Each block carries
+ * {@code bitsPerChannel} bits on one gray channel, or on each of R, G and B separately,
+ * so a block holds {@link #getBitsPerBlock()} bits. Bits are read MSB first and blocks
+ * are filled left to right, top to bottom. Bigger blocks survive YouTube's re-encoding
+ * better; more bits per block means fewer frames for the same payload.
+ * <p>
+ * Each profile names the encoder backend it is written with by default, and the Reed-Solomon
+ * parity symbols per 255-symbol codeword it is protected with (0 = no FEC): denser profiles
+ * flip more bits in transcoding and carry more redundancy to repair them.
+ * Heights are multiples of 16 so frames map onto whole H.264 macroblocks.
+ */
+public enum EncodingProfile {
+    /* The original layout: 1 pixel = 1 bit, black/white */
+    BW_1080P(1920, 1072, 24, 1, 1, 1, EncoderBackend.JCODEC, 16),
+    BW_1080P_BLOCK2(1920, 1072, 24, 2, 1, 1, EncoderBackend.FFMPEG, 0),
+    GRAY4_1080P_BLOCK2(1920, 1072, 24, 2, 1, 2, EncoderBackend.FFMPEG, 64),
+    RGB_1080P_BLOCK4(1920, 1072, 24, 4, 3, 1, EncoderBackend.FFMPEG, 32),
+    BW_4K_BLOCK2(3840, 2160, 24, 2, 1, 1, EncoderBackend.FFMPEG, 0),
+    GRAY4_4K_BLOCK2(3840, 2160, 24, 2, 1, 2, EncoderBackend.FFMPEG, 64),
+    RGB_4K_BLOCK4(3840, 2160, 24, 4, 3, 1, EncoderBackend.FFMPEG, 32);
+
+    private final int width;
+    private final int height;
+    private final int frameRate;
+    private final int blockSize;
+    private final int channels;
+    private final int bitsPerChannel;
+    private final EncoderBackend encoderBackend;
+    private final int fecParity;
+
+    EncodingProfile(int width, int height, int frameRate, int blockSize, int channels, int bitsPerChannel,
+                    EncoderBackend encoderBackend, int fecParity) {
+        if (width % blockSize != 0 || height % blockSize != 0) {
+            throw new IllegalArgumentException("Frame size must be a multiple of the block size");
+        }
+        this.width = width;
+        this.height = height;
+        this.frameRate = frameRate;
+        this.blockSize = blockSize;
+        this.channels = channels;
+        this.bitsPerChannel = bitsPerChannel;
+        this.encoderBackend = encoderBackend;
+        this.fecParity = fecParity;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getFrameRate() {
+        return frameRate;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * 1 for gray levels (same value on R, G and B), 3 for independent R, G and B.
+     */
+    public int getChannels() {
+        return channels;
+    }
+
+    public int getBitsPerChannel() {
+        return bitsPerChannel;
+    }
+
+    /**
+     * Default encoder for this profile; decoding does not depend on it.
+     */
+    public EncoderBackend getEncoderBackend() {
+        return encoderBackend;
+    }
+
+    /**
+     * Default Reed-Solomon parity symbols per codeword; decoding reads the actual value from the video header.
+     */
+    public int getFecParity() {
+        return fecParity;
+    }
+
+    public int getBitsPerBlock() {
+        return channels * bitsPerChannel;
+    }
+
+    /**
+     * Distinct intensities per channel, e.g. 2 for black/white.
+     */
+    public int getLevels() {
+        return 1 << bitsPerChannel;
+    }
+
+    public int getColumns() {
+        return width / blockSize;
+    }
+
+    public int getRows() {
+        return height / blockSize;
+    }
+
+    /**
+     * Payload bytes carried by one data frame; leftover bits of the last blocks stay unused.
+     */
+    public int getBytesPerFrame() {
+        return (int) ((long) getColumns() * getRows() * getBitsPerBlock() / 8);
+    }
+}
@@ -0,0 +1,6 @@
+package com.jaimin.justStore.enums;
+
+public enum JobState {
+    QUEUED,
+    RUNNING // claimed by a node, until its lease expires
+}
@@ -1,7 +1,10 @@
 package com.jaimin.justStore.enums;
 
 public enum Status {
-    PENDING,
+    PENDING, // files from before upload jobs
+    SPOOLED, // accepted and waiting for a worker
+    ENCODING,
+    UPLOADING,
     UPLOADED,
     FAILED,
     DELETED
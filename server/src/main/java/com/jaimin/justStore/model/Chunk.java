@@ -0,0 +1,94 @@
+package com.jaimin.justStore.model;
+
+import com.jaimin.justStore.enums.Compression;
+import jakarta.persistence.*;
+import org.springframework.data.annotation.CreatedDate;
+import org.springframework.data.jpa.domain.support.AuditingEntityListener;
+
+import java.time.LocalDateTime;
+
+/**
+ * A content-defined chunk of some uploaded file, stored once in the video of the upload that
+ * first contained it, at {@code storedOffset} of that video's content.
+ */
+@Entity
+@Table(name = "chunks", indexes = {
+        @Index(name = "idx_chunk_fingerprint", columnList = "fingerprint"),
+        @Index(name = "idx_chunk_video", columnList = "video_file_id")
+})
+@EntityListeners(AuditingEntityListener.class)
+public class Chunk {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 64)
+    private String fingerprint; // SHA-256 of the chunk, hex
+
+    @Column(nullable = false)
+    private Integer length;
+
+    /* The upload whose video holds this chunk */
+    @ManyToOne(optional = false)
+    @JoinColumn(name = "video_file_id", nullable = false)
+    private File video;
+
+    /* Bytes of the video's content holding the chunk, decode them with decodeRange */
+    @Column(nullable = false)
+    private Long storedOffset;
+    @Column(nullable = false)
+    private Integer storedLength;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Compression compression;
+
+    @CreatedDate
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    protected Chunk() {
+    }
+
+    public Chunk(String fingerprint, int length, File video, long storedOffset, int storedLength, Compression compression) {
+        this.fingerprint = fingerprint;
+        this.length = length;
+        this.video = video;
+        this.storedOffset = storedOffset;
+        this.storedLength = storedLength;
+        this.compression = compression;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public Integer getLength() {
+        return length;
+    }
+
+    public File getVideo() {
+        return video;
+    }
+
+    public Long getStoredOffset() {
+        return storedOffset;
+    }
+
+    public Integer getStoredLength() {
+        return storedLength;
+    }
+
+    public Compression getCompression() {
+        return compression;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+}
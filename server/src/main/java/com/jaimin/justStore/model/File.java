@@ -1,6 +1,9 @@
 package com.jaimin.justStore.model;
 
+import com.jaimin.justStore.enums.Compression;
+import com.jaimin.justStore.enums.EncodingProfile;
 import com.jaimin.justStore.enums.Status;
+import com.jaimin.justStore.utils.VideoHeader;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
@@ -51,15 +54,41 @@ public class File {
     @Column(nullable = false, updatable = false)
     private String fileChecksum; // SHA-256 hash for integrity verification
 
+    /*    Video encoding      */
+    @Enumerated(EnumType.STRING)
+    @Column(length = 32) // null for files uploaded before profiles existed
+    private EncodingProfile encodingProfile;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 16) // null for files uploaded before compression existed
+    private Compression compression;
 
     /*    YouTube      */
     @Column(unique = true)
     private String youtubeVideoId;
     private  String youtubeVideoUrl;
+    @Column(length = 16) // null for videos stored before stores were selectable, which are on YouTube
+    private String videoStore;
+    @Column(length = 64) // format the video decoded from last time, * for as stored, null until it was first downloaded
+    private String videoFormat;
+    // VideoHeader version of the video or its parts; null for files from before it was recorded, which may be legacy
+    private Integer videoVersion;
     @Enumerated(EnumType.STRING)
     @Column(nullable = false)
     private Status status = Status.PENDING;
 
+    /* Checkpoint of the upload pipeline, to resume it after a crash: the spooled upload, the
+       complete encoded video, and the resumable upload session with how much of the video YouTube has committed */
+    @Column(length = 1024)
+    private String spoolPath;
+    @Column(length = 1024)
+    private String encodedVideoPath;
+    @Column(length = 2048)
+    private String uploadSessionUri;
+    private Long uploadedBytes;
+    @Column(length = 1024)
+    private String failureReason;
+
 
     @CreatedDate
     @Column(nullable = false, updatable = false)
@@ -76,7 +105,7 @@ public class File {
         this.originalFileSizeInByte = originalFileSizeInByte;
         this.originalFileType = originalFileType;
         this.tags = tags;
-
+        this.videoVersion = VideoHeader.VERSION;
     }
 
     public LocalDateTime getUpdatedAt() {
@@ -96,6 +125,22 @@ public class File {
         this.fileChecksum = fileChecksum;
     }
 
+    public EncodingProfile getEncodingProfile() {
+        return encodingProfile != null ? encodingProfile : EncodingProfile.BW_1080P;
+    }
+
+    public void setEncodingProfile(EncodingProfile encodingProfile) {
+        this.encodingProfile = encodingProfile;
+    }
+
+    public Compression getCompression() {
+        return compression != null ? compression : Compression.NONE;
+    }
+
+    public void setCompression(Compression compression) {
+        this.compression = compression;
+    }
+
     public Status getStatus() {
         return status;
     }
@@ -104,6 +149,46 @@ public class File {
         this.status = status;
     }
 
+    public String getSpoolPath() {
+        return spoolPath;
+    }
+
+    public void setSpoolPath(String spoolPath) {
+        this.spoolPath = spoolPath;
+    }
+
+    public String getEncodedVideoPath() {
+        return encodedVideoPath;
+    }
+
+    public void setEncodedVideoPath(String encodedVideoPath) {
+        this.encodedVideoPath = encodedVideoPath;
+    }
+
+    public String getUploadSessionUri() {
+        return uploadSessionUri;
+    }
+
+    public void setUploadSessionUri(String uploadSessionUri) {
+        this.uploadSessionUri = uploadSessionUri;
+    }
+
+    public Long getUploadedBytes() {
+        return uploadedBytes;
+    }
+
+    public void setUploadedBytes(Long uploadedBytes) {
+        this.uploadedBytes = uploadedBytes;
+    }
+
+    public String getFailureReason() {
+        return failureReason;
+    }
+
+    public void setFailureReason(String failureReason) {
+        this.failureReason = failureReason;
+    }
+
     public String getYoutubeVideoUrl() {
         return youtubeVideoUrl;
     }
@@ -120,6 +205,22 @@ public class File {
         this.youtubeVideoId = youtubeVideoId;
     }
 
+    public String getVideoStore() {
+        return videoStore;
+    }
+
+    public void setVideoStore(String videoStore) {
+        this.videoStore = videoStore;
+    }
+
+    public String getVideoFormat() {
+        return videoFormat;
+    }
+
+    public Integer getVideoVersion() {
+        return videoVersion;
+    }
+
     public String getSecretKeyHash() {
         return secretKeyHash;
     }
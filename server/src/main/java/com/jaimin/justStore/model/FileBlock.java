@@ -0,0 +1,62 @@
+package com.jaimin.justStore.model;
+
+import jakarta.persistence.*;
+
+/**
+ * One entry of a compressed file's block index: the block holding the file's bytes from
+ * {@code rawOffset}, stored at {@code storedOffset} of the content its video holds, so a range
+ * is decoded from the blocks covering it instead of from the whole content.
+ */
+@Entity
+@Table(name = "file_blocks", indexes = {
+        @Index(name = "idx_file_block_raw_offset", columnList = "file_id, rawOffset", unique = true)
+})
+public class FileBlock {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(optional = false, fetch = FetchType.LAZY)
+    @JoinColumn(name = "file_id", nullable = false)
+    private File file;
+
+    @Column(nullable = false)
+    private Long rawOffset;
+
+    /* Where the block's header starts, and its stored bytes, header included */
+    @Column(nullable = false)
+    private Long storedOffset;
+    @Column(nullable = false)
+    private Integer storedLength;
+
+    protected FileBlock() {
+    }
+
+    public FileBlock(File file, long rawOffset, long storedOffset, int storedLength) {
+        this.file = file;
+        this.rawOffset = rawOffset;
+        this.storedOffset = storedOffset;
+        this.storedLength = storedLength;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public Long getRawOffset() {
+        return rawOffset;
+    }
+
+    public Long getStoredOffset() {
+        return storedOffset;
+    }
+
+    public Integer getStoredLength() {
+        return storedLength;
+    }
+}
@@ -0,0 +1,61 @@
+package com.jaimin.justStore.model;
+
+import jakarta.persistence.*;
+
+/**
+ * One entry of a file's manifest: the chunk at {@code fileOffset} of the file.
+ */
+@Entity
+@Table(name = "file_chunks", indexes = {
+        @Index(name = "idx_file_chunk_sequence", columnList = "file_id, sequence", unique = true)
+})
+public class FileChunk {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(optional = false)
+    @JoinColumn(name = "file_id", nullable = false)
+    private File file;
+
+    @Column(nullable = false)
+    private Integer sequence;
+
+    @Column(nullable = false)
+    private Long fileOffset;
+
+    @ManyToOne(optional = false)
+    @JoinColumn(name = "chunk_id", nullable = false)
+    private Chunk chunk;
+
+    protected FileChunk() {
+    }
+
+    public FileChunk(File file, int sequence, long fileOffset, Chunk chunk) {
+        this.file = file;
+        this.sequence = sequence;
+        this.fileOffset = fileOffset;
+        this.chunk = chunk;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public Integer getSequence() {
+        return sequence;
+    }
+
+    public Long getFileOffset() {
+        return fileOffset;
+    }
+
+    public Chunk getChunk() {
+        return chunk;
+    }
+}
@@ -0,0 +1,107 @@
+package com.jaimin.justStore.model;
+
+import jakarta.persistence.*;
+
+/**
+ * One segment of a file whose content is too large for a single video: bytes {@code contentOffset}
+ * to {@code contentOffset + length - 1} of what the file stores, encoded and uploaded as a video of its own.
+ * <p>
+ * A file's content is what its video would hold: the compressed upload, or only its new chunks when it
+ * was deduplicated, so chunk offsets and ranges of a segmented file are read across its parts in order.
+ */
+@Entity
+@Table(name = "file_parts", indexes = {
+        @Index(name = "idx_file_part_index", columnList = "file_id, partIndex", unique = true)
+})
+public class FilePart {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(optional = false, fetch = FetchType.LAZY)
+    @JoinColumn(name = "file_id", nullable = false)
+    private File file;
+
+    @Column(nullable = false)
+    private Integer partIndex;
+
+    @Column(nullable = false)
+    private Long contentOffset;
+    @Column(nullable = false)
+    private Long length;
+
+    @Column(nullable = false, length = 64)
+    private String checksum; // SHA-256 of the segment, hex
+
+    @Column(nullable = false, unique = true)
+    private String youtubeVideoId;
+    @Column(nullable = false)
+    private String youtubeVideoUrl;
+    @Column(length = 16) // null for videos stored before stores were selectable, which are on YouTube
+    private String videoStore;
+    @Column(length = 64) // format the video decoded from last time, * for as stored, null until it was first downloaded
+    private String videoFormat;
+
+    protected FilePart() {
+    }
+
+    public FilePart(File file, int partIndex) {
+        this.file = file;
+        this.partIndex = partIndex;
+    }
+
+    /**
+     * Record the segment and the video it was uploaded as, in the named store.
+     */
+    public void uploaded(long contentOffset, long length, String checksum, String videoStore,
+                         String youtubeVideoId, String youtubeVideoUrl) {
+        this.contentOffset = contentOffset;
+        this.length = length;
+        this.checksum = checksum;
+        this.videoStore = videoStore;
+        this.youtubeVideoId = youtubeVideoId;
+        this.youtubeVideoUrl = youtubeVideoUrl;
+        this.videoFormat = null;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public Integer getPartIndex() {
+        return partIndex;
+    }
+
+    public Long getContentOffset() {
+        return contentOffset;
+    }
+
+    public Long getLength() {
+        return length;
+    }
+
+    public String getChecksum() {
+        return checksum;
+    }
+
+    public String getYoutubeVideoId() {
+        return youtubeVideoId;
+    }
+
+    public String getYoutubeVideoUrl() {
+        return youtubeVideoUrl;
+    }
+
+    public String getVideoStore() {
+        return videoStore;
+    }
+
+    public String getVideoFormat() {
+        return videoFormat;
+    }
+}
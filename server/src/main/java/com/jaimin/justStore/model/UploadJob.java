@@ -0,0 +1,81 @@
+package com.jaimin.justStore.model;
+
+import com.jaimin.justStore.enums.JobState;
+import jakarta.persistence.*;
+import org.springframework.data.annotation.CreatedDate;
+import org.springframework.data.jpa.domain.support.AuditingEntityListener;
+
+import java.time.LocalDateTime;
+
+/**
+ * The encode and upload work for one file, run by whichever node claims it first.
+ * <p>
+ * The file keeps the upload's checkpoint, progress and outcome; a job only says who runs it and until when.
+ * It is deleted once its file is uploaded or failed.
+ */
+@Entity
+@Table(name = "upload_jobs", indexes = {
+        @Index(name = "idx_upload_job_state", columnList = "state")
+})
+@EntityListeners(AuditingEntityListener.class)
+public class UploadJob {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /* One job per file, so nodes recovering the same file can't both queue it */
+    @ManyToOne(optional = false, fetch = FetchType.LAZY)
+    @JoinColumn(name = "file_id", nullable = false, unique = true)
+    private File file;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private JobState state = JobState.QUEUED;
+
+    /* Node running the job, which must renew its lease before it expires or lose the job; the lease is in UTC, set by the database */
+    @Column(length = 255)
+    private String owner;
+    private LocalDateTime leaseExpiresAt;
+    @Column(nullable = false)
+    private Integer attempts = 0;
+
+    @CreatedDate
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    protected UploadJob() {
+    }
+
+    public UploadJob(File file) {
+        this.file = file;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public JobState getState() {
+        return state;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public LocalDateTime getLeaseExpiresAt() {
+        return leaseExpiresAt;
+    }
+
+    public Integer getAttempts() {
+        return attempts;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+}
@@ -0,0 +1,19 @@
+package com.jaimin.justStore.repository;
+
+import com.jaimin.justStore.enums.Status;
+import com.jaimin.justStore.model.Chunk;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface ChunkRepository extends JpaRepository<Chunk, Long> {
+
+    // Stored copies of any of a batch of chunks, in videos that made it to YouTube
+    List<Chunk> findByFingerprintInAndVideoStatus(Collection<String> fingerprints, Status status);
+
+    // Chunks stored in a file's video
+    @Transactional
+    void deleteByVideoId(Long videoFileId);
+}
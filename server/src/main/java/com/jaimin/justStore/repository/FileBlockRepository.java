@@ -0,0 +1,16 @@
+package com.jaimin.justStore.repository;
+
+import com.jaimin.justStore.model.FileBlock;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Optional;
+
+public interface FileBlockRepository extends JpaRepository<FileBlock, Long> {
+
+    // The block holding byte rawOffset of a file; empty for files without a block index
+    Optional<FileBlock> findFirstByFileIdAndRawOffsetLessThanEqualOrderByRawOffsetDesc(Long fileId, Long rawOffset);
+
+    @Transactional
+    void deleteByFileId(Long fileId);
+}
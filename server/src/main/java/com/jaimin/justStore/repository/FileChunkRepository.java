@@ -0,0 +1,16 @@
+package com.jaimin.justStore.repository;
+
+import com.jaimin.justStore.model.FileChunk;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+public interface FileChunkRepository extends JpaRepository<FileChunk, Long> {
+
+    // A file's manifest, in file order; empty for files stored as one video
+    List<FileChunk> findByFileIdOrderBySequenceAsc(Long fileId);
+
+    @Transactional
+    void deleteByFileId(Long fileId);
+}
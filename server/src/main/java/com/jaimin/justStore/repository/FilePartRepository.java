@@ -0,0 +1,28 @@
+package com.jaimin.justStore.repository;
+
+import com.jaimin.justStore.model.FilePart;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+public interface FilePartRepository extends JpaRepository<FilePart, Long> {
+
+    // A file's segments in content order; empty for files stored as one video
+    List<FilePart> findByFileIdOrderByPartIndexAsc(Long fileId);
+
+    // Segments past the end of a file whose content got shorter when its upload was restarted
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM FilePart p WHERE p.file.id = :fileId AND p.partIndex >= :partCount")
+    int deleteBeyond(@Param("fileId") Long fileId, @Param("partCount") int partCount);
+
+    // The format a part's video decoded from, without touching the rest of the part
+    @Transactional
+    @Modifying
+    @Query("UPDATE FilePart p SET p.videoFormat = :format WHERE p.id = :id")
+    int updateVideoFormat(@Param("id") Long id, @Param("format") String format);
+}
@@ -1,11 +1,16 @@
 package com.jaimin.justStore.repository;
 
+import com.jaimin.justStore.enums.Status;
 import com.jaimin.justStore.model.File;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
@@ -15,6 +20,25 @@ public interface FileRepository extends JpaRepository<File, Long> {
     // Find all files ordered by creation date (newest first)
     List<File> findAllByOrderByCreatedAtDesc();
     
+    // Find by ID with tags loaded, for use outside a request
+    @EntityGraph(attributePaths = "tags")
+    Optional<File> findWithTagsById(Long id);
+
+    // Files in one of the given statuses
+    List<File> findByStatusIn(Collection<Status> statuses);
+
+    // Unfinished uploads no job is queued or running for, untouched since the given time
+    @Query("SELECT f FROM File f WHERE f.status IN :statuses AND f.updatedAt < :before " +
+           "AND NOT EXISTS (SELECT j FROM UploadJob j WHERE j.file = f)")
+    List<File> findStaleUploads(@Param("statuses") Collection<Status> statuses,
+                                @Param("before") LocalDateTime before);
+
+    // The format a file's video decoded from, without touching the rest of the file or its update time
+    @Transactional
+    @Modifying
+    @Query("UPDATE File f SET f.videoFormat = :format WHERE f.id = :id")
+    int updateVideoFormat(@Param("id") Long id, @Param("format") String format);
+
     // Find by YouTube Video ID
     Optional<File> findByYoutubeVideoId(String youtubeVideoId);
     
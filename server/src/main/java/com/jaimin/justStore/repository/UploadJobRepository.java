@@ -0,0 +1,79 @@
+package com.jaimin.justStore.repository;
+
+import com.jaimin.justStore.model.UploadJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface UploadJobRepository extends JpaRepository<UploadJob, Long> {
+
+    // The oldest queued job, locked until the caller's transaction ends; jobs other nodes are claiming are skipped
+    @Query(value = "SELECT * FROM upload_jobs WHERE state = 'QUEUED' ORDER BY id LIMIT 1 FOR UPDATE SKIP LOCKED",
+           nativeQuery = true)
+    Optional<UploadJob> lockNextQueued();
+
+    // The job of a file, locked until the caller's transaction ends
+    @Query(value = "SELECT * FROM upload_jobs WHERE file_id = :fileId FOR UPDATE", nativeQuery = true)
+    Optional<UploadJob> lockByFileId(@Param("fileId") Long fileId);
+
+    // Which of the jobs a node still holds, after renewing fewer leases than it runs jobs
+    @Query("SELECT j.id FROM UploadJob j WHERE j.id IN :ids AND j.owner = :owner")
+    List<Long> findIdsByOwner(@Param("ids") Collection<Long> ids, @Param("owner") String owner);
+
+    /*
+     * Lease expiry is computed and compared by the database alone, in UTC, so nodes whose clocks or
+     * time zones differ never requeue each other's healthy jobs.
+     */
+
+    // Take a job locked by lockNextQueued for a node, leased for leaseMillis from the database's clock
+    @Modifying(clearAutomatically = true)
+    @Query(value = "UPDATE upload_jobs SET state = 'RUNNING', owner = :owner, attempts = attempts + 1, " +
+                   "lease_expires_at = (now() AT TIME ZONE 'UTC') + :leaseMillis * INTERVAL '1 millisecond' " +
+                   "WHERE id = :id",
+           nativeQuery = true)
+    int claim(@Param("id") Long id, @Param("owner") String owner, @Param("leaseMillis") long leaseMillis);
+
+    // Heartbeat of a node for the jobs it is still running
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE upload_jobs SET lease_expires_at = " +
+                   "(now() AT TIME ZONE 'UTC') + :leaseMillis * INTERVAL '1 millisecond' " +
+                   "WHERE id IN (:ids) AND owner = :owner",
+           nativeQuery = true)
+    int renewLeases(@Param("ids") Collection<Long> ids,
+                    @Param("owner") String owner,
+                    @Param("leaseMillis") long leaseMillis);
+
+    // Jobs whose node stopped renewing their lease go back to the queue
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE upload_jobs SET state = 'QUEUED', owner = NULL, lease_expires_at = NULL " +
+                   "WHERE state = 'RUNNING' AND lease_expires_at < (now() AT TIME ZONE 'UTC')",
+           nativeQuery = true)
+    int requeueExpired();
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE UploadJob j SET j.state = com.jaimin.justStore.enums.JobState.QUEUED, j.owner = NULL, " +
+           "j.leaseExpiresAt = NULL WHERE j.id = :id AND j.owner = :owner")
+    int requeue(@Param("id") Long id, @Param("owner") String owner);
+
+    // A job given back by a node that is shutting down; the interrupted run does not count as an attempt
+    @Transactional
+    @Modifying
+    @Query("UPDATE UploadJob j SET j.state = com.jaimin.justStore.enums.JobState.QUEUED, j.owner = NULL, " +
+           "j.leaseExpiresAt = NULL, j.attempts = j.attempts - 1 WHERE j.id = :id AND j.owner = :owner")
+    int release(@Param("id") Long id, @Param("owner") String owner);
+
+    // Only the node still holding the job may drop it
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM UploadJob j WHERE j.id = :id AND j.owner = :owner")
+    int deleteByIdAndOwner(@Param("id") Long id, @Param("owner") String owner);
+}
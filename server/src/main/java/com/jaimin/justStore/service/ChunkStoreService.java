@@ -0,0 +1,373 @@
+package com.jaimin.justStore.service;
+
+import com.jaimin.justStore.enums.Compression;
+import com.jaimin.justStore.enums.Status;
+import com.jaimin.justStore.model.Chunk;
+import com.jaimin.justStore.model.File;
+import com.jaimin.justStore.model.FileChunk;
+import com.jaimin.justStore.repository.ChunkRepository;
+import com.jaimin.justStore.repository.FileChunkRepository;
+import com.jaimin.justStore.utils.BlockDecompressingOutputStream;
+import com.jaimin.justStore.utils.BytesToHex;
+import com.jaimin.justStore.utils.ChecksumUtil;
+import com.jaimin.justStore.utils.ContentDefinedChunker;
+import com.jaimin.justStore.utils.RangeOutputStream;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Deduplicates uploads across files: content is split into content-defined chunks, only chunks
+ * that are not stored in an uploaded video yet go into the new video, and the file is kept as a
+ * manifest of chunk references that downloads reassemble from however many videos hold them.
+ */
+@Service
+public class ChunkStoreService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChunkStoreService.class);
+
+    // Chunks in flight per compression worker: one being compressed, one waiting to be written
+    private static final int CHUNKS_PER_WORKER = 2;
+
+    private final ChunkRepository chunkRepository;
+    private final FileChunkRepository fileChunkRepository;
+    private final FilePartService filePartService;
+    private final CompressionService compressionService;
+
+    @Value("${app.dedup.enabled:false}")
+    private boolean enabled;
+
+    // Chunks looked up with one query; they are held in memory until then
+    @Value("${app.dedup.lookup-batch:16}")
+    private int lookupBatch;
+
+    @Value("${app.dedup.min-chunk:" + ContentDefinedChunker.DEFAULT_MIN_BYTES + "}")
+    private int minChunkBytes;
+
+    @Value("${app.dedup.average-chunk:" + ContentDefinedChunker.DEFAULT_AVERAGE_BYTES + "}")
+    private int averageChunkBytes;
+
+    @Value("${app.dedup.max-chunk:" + ContentDefinedChunker.DEFAULT_MAX_BYTES + "}")
+    private int maxChunkBytes;
+
+    public ChunkStoreService(ChunkRepository chunkRepository, FileChunkRepository fileChunkRepository,
+                             FilePartService filePartService, CompressionService compressionService) {
+        this.chunkRepository = chunkRepository;
+        this.fileChunkRepository = fileChunkRepository;
+        this.filePartService = filePartService;
+        this.compressionService = compressionService;
+    }
+
+    @PostConstruct
+    public void init() {
+        logger.info("Chunk deduplication {}, chunks of {}/{}/{} bytes (min/average/max)",
+                enabled ? "enabled" : "disabled", minChunkBytes, averageChunkBytes, maxChunkBytes);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Split {@code content} into chunks and write the ones not stored yet to {@code stored}, each
+     * compressed on its own with {@code compression}, ready to be encoded into one video.
+     * A chunk that repeats within the upload is written once. Chunks are looked up in batches, one
+     * query per batch, and written in file order once their batch is looked up.
+     */
+    public ChunkedUpload store(InputStream content, Compression compression, OutputStream stored) throws IOException {
+        MessageDigest fileDigest = ChecksumUtil.newDigest();
+        MessageDigest chunkDigest = ChecksumUtil.newDigest();
+        ContentDefinedChunker chunker = new ContentDefinedChunker(new DigestInputStream(content, fileDigest),
+                minChunkBytes, averageChunkBytes, maxChunkBytes);
+
+        final int queueDepth = Math.max(1, compressionService.getParallelism()) * CHUNKS_PER_WORKER;
+        final int batchSize = Math.max(1, lookupBatch);
+        byte[] buffer = new byte[chunker.getMaxBytes()];
+        List<ReadChunk> batch = new ArrayList<>(batchSize);
+        StoreState state = new StoreState(compression, stored, queueDepth);
+
+        try {
+            int length;
+            while ((length = chunker.next(buffer)) > 0) {
+                chunkDigest.update(buffer, 0, length);
+                batch.add(new ReadChunk(BytesToHex.bytesToHex(chunkDigest.digest()), Arrays.copyOf(buffer, length)));
+                if (batch.size() == batchSize) {
+                    storeBatch(batch, state);
+                    batch.clear();
+                }
+            }
+            storeBatch(batch, state);
+            while (!state.inFlight.isEmpty()) {
+                state.storedBytes += writeNext(state.inFlight, stored, state.storedBytes);
+            }
+        } finally {
+            state.inFlight.forEach(pending -> pending.encoded().cancel(true));
+        }
+
+        logger.debug("Split {} bytes into {} chunks, {} already stored, {} bytes to encode",
+                state.fileOffset, state.manifest.size(), state.reused, state.storedBytes);
+        return new ChunkedUpload(fileDigest.digest(), state.storedBytes, state.manifest);
+    }
+
+    /**
+     * Look up which chunks of a batch are stored already, with one query for the whole batch, and
+     * write the others.
+     */
+    private void storeBatch(List<ReadChunk> batch, StoreState state) throws IOException {
+        Set<String> fingerprints = new HashSet<>();
+        for (ReadChunk chunk : batch) {
+            if (!state.storedHere.containsKey(chunk.fingerprint())) {
+                fingerprints.add(chunk.fingerprint());
+            }
+        }
+        // The oldest uploaded copy of each chunk, of the same length in case of a fingerprint collision
+        Map<String, Chunk> uploaded = new HashMap<>();
+        if (!fingerprints.isEmpty()) {
+            for (Chunk chunk : chunkRepository.findByFingerprintInAndVideoStatus(fingerprints, Status.UPLOADED)) {
+                uploaded.merge(chunk.getFingerprint(), chunk, (a, b) -> a.getId() <= b.getId() ? a : b);
+            }
+        }
+
+        for (ReadChunk read : batch) {
+            final int length = read.raw().length;
+            NewChunk newChunk = state.storedHere.get(read.fingerprint());
+            Chunk existing = null;
+            if (newChunk == null) {
+                existing = uploaded.get(read.fingerprint());
+                if (existing != null && existing.getLength() != length) {
+                    existing = null;
+                }
+            }
+            if (newChunk == null && existing == null) {
+                newChunk = new NewChunk(read.fingerprint(), length, state.compression);
+                state.storedHere.put(read.fingerprint(), newChunk);
+                if (state.compression == Compression.NONE) {
+                    state.stored.write(read.raw());
+                    state.storedBytes += newChunk.written(state.storedBytes, length);
+                } else {
+                    state.inFlight.add(new PendingChunk(newChunk, compressionService.compressBlock(read.raw(), length)));
+                    while (state.inFlight.size() >= state.queueDepth) {
+                        state.storedBytes += writeNext(state.inFlight, state.stored, state.storedBytes);
+                    }
+                }
+            } else {
+                state.reused++;
+            }
+            state.manifest.add(new ManifestEntry(state.fileOffset, length, existing, newChunk));
+            state.fileOffset += length;
+        }
+    }
+
+    /**
+     * Record the chunks {@code file}'s video holds and the file's manifest. Call it once the file is
+     * saved and before it is marked uploaded, so it is never downloaded without its manifest.
+     */
+    public void saveManifest(File file, ChunkedUpload upload) {
+        Map<NewChunk, Chunk> chunks = new LinkedHashMap<>();
+        List<FileChunk> fileChunks = new ArrayList<>(upload.manifest().size());
+        for (ManifestEntry entry : upload.manifest()) {
+            Chunk chunk = entry.existing();
+            if (chunk == null) {
+                NewChunk newChunk = entry.newChunk();
+                chunk = chunks.computeIfAbsent(newChunk, stored -> new Chunk(stored.fingerprint, stored.length,
+                        file, stored.storedOffset, stored.storedLength, stored.compression));
+            }
+            fileChunks.add(new FileChunk(file, fileChunks.size(), entry.fileOffset(), chunk));
+        }
+        chunkRepository.saveAll(chunks.values());
+        fileChunkRepository.saveAll(fileChunks);
+        logger.info("Saved manifest of file {}: {} chunks, {} of them new", file.getId(), fileChunks.size(), chunks.size());
+    }
+
+    /**
+     * Drop what an interrupted upload of {@code file} saved, before it is chunked again. The chunks
+     * stored in its video are only used by itself, since only chunks of uploaded videos are reused.
+     */
+    public void discardManifest(File file) {
+        fileChunkRepository.deleteByFileId(file.getId());
+        chunkRepository.deleteByVideoId(file.getId());
+    }
+
+    /**
+     * A file's manifest in file order; empty for files stored as a single video.
+     */
+    public List<FileChunk> getManifest(File file) {
+        return fileChunkRepository.findByFileIdOrderBySequenceAsc(file.getId());
+    }
+
+    /**
+     * Write bytes {@code first} to {@code last} (inclusive) of a file from its manifest.
+     * <p>
+     * Consecutive chunks that sit back to back in the same video are decoded together, from one
+     * download of that video, so a file uploaded without duplicates costs one download as before.
+     * Only the chunks of a run that overlap the range are downloaded.
+     */
+    public void writeRange(List<FileChunk> manifest, OutputStream outputStream, long first, long last) throws Exception {
+        int start = 0;
+        while (start < manifest.size()) {
+            int end = start + 1;
+            while (end < manifest.size() && continuesRun(manifest.get(end - 1).getChunk(), manifest.get(end).getChunk())) {
+                end++;
+            }
+            // The run's chunks that overlap the range
+            int from = start;
+            while (from < end && chunkEnd(manifest.get(from)) < first) {
+                from++;
+            }
+            int to = from;
+            while (to < end && manifest.get(to).getFileOffset() <= last) {
+                to++;
+            }
+            if (from < to) {
+                FileChunk head = manifest.get(from);
+                FileChunk tail = manifest.get(to - 1);
+                long runFirst = head.getFileOffset();
+                writeRun(head.getChunk(), tail.getChunk(), runFirst, outputStream,
+                        Math.max(first, runFirst), Math.min(last, chunkEnd(tail)));
+            }
+            start = end;
+        }
+    }
+
+    /**
+     * Offset of the last file byte of a manifest entry.
+     */
+    private static long chunkEnd(FileChunk entry) {
+        return entry.getFileOffset() + entry.getChunk().getLength() - 1;
+    }
+
+    /**
+     * Decode the stored bytes of the run from {@code head} to {@code tail} and write its file bytes
+     * {@code first} to {@code last}. Uncompressed runs are decoded for just that range; compressed
+     * chunks, each a block of its own, are decoded whole.
+     */
+    private void writeRun(Chunk head, Chunk tail, long runFirst, OutputStream outputStream,
+                          long first, long last) throws Exception {
+        File video = head.getVideo();
+        logger.debug("Reading chunks {}-{} from video of file {}", head.getId(), tail.getId(), video.getId());
+        if (head.getCompression() == Compression.NONE) {
+            filePartService.writeContent(video, outputStream,
+                    head.getStoredOffset() + (first - runFirst), head.getStoredOffset() + (last - runFirst));
+            return;
+        }
+        BlockDecompressingOutputStream content = compressionService.decompressing(
+                new RangeOutputStream(outputStream, first - runFirst, last - runFirst));
+        try {
+            filePartService.writeContent(video, content,
+                    head.getStoredOffset(), tail.getStoredOffset() + tail.getStoredLength() - 1);
+            content.finish();
+        } finally {
+            content.end();
+        }
+    }
+
+    private static boolean continuesRun(Chunk previous, Chunk next) {
+        return previous.getVideo().getId().equals(next.getVideo().getId())
+                && previous.getCompression() == next.getCompression()
+                && previous.getStoredOffset() + previous.getStoredLength() == next.getStoredOffset();
+    }
+
+    /**
+     * Wait for the oldest compressed chunk and write it at {@code offset}.
+     *
+     * @return bytes written.
+     */
+    private static int writeNext(Deque<PendingChunk> inFlight, OutputStream stored, long offset) throws IOException {
+        PendingChunk pending = inFlight.poll();
+        byte[] encoded;
+        try {
+            encoded = pending.encoded().join();
+        } catch (CompletionException e) {
+            throw new IOException("Chunk compression failed", e.getCause());
+        }
+        stored.write(encoded);
+        return pending.chunk().written(offset, encoded.length);
+    }
+
+    /**
+     * Result of {@link #store}: SHA-256 of the whole upload, bytes written for the new video
+     * (0 when every chunk was already stored), and one entry per chunk in file order.
+     */
+    public record ChunkedUpload(byte[] sha256, long storedBytes, List<ManifestEntry> manifest) {
+    }
+
+    /**
+     * A chunk of the upload: either a chunk already stored in another video, or one written to this upload's video.
+     */
+    public record ManifestEntry(long fileOffset, int length, Chunk existing, NewChunk newChunk) {
+    }
+
+    /**
+     * A chunk first seen in this upload; where it sits in the new video is known once it is written.
+     */
+    public static final class NewChunk {
+        private final String fingerprint;
+        private final int length;
+        private final Compression compression;
+        private long storedOffset;
+        private int storedLength;
+
+        private NewChunk(String fingerprint, int length, Compression compression) {
+            this.fingerprint = fingerprint;
+            this.length = length;
+            this.compression = compression;
+        }
+
+        private int written(long offset, int bytes) {
+            this.storedOffset = offset;
+            this.storedLength = bytes;
+            return bytes;
+        }
+    }
+
+    private record PendingChunk(NewChunk chunk, CompletableFuture<byte[]> encoded) {
+    }
+
+    /**
+     * A chunk read from the upload, waiting for its batch to be looked up.
+     */
+    private record ReadChunk(String fingerprint, byte[] raw) {
+    }
+
+    /**
+     * Progress of one {@link #store} call, carried from batch to batch.
+     */
+    private static final class StoreState {
+        private final Compression compression;
+        private final OutputStream stored;
+        private final int queueDepth;
+        private final Deque<PendingChunk> inFlight;
+        private final Map<String, NewChunk> storedHere = new HashMap<>();
+        private final List<ManifestEntry> manifest = new ArrayList<>();
+        private long fileOffset;
+        private long storedBytes;
+        private int reused;
+
+        private StoreState(Compression compression, OutputStream stored, int queueDepth) {
+            this.compression = compression;
+            this.stored = stored;
+            this.queueDepth = queueDepth;
+            this.inFlight = new ArrayDeque<>(queueDepth);
+        }
+    }
+}
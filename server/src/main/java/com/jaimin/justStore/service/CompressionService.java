@@ -0,0 +1,236 @@
+package com.jaimin.justStore.service;
+
+import com.jaimin.justStore.enums.Compression;
+import com.jaimin.justStore.model.File;
+import com.jaimin.justStore.model.FileBlock;
+import com.jaimin.justStore.repository.FileBlockRepository;
+import com.jaimin.justStore.utils.BlockCompression;
+import com.jaimin.justStore.utils.BlockDecompressingOutputStream;
+import com.jaimin.justStore.utils.ChecksumUtil;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Owns the block compression workers, decides which uploads are worth compressing and keeps the
+ * block index of compressed files, so a range is decoded from the blocks covering it.
+ */
+@Service
+public class CompressionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CompressionService.class);
+
+    // Types whose content is already compressed; Deflate would only cost time
+    private static final Set<String> COMPRESSED_TYPE_PREFIXES = Set.of("video/", "audio/", "image/");
+    private static final Set<String> UNCOMPRESSED_MEDIA_TYPES = Set.of("image/bmp", "image/svg+xml", "image/x-icon",
+            "image/tiff", "audio/wav", "audio/x-wav");
+    private static final Set<String> COMPRESSED_TYPES = Set.of(
+            "application/zip", "application/x-zip-compressed", "application/gzip", "application/x-gzip",
+            "application/x-bzip2", "application/x-xz", "application/zstd", "application/x-7z-compressed",
+            "application/vnd.rar", "application/x-rar-compressed", "application/java-archive",
+            "application/epub+zip", "application/vnd.android.package-archive");
+
+    // Slices sampled across the file for the entropy probe
+    private static final int SAMPLE_SLICES = 4;
+    private static final int SAMPLE_SLICE_BYTES = 64 * 1024;
+
+    @Value("${app.compression.enabled:true}")
+    private boolean enabled;
+
+    // 1 = fastest, 9 = smallest
+    @Value("${app.compression.level:6}")
+    private int level;
+
+    @Value("${app.compression.block-size:" + BlockCompression.DEFAULT_BLOCK_BYTES + "}")
+    private int blockBytes;
+
+    // 0 = one compression worker per available core
+    @Value("${app.compression.parallelism:0}")
+    private int configuredParallelism;
+
+    // Bits per byte above which a sample counts as already compressed (8 = random)
+    @Value("${app.compression.max-entropy:7.5}")
+    private double maxEntropy;
+
+    private final FileBlockRepository fileBlockRepository;
+
+    private int parallelism;
+    private ExecutorService compressPool;
+
+    public CompressionService(FileBlockRepository fileBlockRepository) {
+        this.fileBlockRepository = fileBlockRepository;
+    }
+
+    @PostConstruct
+    public void init() {
+        parallelism = configuredParallelism > 0
+                ? configuredParallelism
+                : Runtime.getRuntime().availableProcessors();
+        ThreadFactory threadFactory = Thread.ofPlatform().name("block-compress-", 0).daemon(true).factory();
+        compressPool = Executors.newFixedThreadPool(parallelism, threadFactory);
+        logger.info("Compression {} with {} workers, level {}, {} byte blocks",
+                enabled ? "enabled" : "disabled", parallelism, level, blockBytes);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        compressPool.shutdownNow();
+    }
+
+    /**
+     * Compression for an upload spooled to {@code content}: none when disabled, when its content
+     * type is a compressed format, or when samples of its content look random.
+     */
+    public Compression choose(String fileName, String contentType, Path content) throws IOException {
+        if (!enabled) {
+            return Compression.NONE;
+        }
+        if (isCompressedType(contentType)) {
+            logger.debug("Not compressing {}, content type {} is already compressed", fileName, contentType);
+            return Compression.NONE;
+        }
+
+        double entropy = sampleEntropy(content);
+        logger.debug("Sampled entropy of {}: {} bits per byte", fileName, entropy);
+        return entropy > maxEntropy ? Compression.NONE : Compression.DEFLATE;
+    }
+
+    /**
+     * Compress a stream in parallel blocks.
+     *
+     * @return SHA-256 of the uncompressed content.
+     */
+    public byte[] compress(InputStream fileContent, OutputStream compressed) throws IOException {
+        return compress(fileContent, compressed, (rawOffset, storedOffset, storedLength) -> {
+        });
+    }
+
+    /**
+     * Compress a stream in parallel blocks, telling {@code listener} where each block went.
+     *
+     * @return SHA-256 of the uncompressed content.
+     */
+    public byte[] compress(InputStream fileContent, OutputStream compressed, BlockCompression.BlockListener listener)
+            throws IOException {
+        MessageDigest digest = ChecksumUtil.newDigest();
+        long written = BlockCompression.compress(new DigestInputStream(fileContent, digest), compressed,
+                level, blockBytes, compressPool, parallelism, listener);
+        logger.debug("Compressed to {} bytes", written);
+        return digest.digest();
+    }
+
+    /**
+     * Record where the blocks of a file's compressed content sit. Call it once the file is saved
+     * and before it is marked uploaded.
+     */
+    public void saveBlockIndex(File file, List<FileBlock> blocks) {
+        fileBlockRepository.saveAll(blocks);
+        logger.debug("Saved block index of file {}: {} blocks", file.getId(), blocks.size());
+    }
+
+    /**
+     * Drop the block index an interrupted upload of {@code file} saved, before it is compressed again.
+     */
+    public void discardBlockIndex(File file) {
+        fileBlockRepository.deleteByFileId(file.getId());
+    }
+
+    /**
+     * Where bytes {@code first} to {@code last} (inclusive) of a compressed file are stored: the
+     * span of the blocks holding them; {@code null} for a file without a block index, uploaded
+     * before blocks were indexed, whose content has to be decompressed from the start.
+     */
+    public StoredSpan storedSpan(File file, long first, long last) {
+        FileBlock head = fileBlockRepository
+                .findFirstByFileIdAndRawOffsetLessThanEqualOrderByRawOffsetDesc(file.getId(), first).orElse(null);
+        FileBlock tail = fileBlockRepository
+                .findFirstByFileIdAndRawOffsetLessThanEqualOrderByRawOffsetDesc(file.getId(), last).orElse(null);
+        if (head == null || tail == null) {
+            return null;
+        }
+        return new StoredSpan(head.getRawOffset(), head.getStoredOffset(),
+                tail.getStoredOffset() + tail.getStoredLength() - 1);
+    }
+
+    /**
+     * Compress one block on the compression workers, as {@link BlockCompression#compressBlock(byte[], int, int)}.
+     * The caller must not change {@code raw} until the result is complete.
+     */
+    public CompletableFuture<byte[]> compressBlock(byte[] raw, int length) {
+        return CompletableFuture.supplyAsync(() -> BlockCompression.compressBlock(raw, length, level), compressPool);
+    }
+
+    /**
+     * Wrap {@code out} so the stored content written to it comes out uncompressed.
+     * Call {@link BlockDecompressingOutputStream#finish()} on the result once everything is written.
+     */
+    public BlockDecompressingOutputStream decompressing(OutputStream out) {
+        return new BlockDecompressingOutputStream(out);
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Stored bytes {@code storedFirst} to {@code storedLast} (inclusive) hold whole blocks, the
+     * first of them starting at byte {@code rawOffset} of the file.
+     */
+    public record StoredSpan(long rawOffset, long storedFirst, long storedLast) {
+    }
+
+    static boolean isCompressedType(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        String type = contentType.toLowerCase(Locale.ROOT);
+        int parameters = type.indexOf(';');
+        if (parameters >= 0) {
+            type = type.substring(0, parameters).trim();
+        }
+        if (COMPRESSED_TYPES.contains(type) || type.startsWith("application/vnd.openxmlformats-officedocument.")) {
+            return true;
+        }
+        final String mediaType = type;
+        return !UNCOMPRESSED_MEDIA_TYPES.contains(mediaType)
+                && COMPRESSED_TYPE_PREFIXES.stream().anyMatch(mediaType::startsWith);
+    }
+
+    /**
+     * Entropy of a few slices spread over the file, so an archive's text header alone does not decide.
+     */
+    private static double sampleEntropy(Path file) throws IOException {
+        final long size = Files.size(file);
+        byte[] sample = new byte[SAMPLE_SLICES * SAMPLE_SLICE_BYTES];
+        int sampled = 0;
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            long position = 0;
+            for (int slice = 0; slice < SAMPLE_SLICES; slice++) {
+                long sliceStart = Math.max(position, size * slice / SAMPLE_SLICES);
+                inputStream.skipNBytes(sliceStart - position);
+                int read = inputStream.readNBytes(sample, sampled, SAMPLE_SLICE_BYTES);
+                sampled += read;
+                position = sliceStart + read;
+            }
+        }
+        return BlockCompression.entropy(sample, sampled);
+    }
+}
@@ -0,0 +1,335 @@
+package com.jaimin.justStore.service;
+
+import com.jaimin.justStore.model.File;
+import com.jaimin.justStore.utils.DiskCache;
+import com.jaimin.justStore.utils.SharedDownload;
+import com.jaimin.justStore.utils.VideoInput;
+import com.jaimin.justStore.utils.VideoStore;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+
+/**
+ * Local disk cache in front of downloads, in two tiers: downloaded videos by video id and format,
+ * so decoding again skips yt-dlp, and decoded files by checksum, so downloading a file again
+ * skips the decode as well. Each tier has its own size budget and evicts its least recently used
+ * entries.
+ * <p>
+ * Entries are written while the download runs and only published once complete, a video once
+ * yt-dlp exited cleanly and a file once its SHA-256 matched the one recorded at upload.
+ * Files with a secret key are not cached decoded.
+ * <p>
+ * Concurrent requests for a cacheable file share one decode instead of running one each, see {@link #writeShared}.
+ */
+@Service
+public class DownloadCacheService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DownloadCacheService.class);
+
+    private static final int SKIP_BUFFER_BYTES = 64 * 1024;
+    // Characters of a format id that can't be part of a cache key
+    private static final Pattern FORMAT_UNSAFE = Pattern.compile("[^A-Za-z0-9_-]");
+    private static final int MAX_FORMAT_KEY_CHARS = 64;
+
+    @Value("${app.cache.enabled:true}")
+    private boolean enabled;
+
+    // Holds the videos/ and files/ tiers; node-local, it is only a copy of what the video stores hold
+    @Value("${app.cache.dir:${java.io.tmpdir}/juststore-cache}")
+    private String cacheDir;
+
+    @Value("${app.cache.video-max-bytes:10737418240}")
+    private long videoMaxBytes;
+
+    @Value("${app.cache.file-max-bytes:10737418240}")
+    private long fileMaxBytes;
+
+    private DiskCache videos;
+    private DiskCache files;
+    private ExecutorService downloadPool;
+    // Downloads being decoded, by file id
+    private final Map<Long, SharedDownload> sharedDownloads = new HashMap<>();
+
+    @PostConstruct
+    public void init() throws IOException {
+        downloadPool = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("shared-download-", 0).factory());
+        if (!enabled) {
+            logger.info("Download cache disabled");
+            return;
+        }
+        videos = new DiskCache(Path.of(cacheDir, "videos"), videoMaxBytes);
+        files = new DiskCache(Path.of(cacheDir, "files"), fileMaxBytes);
+        logger.info("Download cache in {}, {} bytes for videos and {} bytes for decoded files",
+                cacheDir, videoMaxBytes, fileMaxBytes);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        downloadPool.shutdownNow();
+    }
+
+    /**
+     * Open a video in format {@code formatId}, or as it was put when {@code null}, from the cache,
+     * or from its store and cache it once it was read to its end. Videos of a local store are read
+     * from it directly. Videos on disk, cached or local, are opened by path, so the decoder seeks
+     * in them instead of reading them through.
+     */
+    public VideoInput openVideo(VideoStore store, String videoId, String videoUrl, String formatId)
+            throws IOException {
+        Path local = formatId == null && videoId != null ? store.localPath(videoId) : null;
+        if (local != null) {
+            return VideoInput.of(local);
+        }
+        if (!enabled || videoId == null || store.isLocal()) {
+            return VideoInput.of(store.open(videoId, videoUrl, formatId));
+        }
+        String key = videoKey(videoId, formatId);
+        Path cached = videos.path(key);
+        if (cached != null) {
+            logger.debug("Video {} served from the cache", key);
+            return VideoInput.of(cached);
+        }
+        InputStream download = store.open(videoId, videoUrl, formatId);
+        DiskCache.Writer entry;
+        try {
+            entry = videos.write(key);
+        } catch (IOException e) {
+            logger.warn("Not caching video {}: {}", key, e.getMessage());
+            return VideoInput.of(download);
+        }
+        return VideoInput.of(new CachingInputStream(download, entry));
+    }
+
+    /**
+     * Cache key of a video in a format; formats are cached apart, so a format that failed to
+     * decode never stands in for another.
+     */
+    private static String videoKey(String videoId, String formatId) {
+        if (formatId == null) {
+            return videoId;
+        }
+        String format = FORMAT_UNSAFE.matcher(formatId).replaceAll("-");
+        return videoId + "_" + format.substring(0, Math.min(format.length(), MAX_FORMAT_KEY_CHARS));
+    }
+
+    /**
+     * Whether a decoded copy of the file may be cached.
+     */
+    public boolean isCacheable(File file) {
+        return enabled && file.getSecretKeyHash() == null && file.getFileChecksum() != null;
+    }
+
+    /**
+     * Write bytes {@code first} to {@code last} (inclusive) of the file from its decoded copy,
+     * channel to channel.
+     *
+     * @return false, writing nothing, when the file is not cached.
+     */
+    public boolean writeCachedFile(File file, OutputStream outputStream, long first, long last) throws IOException {
+        if (!isCacheable(file)) {
+            return false;
+        }
+        try (FileChannel cached = files.open(file.getFileChecksum())) {
+            if (cached == null) {
+                return false;
+            }
+            if (cached.size() != file.getOriginalFileSizeInByte()) {
+                logger.warn("Cached copy of file {} is {} bytes, expected {}; ignoring it",
+                        file.getId(), cached.size(), file.getOriginalFileSizeInByte());
+                return false;
+            }
+            logger.debug("File {} served from the cache", file.getId());
+            WritableByteChannel target = Channels.newChannel(outputStream);
+            long position = first;
+            while (position <= last) {
+                long transferred = cached.transferTo(position, last - position + 1, target);
+                if (transferred <= 0) {
+                    throw new IOException("Cached copy of file " + file.getId() + " ended at " + position);
+                }
+                position += transferred;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Write bytes {@code first} to {@code last} (inclusive) of the file, decoded once for every
+     * request that wants it at the same time.
+     * <p>
+     * A request for the whole of a cacheable file starts a shared download that decodes it to its
+     * cache entry, in the background; it and any request for the same file arriving meanwhile,
+     * whatever its range, read their bytes from the entry as they are decoded. Other requests, and
+     * every request for a file that is not cached, are decoded on their own and streamed straight
+     * through, so nothing that is not cached is spooled to disk.
+     */
+    public void writeShared(File file, OutputStream outputStream, long first, long last, RangeWriter decoder)
+            throws Exception {
+        SharedDownload download = null;
+        if (isCacheable(file)) {
+            synchronized (sharedDownloads) {
+                download = sharedDownloads.get(file.getId());
+                if (download != null && !download.attach()) {
+                    // Its readers all left or it failed, it is on its way out
+                    sharedDownloads.remove(file.getId(), download);
+                    download = null;
+                }
+                boolean whole = first == 0 && last == file.getOriginalFileSizeInByte() - 1 && last >= first;
+                if (download == null && whole) {
+                    download = startSharedDownload(file, decoder);
+                    download.attach();
+                }
+            }
+        }
+        if (download == null) {
+            decoder.writeTo(outputStream, first, last);
+            return;
+        }
+        try {
+            download.read(outputStream, first, last);
+        } finally {
+            if (download.detach()) {
+                logger.debug("Every reader of file {} left, cancelled its decode", file.getId());
+            }
+        }
+    }
+
+    /**
+     * Start decoding the whole file to a new entry of the cache, published once it matches the
+     * file's checksum. Called holding the lock on {@link #sharedDownloads}.
+     */
+    private SharedDownload startSharedDownload(File file, RangeWriter decoder) throws IOException {
+        Path spool = files.createTempFile(file.getFileChecksum());
+        SharedDownload download;
+        try {
+            download = new SharedDownload("file " + file.getId(), file.getOriginalFileSizeInByte(), spool);
+        } catch (IOException e) {
+            Files.deleteIfExists(spool);
+            throw e;
+        }
+        sharedDownloads.put(file.getId(), download);
+        logger.debug("Started shared download of file {}", file.getId());
+        download.start(downloadPool, sink -> {
+            try {
+                decoder.writeTo(sink, 0, file.getOriginalFileSizeInByte() - 1);
+            } catch (Exception e) {
+                logger.warn("Shared download of file {} failed: {}", file.getId(), e.getMessage());
+                throw e;
+            }
+            if (!download.checksum().equals(file.getFileChecksum())) {
+                logger.warn("Decoded file {} does not match its checksum, not caching it", file.getId());
+            } else {
+                // Readers keep reading the spool through its open channel once it is moved
+                files.publish(file.getFileChecksum(), spool);
+                logger.debug("Cached decoded file {}", file.getId());
+            }
+        }, () -> {
+            synchronized (sharedDownloads) {
+                sharedDownloads.remove(file.getId(), download);
+            }
+            // Gone already once published
+            deleteQuietly(spool);
+        });
+        return download;
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.warn("Could not delete spool {}: {}", path, e.getMessage());
+        }
+    }
+
+    /**
+     * Passes a download through and writes it to a cache entry, committed once the download ended
+     * without an error. A failure of the cache only stops the caching.
+     */
+    private static final class CachingInputStream extends FilterInputStream {
+        private final DiskCache.Writer entry;
+        private boolean caching = true;
+
+        private CachingInputStream(InputStream in, DiskCache.Writer entry) {
+            super(in);
+            this.entry = entry;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            int read = super.read(bytes, offset, length);
+            if (!caching) {
+                return read;
+            }
+            try {
+                if (read < 0) {
+                    caching = false;
+                    entry.commit();
+                } else {
+                    entry.write(bytes, offset, read);
+                }
+            } catch (IOException e) {
+                logger.warn("Stopped caching a video: {}", e.getMessage());
+                caching = false;
+                entry.close();
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            // Skipped bytes are still read, so the cached video stays whole
+            byte[] skipped = new byte[(int) Math.min(Math.max(count, 0), SKIP_BUFFER_BYTES)];
+            long total = 0;
+            while (total < count) {
+                int read = read(skipped, 0, (int) Math.min(skipped.length, count - total));
+                if (read < 0) {
+                    break;
+                }
+                total += read;
+            }
+            return total;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                // Discards the entry unless it was committed
+                entry.close();
+            }
+        }
+    }
+
+    /**
+     * Writes bytes {@code first} to {@code last} (inclusive) of a decoded file to the stream it is
+     * given, without closing it.
+     */
+    @FunctionalInterface
+    public interface RangeWriter {
+        void writeTo(OutputStream outputStream, long first, long last) throws Exception;
+    }
+}
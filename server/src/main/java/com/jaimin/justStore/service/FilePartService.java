@@ -0,0 +1,475 @@
+package com.jaimin.justStore.service;
+
+import com.jaimin.justStore.enums.EncodingProfile;
+import com.jaimin.justStore.model.File;
+import com.jaimin.justStore.model.FilePart;
+import com.jaimin.justStore.repository.FilePartRepository;
+import com.jaimin.justStore.utils.BoundedPipe;
+import com.jaimin.justStore.utils.BytesToHex;
+import com.jaimin.justStore.utils.ChecksumUtil;
+import com.jaimin.justStore.utils.ResumableUpload;
+import com.jaimin.justStore.utils.VideoStore;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Stores content too large for one video as fixed-size segments, each encoded and uploaded as a
+ * video of its own, several at a time, and reads content back from a file's video or its parts.
+ * <p>
+ * Downloads decode the parts a range covers in parallel, each into a bounded buffer, and stream
+ * them in order, so the next parts are being fetched while the current one is written out. A part
+ * only opens its video once the part before it is streaming, so the parts holding the node's
+ * yt-dlp slots are always the next ones of their download, never parts ahead waiting on a full
+ * buffer while the one being written waits for a slot.
+ */
+@Service
+public class FilePartService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FilePartService.class);
+
+    private final FilePartRepository filePartRepository;
+    private final VideoEncoderService videoEncoderService;
+    private final VideoStoreService videoStoreService;
+    private final UploadJobService uploadJobService;
+    private final VideoFormatService videoFormatService;
+
+    // Bytes of a file's content per video; larger content is split into parts, 0 = never split
+    @Value("${app.segments.size:1073741824}")
+    private long segmentBytes;
+
+    // Parts of one file encoded and uploaded, or downloaded and decoded, at once
+    @Value("${app.segments.parallelism:3}")
+    private int parallelism;
+
+    // Decoded bytes buffered for each part decoded ahead of the one being streamed
+    @Value("${app.segments.download-buffer-size:16777216}")
+    private int downloadBufferBytes;
+
+    private ExecutorService partPool;
+
+    public FilePartService(FilePartRepository filePartRepository, VideoEncoderService videoEncoderService,
+                           VideoStoreService videoStoreService, UploadJobService uploadJobService,
+                           VideoFormatService videoFormatService) {
+        this.filePartRepository = filePartRepository;
+        this.videoEncoderService = videoEncoderService;
+        this.videoStoreService = videoStoreService;
+        this.uploadJobService = uploadJobService;
+        this.videoFormatService = videoFormatService;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("app.segments.parallelism must be positive, got " + parallelism);
+        }
+        partPool = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("file-part-", 0).factory());
+        logger.info("Content above {} split into parts, {} parts of a file at once",
+                segmentBytes > 0 ? segmentBytes + " bytes" : "any size", parallelism);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        partPool.shutdownNow();
+    }
+
+    /**
+     * Whether content of this length is stored as parts instead of one video.
+     */
+    public boolean isSegmented(long contentLength) {
+        return segmentBytes > 0 && contentLength > segmentBytes;
+    }
+
+    /**
+     * Drop the parts of a file whose upload is restarted as a single video, with their videos.
+     */
+    public void discardParts(File file) {
+        List<FilePart> dropped = discardBeyond(file, 0);
+        if (!dropped.isEmpty()) {
+            logger.info("Discarded {} parts of file {}", dropped.size(), file.getId());
+        }
+    }
+
+    /**
+     * Split {@code contentLength} bytes of {@code content} into segments, encode each one and upload
+     * it as a video, {@code parallelism} at a time, encodes also holding the node's encode slots.
+     * <p>
+     * Parts a restarted upload already uploaded are kept when their segment is still the same, by
+     * checksum, since deduplicating again can change the content; the others are uploaded again
+     * and their old videos deleted. Once any part fails the ones in flight are cancelled.
+     *
+     * @return the parts, in content order.
+     */
+    public List<FilePart> uploadParts(File file, Set<String> tags, String title, Path content, long contentLength,
+                                      boolean piped) throws IOException, GeneralSecurityException {
+        int count = (int) ((contentLength + segmentBytes - 1) / segmentBytes);
+        discardBeyond(file, count);
+        Map<Integer, FilePart> uploaded = filePartRepository.findByFileIdOrderByPartIndexAsc(file.getId()).stream()
+                .collect(Collectors.toMap(FilePart::getPartIndex, Function.identity()));
+        logger.info("Uploading {} bytes of file {} as {} parts, {} uploaded before",
+                contentLength, file.getId(), count, uploaded.size());
+
+        PartProgress progress = new PartProgress(file, count);
+        List<FilePart> parts = new ArrayList<>(count);
+        Deque<Future<FilePart>> inFlight = new ArrayDeque<>();
+        try {
+            for (int index = 0; index < count; index++) {
+                if (inFlight.size() == parallelism) {
+                    parts.add(await(inFlight.poll()));
+                }
+                final int partIndex = index;
+                final long offset = index * segmentBytes;
+                final long length = Math.min(segmentBytes, contentLength - offset);
+                final String partTitle = title + "_part" + (index + 1) + "of" + count;
+                FilePart previous = uploaded.get(index);
+                inFlight.add(partPool.submit(() -> uploadPart(file, previous, partIndex, partTitle, tags,
+                        content, offset, length, piped, progress)));
+            }
+            while (!inFlight.isEmpty()) {
+                parts.add(await(inFlight.poll()));
+            }
+        } finally {
+            for (Future<FilePart> pending : inFlight) {
+                pending.cancel(true);
+            }
+        }
+        return parts;
+    }
+
+    private FilePart uploadPart(File file, FilePart previous, int index, String title, Set<String> tags,
+                                Path content, long offset, long length, boolean piped, PartProgress progress)
+            throws IOException, GeneralSecurityException {
+        if (previous != null && previous.getContentOffset() == offset && previous.getLength() == length) {
+            String checksum;
+            try (InputStream segment = openSegment(content, offset, length)) {
+                checksum = ChecksumUtil.calculateChecksum(segment);
+            }
+            if (checksum.equals(previous.getChecksum())) {
+                logger.info("Part {} of file {} is already uploaded as {}", index, file.getId(), previous.getYoutubeVideoId());
+                return previous;
+            }
+        }
+        EncodingProfile profile = file.getEncodingProfile();
+        VideoStore store = videoStoreService.getUploadStore();
+        ResumableUpload.ProgressListener listener = (sessionUri, uploadedBytes, totalBytes) ->
+                progress.report(index, uploadedBytes);
+
+        // SHA-256 of the segment, as the encoder computes it
+        byte[][] sha256 = new byte[1][];
+        VideoStore.StoredVideo result;
+        if (piped) {
+            result = store.put(title, tags, listener, video -> {
+                try (UploadJobService.EncodeSlot slot = uploadJobService.acquireEncodeSlot();
+                     InputStream segment = openSegment(content, offset, length)) {
+                    sha256[0] = videoEncoderService.encode(segment, length, profile, video);
+                }
+            });
+        } else {
+            // Parts are not resumed from their video, so it stays node-local
+            Path video = uploadJobService.createTempFile(".mp4");
+            try {
+                try (UploadJobService.EncodeSlot slot = uploadJobService.acquireEncodeSlot();
+                     InputStream segment = openSegment(content, offset, length)) {
+                    sha256[0] = videoEncoderService.encode(segment, length, profile, video.toString());
+                }
+                result = store.put(video, title, tags, listener);
+            } finally {
+                Files.deleteIfExists(video);
+            }
+        }
+
+        FilePart part = previous != null ? previous : new FilePart(file, index);
+        String replacedStore = previous != null ? previous.getVideoStore() : null;
+        String replacedVideoId = previous != null ? previous.getYoutubeVideoId() : null;
+        part.uploaded(offset, length, BytesToHex.bytesToHex(sha256[0]), store.getName(),
+                result.videoId(), result.videoUrl());
+        logger.info("Part {} of file {} uploaded as {} to the {} store", index, file.getId(), result.videoId(),
+                store.getName());
+        part = filePartRepository.save(part);
+        if (replacedVideoId != null) {
+            videoStoreService.deleteQuietly(replacedStore, replacedVideoId);
+        }
+        return part;
+    }
+
+    /**
+     * Drop the parts of a file from {@code count} on and delete their videos.
+     */
+    private List<FilePart> discardBeyond(File file, int count) {
+        List<FilePart> dropped = filePartRepository.findByFileIdOrderByPartIndexAsc(file.getId()).stream()
+                .filter(part -> part.getPartIndex() >= count)
+                .toList();
+        if (dropped.isEmpty()) {
+            return dropped;
+        }
+        filePartRepository.deleteBeyond(file.getId(), count);
+        for (FilePart part : dropped) {
+            videoStoreService.deleteQuietly(part.getVideoStore(), part.getYoutubeVideoId());
+        }
+        return dropped;
+    }
+
+    /**
+     * Write the whole content stored for a file, verifying each video's trailer checksum.
+     */
+    public void writeContent(File file, OutputStream outputStream) throws Exception {
+        List<FilePart> parts = filePartRepository.findByFileIdOrderByPartIndexAsc(file.getId());
+        if (parts.isEmpty()) {
+            videoFormatService.decode(file, outputStream, 0, Long.MAX_VALUE);
+            return;
+        }
+        FilePart tail = parts.getLast();
+        writeParts(parts, file.getEncodingProfile(), outputStream, 0, tail.getContentOffset() + tail.getLength() - 1);
+    }
+
+    /**
+     * Write bytes {@code first} to {@code last} (inclusive) of the content stored for a file.
+     */
+    public void writeContent(File file, OutputStream outputStream, long first, long last) throws Exception {
+        List<FilePart> parts = filePartRepository.findByFileIdOrderByPartIndexAsc(file.getId());
+        if (parts.isEmpty()) {
+            videoFormatService.decode(file, outputStream, first, last);
+            return;
+        }
+        writeParts(parts, file.getEncodingProfile(), outputStream, first, last);
+    }
+
+    /**
+     * Decode the parts holding bytes {@code first} to {@code last}, up to {@code parallelism} at a
+     * time, and write them in order. Each part opens its video once the part before it streams, and
+     * parts ahead of the one being written stop decoding once their buffer is full.
+     */
+    private void writeParts(List<FilePart> parts, EncodingProfile profile, OutputStream outputStream,
+                            long first, long last) throws Exception {
+        Deque<PendingPart> inFlight = new ArrayDeque<>();
+        CompletableFuture<Void> previousStreaming = CompletableFuture.completedFuture(null);
+        try {
+            for (FilePart part : parts) {
+                long partFirst = part.getContentOffset();
+                long partLast = partFirst + part.getLength() - 1;
+                if (partLast < first || partFirst > last) {
+                    continue;
+                }
+                if (inFlight.size() == parallelism) {
+                    writeNext(inFlight, outputStream);
+                }
+                PendingPart pending = decodePart(part, profile, Math.max(first, partFirst) - partFirst,
+                        Math.min(last, partLast) - partFirst, previousStreaming);
+                inFlight.add(pending);
+                previousStreaming = pending.streaming();
+            }
+            while (!inFlight.isEmpty()) {
+                writeNext(inFlight, outputStream);
+            }
+        } finally {
+            for (PendingPart pending : inFlight) {
+                pending.abort();
+            }
+        }
+    }
+
+    /**
+     * Decode a range of a part into a new buffer once {@code previousStreaming} completes, i.e. once
+     * the part before it has written its first bytes or ended.
+     */
+    private PendingPart decodePart(FilePart part, EncodingProfile profile, long from, long to,
+                                   CompletableFuture<Void> previousStreaming) {
+        BoundedPipe pipe = new BoundedPipe(downloadBufferBytes);
+        CompletableFuture<Void> streaming = new CompletableFuture<>();
+        // Its first bytes mean its video is open, so the next part may open its own
+        OutputStream sink = new FilterOutputStream(pipe.sink()) {
+            @Override
+            public void write(int b) throws IOException {
+                streaming.complete(null);
+                out.write(b);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                streaming.complete(null);
+                out.write(bytes, offset, length);
+            }
+        };
+        Future<?> decoded = partPool.submit(() -> {
+            try {
+                previousStreaming.get();
+                logger.debug("Decoding bytes {}-{} of part {} from {}", from, to, part.getPartIndex(), part.getYoutubeVideoId());
+                // The trailer checksum is verified as well when the range is the whole part
+                videoFormatService.decode(part, profile, sink, from, to);
+                // Only closed once complete, closing it ends the part for the reader
+                pipe.sink().close();
+            } catch (Exception e) {
+                pipe.fail(e);
+                throw e;
+            } finally {
+                streaming.complete(null);
+            }
+            return null;
+        });
+        return new PendingPart(part, pipe, decoded, streaming, to - from + 1);
+    }
+
+    /**
+     * Write the oldest part in flight as it is decoded.
+     */
+    private static void writeNext(Deque<PendingPart> inFlight, OutputStream outputStream) throws Exception {
+        PendingPart pending = inFlight.poll();
+        long written;
+        try (InputStream decoded = pending.pipe().source()) {
+            written = decoded.transferTo(outputStream);
+            await(pending.decoded());
+        } catch (Exception e) {
+            pending.abort();
+            throw e;
+        }
+        if (written != pending.length()) {
+            throw new IOException("Part " + pending.part().getPartIndex() + " decoded to " + written
+                    + " bytes, expected " + pending.length());
+        }
+    }
+
+    /**
+     * Result of a part's task, with its own exception rethrown as is.
+     */
+    private static <T> T await(Future<T> task) throws IOException, GeneralSecurityException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a file part");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            if (cause instanceof GeneralSecurityException security) {
+                throw security;
+            }
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IOException("File part failed: " + cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * Bytes {@code offset} to {@code offset + length - 1} of a file.
+     */
+    private static InputStream openSegment(Path content, long offset, long length) throws IOException {
+        SeekableByteChannel channel = Files.newByteChannel(content);
+        try {
+            channel.position(offset);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new BufferedInputStream(new SegmentInputStream(Channels.newInputStream(channel), length));
+    }
+
+    /**
+     * Ends a stream after {@code remaining} bytes.
+     */
+    private static final class SegmentInputStream extends FilterInputStream {
+        private long remaining;
+
+        private SegmentInputStream(InputStream in, long remaining) {
+            super(in);
+            this.remaining = remaining;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining == 0) {
+                return -1;
+            }
+            int read = super.read();
+            if (read >= 0) {
+                remaining--;
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (remaining == 0) {
+                return -1;
+            }
+            int read = super.read(bytes, offset, (int) Math.min(length, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            long skipped = super.skip(Math.min(count, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+    }
+
+    /**
+     * Keeps the file's uploaded bytes at the sum of what the store committed for each part.
+     */
+    private final class PartProgress {
+        private final File file;
+        private final long[] committed;
+
+        private PartProgress(File file, int count) {
+            this.file = file;
+            this.committed = new long[count];
+        }
+
+        private synchronized void report(int index, long uploadedBytes) {
+            committed[index] = uploadedBytes;
+            long total = 0;
+            for (long bytes : committed) {
+                total += bytes;
+            }
+            file.setUploadedBytes(total);
+            uploadJobService.saveOwned(file);
+        }
+    }
+
+    private record PendingPart(FilePart part, BoundedPipe pipe, Future<?> decoded, CompletableFuture<Void> streaming,
+                               long length) {
+
+        /**
+         * Stop the part's decoding, which fails at its next write once the pipe is aborted.
+         */
+        void abort() {
+            pipe.fail(new IOException("Download of the file was aborted"));
+            decoded.cancel(true);
+        }
+    }
+}
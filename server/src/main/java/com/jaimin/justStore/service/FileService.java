@@ -4,25 +4,49 @@ import com.jaimin.justStore.dto.DownloadFileResponseDto;
 import com.jaimin.justStore.dto.FileDetailResponseDto;
 import com.jaimin.justStore.dto.FileSearchResponseDto;
 import com.jaimin.justStore.dto.UploadFileRequestDto;
+import com.jaimin.justStore.dto.UploadJobResponseDto;
+import com.jaimin.justStore.enums.Compression;
+import com.jaimin.justStore.enums.EncodingProfile;
 import com.jaimin.justStore.enums.Status;
 import com.jaimin.justStore.model.File;
+import com.jaimin.justStore.model.FileBlock;
+import com.jaimin.justStore.model.FileChunk;
+import com.jaimin.justStore.model.FilePart;
 import com.jaimin.justStore.repository.FileRepository;
 import com.jaimin.justStore.utils.*;
+import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
 import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import static com.jaimin.justStore.utils.UploadFileUtil.getNewFile;
@@ -30,13 +54,41 @@ import static com.jaimin.justStore.utils.UploadFileUtil.getNewFile;
 @Service
 public class FileService {
     private static final Logger logger = LoggerFactory.getLogger(FileService.class);
+    // Length of the failureReason column
+    private static final int MAX_FAILURE_REASON = 1024;
 
     private final FileRepository fileRepository;
     private final YouTubeAuthService youTubeAuthService;
-
-    public FileService(FileRepository fileRepository, YouTubeAuthService youTubeAuthService) {
+    private final VideoEncoderService videoEncoderService;
+    private final CompressionService compressionService;
+    private final ChunkStoreService chunkStoreService;
+    private final YouTubeUploadService youTubeUploadService;
+    private final UploadJobService uploadJobService;
+    private final FilePartService filePartService;
+    private final DownloadCacheService downloadCacheService;
+    private final VideoStoreService videoStoreService;
+
+    public FileService(FileRepository fileRepository, YouTubeAuthService youTubeAuthService,
+                       VideoEncoderService videoEncoderService,
+                       CompressionService compressionService, ChunkStoreService chunkStoreService,
+                       YouTubeUploadService youTubeUploadService, UploadJobService uploadJobService,
+                       FilePartService filePartService, DownloadCacheService downloadCacheService,
+                       VideoStoreService videoStoreService) {
         this.fileRepository = fileRepository;
         this.youTubeAuthService = youTubeAuthService;
+        this.videoEncoderService = videoEncoderService;
+        this.compressionService = compressionService;
+        this.chunkStoreService = chunkStoreService;
+        this.youTubeUploadService = youTubeUploadService;
+        this.uploadJobService = uploadJobService;
+        this.filePartService = filePartService;
+        this.downloadCacheService = downloadCacheService;
+        this.videoStoreService = videoStoreService;
+    }
+
+    @PostConstruct
+    public void init() {
+        uploadJobService.setHandler(this::runUpload);
     }
 
     /**
@@ -83,6 +135,26 @@ public class FileService {
         return toDetailResponseDto(file);
     }
 
+    /**
+     * Status of the upload job of a file, the job id being the file id.
+     */
+    public UploadJobResponseDto getJob(Long id) {
+        File file = fileRepository.findById(id)
+                .orElseThrow(() -> new ResponseStatusException(
+                        HttpStatus.NOT_FOUND, "Upload job not found with id: " + id));
+        return new UploadJobResponseDto(
+                file.getId(),
+                file.getId(),
+                file.getStatus().name(),
+                file.getUploadedBytes(),
+                file.getYoutubeVideoId(),
+                file.getYoutubeVideoUrl(),
+                file.getFailureReason(),
+                file.getCreatedAt(),
+                file.getUpdatedAt()
+        );
+    }
+
     /**
      * Convert File entity to FileSearchResponseDto (user-friendly).
      */
@@ -112,6 +184,7 @@ public class FileService {
                 file.getTags(),
                 file.getYoutubeVideoId(),
                 file.getYoutubeVideoUrl(),
+                file.getEncodingProfile().name(),
                 file.getStatus().name(),
                 file.getSecretKeyHash() != null,
                 file.getCreatedAt(),
@@ -120,6 +193,152 @@ public class FileService {
     }
 
     public DownloadFileResponseDto downloadFile(Long videoId, String secretKey) {
+        File file = getDownloadableFile(videoId, secretKey);
+
+        try {
+            logger.debug("Came in try catch");
+
+            //decode
+            ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+            writeContent(file, decoded, 0, file.getOriginalFileSizeInByte() - 1);
+            byte[] fileContent = decoded.toByteArray();
+
+            if (file.getSecretKeyHash() != null) {
+                //TODO: decryption
+            }
+
+            return DownloadFileResponseDto.from(file, fileContent);
+        } catch (Exception e) {
+            logger.error("Error downloading file", e);
+            throw new ResponseStatusException(
+                    HttpStatus.INTERNAL_SERVER_ERROR,
+                    e.getMessage()
+            );
+        }
+
+    }
+
+    /**
+     * Stream the original file as binary, decoding frames straight into the response.
+     * The file and secret key are checked before anything is written, so those errors keep their status;
+     * a failure while decoding aborts the response, which the client sees as a short body.
+     * <p>
+     * A single-range {@code Range} header is answered with 206 and only the frames holding that range
+     * are decoded; other range sets are ignored and the whole file is sent.
+     */
+    public ResponseEntity<StreamingResponseBody> streamFile(Long videoId, String secretKey, String rangeHeader) {
+        File file = getDownloadableFile(videoId, secretKey);
+        final long fileSize = file.getOriginalFileSizeInByte();
+
+        List<HttpRange> ranges;
+        try {
+            ranges = rangeHeader != null ? HttpRange.parseRanges(rangeHeader) : List.of();
+        } catch (IllegalArgumentException e) {
+            return rangeNotSatisfiable(fileSize);
+        }
+
+        long first = 0;
+        long last = fileSize - 1;
+        boolean partial = ranges.size() == 1;
+        if (partial) {
+            try {
+                first = ranges.getFirst().getRangeStart(fileSize);
+                last = ranges.getFirst().getRangeEnd(fileSize);
+            } catch (IllegalArgumentException e) {
+                return rangeNotSatisfiable(fileSize);
+            }
+        }
+
+        final long rangeFirst = first;
+        final long rangeLast = last;
+        StreamingResponseBody body = outputStream -> {
+            try {
+                writeContent(file, outputStream, rangeFirst, rangeLast);
+            } catch (IOException e) {
+                logger.error("Error streaming file {}", videoId, e);
+                throw e;
+            } catch (Exception e) {
+                logger.error("Error streaming file {}", videoId, e);
+                throw new IOException("Decoding failed: " + e.getMessage(), e);
+            }
+        };
+
+        ContentDisposition contentDisposition = ContentDisposition.attachment()
+                .filename(file.getOriginalFileName(), StandardCharsets.UTF_8)
+                .build();
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(partial ? HttpStatus.PARTIAL_CONTENT : HttpStatus.OK)
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .contentLength(last - first + 1)
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .header(HttpHeaders.CONTENT_DISPOSITION, contentDisposition.toString());
+        if (partial) {
+            response.header(HttpHeaders.CONTENT_RANGE, "bytes " + first + "-" + last + "/" + fileSize);
+        }
+        return response.body(body);
+    }
+
+    /**
+     * Write bytes {@code first} to {@code last} (inclusive) of the original file, from its decoded
+     * copy in the download cache when there is one. Otherwise concurrent requests share one decode,
+     * which is cached once complete.
+     */
+    private void writeContent(File file, OutputStream outputStream, long first, long last) throws Exception {
+        if (downloadCacheService.writeCachedFile(file, outputStream, first, last)) {
+            return;
+        }
+        downloadCacheService.writeShared(file, outputStream, first, last,
+                (target, from, to) -> writeDecoded(file, target, from, to));
+    }
+
+    /**
+     * Decode bytes {@code first} to {@code last} (inclusive) of the original file: from the chunks in its
+     * manifest when it was stored deduplicated, otherwise from its own video or parts.
+     */
+    private void writeDecoded(File file, OutputStream outputStream, long first, long last) throws Exception {
+        List<FileChunk> manifest = chunkStoreService.getManifest(file);
+        if (!manifest.isEmpty()) {
+            chunkStoreService.writeRange(manifest, outputStream, first, last);
+            return;
+        }
+        decodeContent(file, outputStream, first, last);
+    }
+
+    /**
+     * Decode bytes {@code first} to {@code last} (inclusive) of the original file, decompressing on the way.
+     * A range of a compressed file is decoded from the stored span of the blocks holding it, found in the
+     * file's block index; files uploaded before blocks were indexed are decompressed from the start.
+     */
+    private void decodeContent(File file, OutputStream outputStream, long first, long last) throws Exception {
+        if (file.getCompression() == Compression.NONE) {
+            filePartService.writeContent(file, outputStream, first, last);
+            return;
+        }
+        CompressionService.StoredSpan span = compressionService.storedSpan(file, first, last);
+        long spanStart = span != null ? span.rawOffset() : 0;
+        BlockDecompressingOutputStream content = compressionService.decompressing(
+                new RangeOutputStream(outputStream, first - spanStart, last - spanStart));
+        try {
+            if (span != null) {
+                filePartService.writeContent(file, content, span.storedFirst(), span.storedLast());
+            } else {
+                filePartService.writeContent(file, content);
+            }
+            content.finish();
+        } finally {
+            content.end();
+        }
+    }
+
+    private static ResponseEntity<StreamingResponseBody> rangeNotSatisfiable(long fileSize) {
+        return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                .header(HttpHeaders.CONTENT_RANGE, "bytes */" + fileSize)
+                .build();
+    }
+
+    /**
+     * The file to download, after checking the secret key of encrypted files.
+     */
+    private File getDownloadableFile(Long videoId, String secretKey) {
         File file = fileRepository.findById(videoId)
                 .orElseThrow(() -> new ResponseStatusException(
                         HttpStatus.NOT_FOUND, "File not found with id: " + videoId));
@@ -141,32 +360,17 @@ public class FileService {
                 );
             }
         }
-
-        try {
-            logger.debug("Came in try catch");
-            InputStream videoStream = YouTubeVideoDownload.downloadVideo(file.getYoutubeVideoUrl());
-
-            //decode
-            byte[] fileContent = RetrieveVideo.decodeVideo(videoStream);
-
-            if (file.getSecretKeyHash() != null) {
-                //TODO: decryption
-            }
-
-            return DownloadFileResponseDto.from(file, fileContent);
-        } catch (Exception e) {
-            logger.error("Error downloading file", e);
-            throw new ResponseStatusException(
-                    HttpStatus.INTERNAL_SERVER_ERROR,
-                    e.getMessage()
-            );
-        }
-
+        return file;
     }
 
+    /**
+     * Accept an upload: spool the file, save it as {@link Status#SPOOLED} and queue the job that
+     * encodes and uploads it, so the request returns 202 without waiting for either.
+     * The job's progress is polled at {@code /jobs/{id}}, the id being the file's.
+     */
     public ResponseEntity<?> uploadFile(UploadFileRequestDto uploadRequest) throws IOException {
-        // Check if authenticated with YouTube
-        if (!youTubeAuthService.isAuthenticated()) {
+        // Check if authenticated with YouTube, unless videos are stored elsewhere
+        if (videoStoreService.isYouTubeBackend() && !youTubeAuthService.isAuthenticated()) {
             throw new ResponseStatusException(
                     HttpStatus.UNAUTHORIZED,
                     "Please authenticate with YouTube first. Visit /auth/youtube/login"
@@ -180,97 +384,339 @@ public class FileService {
             newFile.setSecretKeyHash(secretKeyHash);
         }
 
-        byte[] fileBytes = uploadRequest.file().getBytes();
-
-        String fileChecksum = ChecksumUtil.calculateChecksum(fileBytes);
-        newFile.setFileChecksum(fileChecksum);
-
-        // Save file with PENDING status initially
-        newFile = fileRepository.save(newFile);
-        logger.info("File record created with ID: {}, Status: PENDING", newFile.getId());
-
         // Encryption if secret key is given
         if (uploadRequest.secretKey() != null) {
             // TODO: encryption
             logger.info("File Encryption need to be implemented");
         }
 
-        // Time to create video
-        final int width = 1920;
-        final int frameRate = 24;
-        final int height = 1072;
-        final String tempOutputPath = "/tmp/jaimin_" + newFile.getId() + ".mp4";
+        EncodingProfile profile = videoEncoderService.resolveProfile(uploadRequest.encodingProfile());
+        newFile.setEncodingProfile(profile);
 
+        uploadJobService.checkAdmission();
+        // The multipart's temp file goes away with the request, and any node may run the job,
+        // so the upload is copied to the shared spool directory
+        final Path upload = uploadJobService.createSpoolFile("upload_", ".spool");
+        File savedFile;
+        try {
+            // Hashed while spooled, the copy is the only read of the upload on the request thread
+            MessageDigest digest = ChecksumUtil.newDigest();
+            try (InputStream fileStream = new DigestInputStream(uploadRequest.file().getInputStream(), digest)) {
+                Files.copy(fileStream, upload, StandardCopyOption.REPLACE_EXISTING);
+            }
+            newFile.setFileChecksum(ChecksumUtil.toChecksum(digest));
+            newFile.setSpoolPath(upload.toString());
+            newFile.setStatus(Status.SPOOLED);
+            savedFile = fileRepository.save(newFile);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(upload);
+            throw e;
+        }
         try {
-            logger.info("Creating video from file bytes...");
-            CreateVideoUtil.createVideo(fileBytes, width, height, frameRate, tempOutputPath);
-            logger.info("Video created successfully at: {}", tempOutputPath);
+            uploadJobService.enqueue(savedFile);
+        } catch (RuntimeException e) {
+            fail(savedFile, "Could not queue the upload: " + e.getMessage());
+            throw e;
+        }
+        logger.info("File record created with ID: {}, Status: SPOOLED", savedFile.getId());
+
+        return ResponseEntity
+                .status(HttpStatus.ACCEPTED)
+                .location(URI.create("/jobs/" + savedFile.getId()))
+                .body(Map.of(
+                        "message", "File accepted, it is encoded and uploaded in the background",
+                        "jobId", savedFile.getId(),
+                        "fileId", savedFile.getId(),
+                        "status", savedFile.getStatus().name()
+                ));
+    }
 
-            // Get access token from auth service
-            String accessToken = youTubeAuthService.getAccessToken();
-            if (accessToken == null) {
-                throw new ResponseStatusException(
-                        HttpStatus.UNAUTHORIZED,
-                        "YouTube access token not available. Please re-authenticate."
-                );
+    /**
+     * Upload job of a spooled file: chunk or compress it, encode it and upload the video, moving the
+     * file through ENCODING and UPLOADING to UPLOADED, or to FAILED with the reason.
+     * <p>
+     * The file keeps a checkpoint of the pipeline: its spooled upload, its encoded video once it is
+     * complete and the upload session with the bytes YouTube committed. A job whose node died
+     * resumes from the last completed stage, an interrupted upload from its committed offset.
+     * The checkpoint is deleted once the upload succeeds or fails. The file is only saved while this
+     * node holds the job, so a node whose lease ran out stops at its next save.
+     * <p>
+     * Content too large for one video is uploaded as parts instead, see {@link FilePartService};
+     * those resume from the last part uploaded.
+     */
+    private void runUpload(Long fileId) {
+        File newFile = fileRepository.findWithTagsById(fileId).orElse(null);
+        if (newFile == null || newFile.getStatus() == Status.UPLOADED || newFile.getStatus() == Status.FAILED) {
+            // Finished by a node that lost the job before it could drop it
+            return;
+        }
+        Set<String> tags = newFile.getTags();
+        EncodingProfile profile = newFile.getEncodingProfile();
+        // Piped uploads encode while uploading, so the video never goes to disk
+        final boolean piped = youTubeUploadService.isPipeEnabled() && videoEncoderService.canStream(profile);
+
+        // Chunked or compressed uploads go to a spool file first, since the video header needs the final length
+        Path spool = null;
+        String failure;
+        try {
+            Path encodedVideo = newFile.getEncodedVideoPath() != null ? Path.of(newFile.getEncodedVideoPath()) : null;
+            if (encodedVideo != null && Files.exists(encodedVideo)) {
+                logger.info("Resuming file {} from its encoded video, {} bytes uploaded before",
+                        fileId, newFile.getUploadedBytes() != null ? newFile.getUploadedBytes() : 0);
+                uploadVideo(newFile, tags, null, encodedVideo);
+                return;
+            }
+            boolean restarted = newFile.getStatus() != Status.SPOOLED;
+            if (restarted) {
+                // Interrupted before its video was complete, or while piped; only the spooled upload is left
+                logger.warn("Restarting interrupted upload of file {}, it was {}", fileId, newFile.getStatus());
+                chunkStoreService.discardManifest(newFile);
+                compressionService.discardBlockIndex(newFile);
+                newFile.setEncodedVideoPath(null);
+                newFile.setUploadSessionUri(null);
+                newFile.setUploadedBytes(null);
+            }
+            final Path upload = Path.of(newFile.getSpoolPath());
+
+            Compression compression = compressionService.choose(newFile.getOriginalFileName(),
+                    newFile.getOriginalFileType(), upload);
+            newFile.setCompression(compression);
+            // With deduplication only chunks not stored yet are spooled, and the file keeps a manifest of its chunks
+            ChunkStoreService.ChunkedUpload chunkedUpload = null;
+
+            // What the video or its parts hold
+            final Path content;
+            final long contentLength;
+            if (chunkStoreService.isEnabled()) {
+                final Path chunkSpool = uploadJobService.createTempFile(".chunks");
+                spool = chunkSpool;
+                try (InputStream fileStream = Files.newInputStream(upload);
+                     OutputStream spoolStream = new BufferedOutputStream(Files.newOutputStream(chunkSpool))) {
+                    chunkedUpload = chunkStoreService.store(fileStream, compression, spoolStream);
+                }
+                content = chunkSpool;
+                contentLength = chunkedUpload.storedBytes();
+                logger.info("Storing {} new bytes of {} byte file", contentLength, newFile.getOriginalFileSizeInByte());
+            } else if (compression == Compression.DEFLATE) {
+                final Path compressedSpool = uploadJobService.createTempFile(".deflate");
+                spool = compressedSpool;
+                // Blocks indexed by original offset, so ranges decode only the blocks they cover
+                List<FileBlock> blocks = new ArrayList<>();
+                try (InputStream fileStream = Files.newInputStream(upload);
+                     OutputStream spoolStream = Files.newOutputStream(compressedSpool)) {
+                    compressionService.compress(fileStream, spoolStream, (rawOffset, storedOffset, storedLength) ->
+                            blocks.add(new FileBlock(newFile, rawOffset, storedOffset, storedLength)));
+                }
+                content = compressedSpool;
+                contentLength = Files.size(compressedSpool);
+                logger.info("Compressed {} bytes to {}", newFile.getOriginalFileSizeInByte(), contentLength);
+                compressionService.saveBlockIndex(newFile, blocks);
+            } else {
+                content = upload;
+                contentLength = newFile.getOriginalFileSizeInByte();
             }
 
-            // Create YouTubeApi instance with access token
-            YouTubeApi youTubeApi = new YouTubeApi(
-                    youTubeAuthService.getHttpTransport(),
-                    accessToken
-            );
+            if (chunkedUpload != null) {
+                chunkStoreService.saveManifest(newFile, chunkedUpload);
+            }
+            if (contentLength == 0) {
+                finishJob(newFile, Status.UPLOADED);
+                logger.info("Every chunk of file {} is already stored, no video needed", newFile.getId());
+                return;
+            }
+            if (filePartService.isSegmented(contentLength)) {
+                uploadParts(newFile, tags, content, contentLength, piped);
+                return;
+            }
+            if (restarted) {
+                // Parts of a run whose content was larger are not needed anymore
+                filePartService.discardParts(newFile);
+            }
 
-            // Upload to YouTube
-            String videoTitle = "JustStore_" + newFile.getId() + "_" + newFile.getOriginalFileName().replace(" ", "_");
-            logger.info("Uploading video to YouTube with title: {}", videoTitle);
+            if (piped) {
+                uploadVideo(newFile, tags, video -> {
+                    try (UploadJobService.EncodeSlot slot = uploadJobService.acquireEncodeSlot();
+                         InputStream contentStream = Files.newInputStream(content)) {
+                        videoEncoderService.encode(contentStream, contentLength, profile, video);
+                    }
+                }, null);
+                return;
+            }
+            updateStatus(newFile, Status.ENCODING);
+            // Encoded next to the spooled upload, so whichever node resumes the job can upload it
+            Path video = uploadJobService.createSpoolFile("video_", ".mp4");
+            logger.info("Creating video from {} bytes with profile {}...", contentLength, profile);
+            try (UploadJobService.EncodeSlot slot = uploadJobService.acquireEncodeSlot();
+                 InputStream contentStream = Files.newInputStream(content)) {
+                videoEncoderService.encode(contentStream, contentLength, profile, video.toString());
+            } catch (IOException | RuntimeException e) {
+                deleteQuietly(video);
+                throw e;
+            }
+            logger.info("Video created successfully at: {}", video);
+            // Checkpoint: from here on a resumed job only uploads
+            newFile.setEncodedVideoPath(video.toString());
+            uploadVideo(newFile, tags, null, video);
+            return;
+        } catch (UploadJobService.LeaseLostException e) {
+            // Another node runs the job now and owns its checkpoint
+            throw e;
+        } catch (GeneralSecurityException e) {
+            logger.error("YouTube authentication error: {}", e.getMessage());
+            failure = "YouTube authentication failed: " + e.getMessage();
+        } catch (ResponseStatusException e) {
+            logger.error("Upload of file {} failed: {}", newFile.getId(), e.getReason());
+            failure = e.getReason();
+        } catch (IOException | RuntimeException e) {
+            logger.error("Upload of file {} failed: {}", newFile.getId(), e.getMessage(), e);
+            failure = "Upload failed: " + e.getMessage();
+        } finally {
+            deleteQuietly(spool);
+        }
 
-            YouTubeApi.YouTubeUploadResult uploadResult = youTubeApi.uploadVideo(
-                    tempOutputPath,
-                    videoTitle,
-                    uploadRequest.tags()
-            );
+        if (uploadJobService.isStopping()) {
+            // Interrupted by the shutdown, not failed; the job is resumed from the checkpoint
+            logger.warn("Upload of file {} interrupted by shutdown, it is resumed later", newFile.getId());
+            return;
+        }
+        newFile.setFailureReason(failureReason(failure));
+        finishJob(newFile, Status.FAILED);
+    }
 
-            // Update file record with YouTube info
-            newFile.setYoutubeVideoId(uploadResult.videoId());
-            newFile.setYoutubeVideoUrl(uploadResult.videoUrl());
-            newFile.setStatus(Status.UPLOADED);
-            fileRepository.save(newFile);
+    /**
+     * Upload the saved file's video to the configured store, from {@code video} or, when
+     * {@code encoder} is given, while it encodes, and mark the file uploaded. A session the file's
+     * video was already uploading to is resumed from the bytes YouTube committed.
+     */
+    private void uploadVideo(File newFile, Set<String> tags, VideoStore.VideoWriter encoder, Path video)
+            throws IOException, GeneralSecurityException {
+        // A piped upload encodes at the same time, it is reported as uploading throughout
+        updateStatus(newFile, Status.UPLOADING);
+        String videoTitle = videoTitle(newFile);
+        // The session and committed offset are kept on the file, so an interrupted upload can be resumed
+        ResumableUpload.ProgressListener progress = (sessionUri, uploadedBytes, totalBytes) -> {
+            newFile.setUploadSessionUri(sessionUri);
+            newFile.setUploadedBytes(uploadedBytes);
+            uploadJobService.saveOwned(newFile);
+            logger.debug("Uploaded {} of {} bytes of file {}", uploadedBytes,
+                    totalBytes >= 0 ? totalBytes : "?", newFile.getId());
+        };
+        VideoStore store = videoStoreService.getUploadStore();
+        VideoStore.StoredVideo uploadResult = null;
+        if (encoder != null) {
+            logger.info("Encoding while uploading video to the {} store with title: {}", store.getName(), videoTitle);
+            uploadResult = store.put(videoTitle, tags, progress, encoder);
+        } else {
+            if (newFile.getUploadSessionUri() != null) {
+                try {
+                    uploadResult = store.resume(newFile.getUploadSessionUri(), video, progress);
+                } catch (IOException e) {
+                    // Sessions expire after about a week; the video is still there to upload again
+                    logger.warn("Could not resume upload session of file {}, starting a new one: {}",
+                            newFile.getId(), e.getMessage());
+                }
+            }
+            if (uploadResult == null) {
+                logger.info("Uploading video to the {} store with title: {}", store.getName(), videoTitle);
+                uploadResult = store.put(video, videoTitle, tags, progress);
+            }
+        }
 
-            logger.info("File uploaded successfully! YouTube Video ID: {}", uploadResult.videoId());
+        // Update file record with the stored video
+        newFile.setVideoStore(store.getName());
+        newFile.setYoutubeVideoId(uploadResult.videoId());
+        newFile.setYoutubeVideoUrl(uploadResult.videoUrl());
+        finishJob(newFile, Status.UPLOADED);
 
-            // Clean up temp file
-            java.io.File tempFile = new java.io.File(tempOutputPath);
-            if (tempFile.exists() && tempFile.delete()) {
-                logger.info("Temporary video file deleted: {}", tempOutputPath);
-            }
+        logger.info("File uploaded successfully! Video ID: {} in the {} store", uploadResult.videoId(), store.getName());
+    }
 
-            return ResponseEntity
-                    .status(HttpStatus.CREATED)
-                    .body(Map.of(
-                            "message", "File uploaded successfully",
-                            "fileId", newFile.getId(),
-                            "youtubeVideoId", uploadResult.videoId(),
-                            "youtubeVideoUrl", uploadResult.videoUrl()
-                    ));
+    /**
+     * Upload the content as parts, encoding and uploading several at once, and mark the file uploaded.
+     * Parts are encoded while uploading as well when the upload is piped.
+     */
+    private void uploadParts(File newFile, Set<String> tags, Path content, long contentLength, boolean piped)
+            throws IOException, GeneralSecurityException {
+        updateStatus(newFile, Status.UPLOADING);
+        List<FilePart> parts = filePartService.uploadParts(newFile, tags, videoTitle(newFile), content,
+                contentLength, piped);
+        // The file points to its first part, so it is still found by a video id
+        newFile.setVideoStore(parts.getFirst().getVideoStore());
+        newFile.setYoutubeVideoId(parts.getFirst().getYoutubeVideoId());
+        newFile.setYoutubeVideoUrl(parts.getFirst().getYoutubeVideoUrl());
+        finishJob(newFile, Status.UPLOADED);
+
+        logger.info("File uploaded successfully as {} videos", parts.size());
+    }
 
-        } catch (GeneralSecurityException e) {
-            logger.error("YouTube authentication error: {}", e.getMessage());
-            newFile.setStatus(Status.FAILED);
-            fileRepository.save(newFile);
-            throw new ResponseStatusException(
-                    HttpStatus.INTERNAL_SERVER_ERROR,
-                    "YouTube authentication failed: " + e.getMessage()
-            );
+    private static String videoTitle(File file) {
+        return "JustStore_" + file.getId() + "_" + file.getOriginalFileName().replace(" ", "_");
+    }
+
+    /**
+     * Save the status of the file of a running job, only while this node still holds the job.
+     */
+    private void updateStatus(File file, Status status) {
+        file.setStatus(status);
+        uploadJobService.saveOwned(file);
+        logger.info("File {} is {}", file.getId(), status);
+    }
+
+    /**
+     * Mark the file of a running job uploaded or failed, and only then delete what the upload kept
+     * to be resumed; once another node took the job over, the checkpoint is that node's.
+     */
+    private void finishJob(File file, Status status) {
+        String spoolPath = file.getSpoolPath();
+        String encodedVideoPath = file.getEncodedVideoPath();
+        file.setSpoolPath(null);
+        file.setEncodedVideoPath(null);
+        file.setUploadSessionUri(null);
+        updateStatus(file, status);
+        deleteCheckpoint(spoolPath, encodedVideoPath);
+    }
+
+    /**
+     * Fail a file whose upload never got a job.
+     */
+    private void fail(File file, String reason) {
+        deleteCheckpoint(file.getSpoolPath(), file.getEncodedVideoPath());
+        file.setSpoolPath(null);
+        file.setEncodedVideoPath(null);
+        file.setUploadSessionUri(null);
+        file.setFailureReason(failureReason(reason));
+        file.setStatus(Status.FAILED);
+        fileRepository.save(file);
+        logger.info("File {} is {}", file.getId(), Status.FAILED);
+    }
+
+    private static String failureReason(String reason) {
+        return reason != null && reason.length() > MAX_FAILURE_REASON
+                ? reason.substring(0, MAX_FAILURE_REASON)
+                : reason;
+    }
+
+    /**
+     * Delete what an upload kept to be resumed, once it ended.
+     */
+    private static void deleteCheckpoint(String spoolPath, String encodedVideoPath) {
+        if (spoolPath != null) {
+            deleteQuietly(Path.of(spoolPath));
+        }
+        if (encodedVideoPath != null && deleteQuietly(Path.of(encodedVideoPath))) {
+            logger.info("Temporary video file deleted: {}", encodedVideoPath);
+        }
+    }
+
+    private static boolean deleteQuietly(Path path) {
+        if (path == null) {
+            return false;
+        }
+        try {
+            return Files.deleteIfExists(path);
         } catch (IOException e) {
-            logger.error("Error during upload: {}", e.getMessage());
-            newFile.setStatus(Status.FAILED);
-            fileRepository.save(newFile);
-            throw new ResponseStatusException(
-                    HttpStatus.INTERNAL_SERVER_ERROR,
-                    "Upload failed: " + e.getMessage()
-            );
+            logger.warn("Could not delete temp file {}: {}", path, e.getMessage());
+            return false;
         }
     }
 }
-
@@ -0,0 +1,460 @@
+package com.jaimin.justStore.service;
+
+import com.jaimin.justStore.enums.Status;
+import com.jaimin.justStore.model.File;
+import com.jaimin.justStore.model.UploadJob;
+import com.jaimin.justStore.repository.FileRepository;
+import com.jaimin.justStore.repository.UploadJobRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs accepted uploads in the background on any node, through the {@code upload_jobs} table.
+ * <p>
+ * A node claims the oldest queued job with {@code SELECT ... FOR UPDATE SKIP LOCKED}, so nodes
+ * polling at once never take the same job, and holds it under a lease it renews while the job
+ * runs. A node that dies stops renewing; its jobs go back to the queue once their lease expires and
+ * another node resumes them from their file's checkpoint, up to {@code max-attempts} times. Leases
+ * are set and checked against the database's clock, so nodes' clocks and time zones need not agree.
+ * A node shutting down gives its jobs back right away. A node that failed to renew a lease in time, e.g.
+ * while paused, interrupts the job once it finds it requeued, and a job's file is only saved while
+ * its node still holds the job, so a node that lost a job never overwrites the one that took it.
+ * <p>
+ * Each node runs at most {@code workers} jobs at once, on virtual threads, and encoding, the CPU
+ * heavy step, takes one of fewer encode slots. Uploads accepted and not finished yet are capped
+ * across all nodes; past that new uploads are turned away with 503.
+ */
+@Service
+public class UploadJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UploadJobService.class);
+    private static final long SHUTDOWN_GRACE_SECONDS = 10;
+    // Prefix of node-local temp files
+    private static final String TEMP_FILE_PREFIX = "jaimin_";
+
+    private final UploadJobRepository uploadJobRepository;
+    private final FileRepository fileRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    // Upload jobs this node runs at once
+    @Value("${app.jobs.workers:4}")
+    private int workers;
+
+    // Uploads accepted and not finished yet on all nodes, running ones included
+    @Value("${app.jobs.max-queued:32}")
+    private int maxQueued;
+
+    // Videos this node encodes at once
+    @Value("${app.jobs.max-concurrent-encodes:2}")
+    private int maxConcurrentEncodes;
+
+    // Where uploads wait for their job; every node must see the same directory
+    @Value("${app.jobs.spool-dir:${java.io.tmpdir}/juststore-spool}")
+    private String spoolDir;
+
+    // Owner name of this node's jobs; empty = host name and process id
+    @Value("${app.jobs.node-id:}")
+    private String configuredNodeId;
+
+    // Node-local temp files go to a directory per node id under this one
+    @Value("${app.jobs.temp-dir:${java.io.tmpdir}/juststore-tmp}")
+    private String tempDir;
+
+    @Value("${app.jobs.lease-ms:60000}")
+    private long leaseMillis;
+
+    @Value("${app.jobs.poll-interval-ms:2000}")
+    private long pollIntervalMillis;
+
+    // Times a job is started before its upload is given up, e.g. when it keeps taking its node down
+    @Value("${app.jobs.max-attempts:3}")
+    private int maxAttempts;
+
+    private String hostName;
+    private String nodeId;
+    private Path spoolPath;
+    private Path tempPath;
+    private Semaphore workerSlots;
+    private Semaphore encodeSlots;
+    private ExecutorService workerPool;
+    // Polls for jobs and renews leases; polling on one thread keeps a node from racing itself
+    private ScheduledExecutorService scheduler;
+    // Jobs running on this node, whose leases it renews, and the threads running them
+    private final Map<Long, Thread> runningJobs = new ConcurrentHashMap<>();
+    private volatile JobHandler handler;
+    private volatile boolean stopping;
+
+    public UploadJobService(UploadJobRepository uploadJobRepository, FileRepository fileRepository,
+                            PlatformTransactionManager transactionManager) {
+        this.uploadJobRepository = uploadJobRepository;
+        this.fileRepository = fileRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @PostConstruct
+    public void init() {
+        hostName = hostName();
+        nodeId = configuredNodeId.isBlank() ? hostName + "-" + ProcessHandle.current().pid() : configuredNodeId;
+        spoolPath = Path.of(spoolDir);
+        try {
+            Files.createDirectories(spoolPath);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create upload spool directory " + spoolPath, e);
+        }
+        tempPath = Path.of(tempDir, nodeId.replaceAll("[^A-Za-z0-9._-]", "_"));
+        try {
+            Files.createDirectories(tempPath);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create temp directory " + tempPath, e);
+        }
+        workerSlots = new Semaphore(workers);
+        encodeSlots = new Semaphore(maxConcurrentEncodes, true);
+        workerPool = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("upload-job-", 0).factory());
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("upload-job-poller").daemon(true).factory());
+        scheduler.scheduleWithFixedDelay(this::poll, pollIntervalMillis, pollIntervalMillis, TimeUnit.MILLISECONDS);
+        long heartbeatMillis = Math.max(1, leaseMillis / 3);
+        scheduler.scheduleWithFixedDelay(this::heartbeat, heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+        logger.info("Upload jobs on node {}: {} workers, {} queued at most, {} concurrent encodes, spooled to {}",
+                nodeId, workers, maxQueued, maxConcurrentEncodes, spoolPath);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        stopping = true;
+        scheduler.shutdownNow();
+        workerPool.shutdownNow();
+        // Interrupted jobs give themselves back before the database goes away
+        if (!workerPool.awaitTermination(SHUTDOWN_GRACE_SECONDS, TimeUnit.SECONDS)) {
+            logger.warn("Upload jobs still running at shutdown are requeued once their lease expires");
+        }
+    }
+
+    /**
+     * Whether this node is shutting down, so a job that fails now was interrupted rather than failed.
+     */
+    public boolean isStopping() {
+        return stopping;
+    }
+
+    /**
+     * Set what runs a claimed job; jobs are only claimed once it is set.
+     */
+    public void setHandler(JobHandler handler) {
+        this.handler = handler;
+        wakeUp();
+    }
+
+    /**
+     * Fail with 503 when too many uploads are in flight on all nodes.
+     */
+    public void checkAdmission() {
+        if (uploadJobRepository.count() >= maxQueued) {
+            throw new ResponseStatusException(
+                    HttpStatus.SERVICE_UNAVAILABLE,
+                    "Too many uploads in progress, please retry later"
+            );
+        }
+    }
+
+    /**
+     * A new file in the shared spool directory, for what a job must be able to resume from on any node.
+     */
+    public Path createSpoolFile(String prefix, String suffix) throws IOException {
+        return Files.createTempFile(spoolPath, prefix, suffix);
+    }
+
+    public Path getSpoolDirectory() {
+        return spoolPath;
+    }
+
+    /**
+     * A new file in this node's temp directory, for what only this node reads: chunk and
+     * compression spools and part videos.
+     */
+    public Path createTempFile(String suffix) throws IOException {
+        return Files.createTempFile(tempPath, TEMP_FILE_PREFIX, suffix);
+    }
+
+    /**
+     * Directory of this node's temp files; no other node writes to it.
+     */
+    public Path getTempDirectory() {
+        return tempPath;
+    }
+
+    /**
+     * Whether {@code directory} is the temp directory of another process of this host that runs
+     * under its default node id and has exited, so nothing of it is in use anymore.
+     */
+    public boolean isExitedDefaultNodeDirectory(Path directory) {
+        String prefix = hostName + "-";
+        String name = directory.getFileName().toString();
+        if (!name.startsWith(prefix) || directory.equals(tempPath)) {
+            return false;
+        }
+        try {
+            return ProcessHandle.of(Long.parseLong(name.substring(prefix.length()))).isEmpty();
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Queue the upload of a saved file from its checkpoint, for any node to run.
+     *
+     * @throws org.springframework.dao.DataIntegrityViolationException when the file already has a job.
+     */
+    public void enqueue(File file) {
+        UploadJob job = uploadJobRepository.save(new UploadJob(file));
+        logger.debug("Upload job {} of file {} queued", job.getId(), file.getId());
+        wakeUp();
+    }
+
+    /**
+     * Wait for an encode slot; close the returned slot once the video is encoded.
+     */
+    public EncodeSlot acquireEncodeSlot() throws InterruptedIOException {
+        try {
+            encodeSlots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for an encode slot");
+        }
+        return encodeSlots::release;
+    }
+
+    /**
+     * Claim queued jobs while this node has free workers.
+     */
+    private void poll() {
+        if (handler == null) {
+            return;
+        }
+        try {
+            while (workerSlots.tryAcquire()) {
+                UploadJob job;
+                try {
+                    job = claimNext();
+                } catch (RuntimeException e) {
+                    workerSlots.release();
+                    throw e;
+                }
+                if (job == null) {
+                    workerSlots.release();
+                    return;
+                }
+                try {
+                    workerPool.execute(() -> run(job));
+                } catch (RejectedExecutionException e) {
+                    // Shutting down; another node takes it once the lease expires
+                    workerSlots.release();
+                    return;
+                }
+            }
+        } catch (RuntimeException e) {
+            // Thrown out of a scheduled task it would stop the polling for good
+            logger.warn("Polling for upload jobs failed: {}", e.getMessage());
+        }
+    }
+
+    private UploadJob claimNext() {
+        return transactionTemplate.execute(transaction -> {
+            UploadJob job = uploadJobRepository.lockNextQueued().orElse(null);
+            if (job != null) {
+                uploadJobRepository.claim(job.getId(), nodeId, leaseMillis);
+                // Reloaded with the state, owner and attempts the update gave it
+                job = uploadJobRepository.findById(job.getId()).orElseThrow();
+            }
+            return job;
+        });
+    }
+
+    private void run(UploadJob job) {
+        Long fileId = job.getFile().getId();
+        runningJobs.put(job.getId(), Thread.currentThread());
+        try {
+            if (job.getAttempts() > maxAttempts) {
+                abandon(job, fileId);
+            } else {
+                logger.info("Running upload job {} of file {}, attempt {}", job.getId(), fileId, job.getAttempts());
+                handler.run(fileId);
+            }
+            if (stopping) {
+                uploadJobRepository.release(job.getId(), nodeId);
+            } else {
+                uploadJobRepository.deleteByIdAndOwner(job.getId(), nodeId);
+            }
+        } catch (LeaseLostException e) {
+            // The node that took it over runs it from here
+            logger.warn("Upload job {} stopped: {}", job.getId(), e.getMessage());
+        } catch (RuntimeException e) {
+            logger.error("Upload job {} failed, requeueing it: {}", job.getId(), e.getMessage(), e);
+            try {
+                uploadJobRepository.requeue(job.getId(), nodeId);
+            } catch (RuntimeException requeueFailure) {
+                // The lease runs out and the job is requeued anyway
+                logger.warn("Could not requeue upload job {}: {}", job.getId(), requeueFailure.getMessage());
+            }
+        } finally {
+            runningJobs.remove(job.getId());
+            workerSlots.release();
+            wakeUp();
+        }
+    }
+
+    /**
+     * Save the file of a job this node runs, in one transaction with the check that this node still
+     * holds the job; the job stays locked until the file is saved, so it can't be requeued meanwhile.
+     *
+     * @throws LeaseLostException when the job was requeued or taken over by another node.
+     */
+    public File saveOwned(File file) {
+        return transactionTemplate.execute(transaction -> {
+            UploadJob job = uploadJobRepository.lockByFileId(file.getId()).orElse(null);
+            if (job == null || !nodeId.equals(job.getOwner())) {
+                throw new LeaseLostException("Node " + nodeId + " does not hold the upload job of file "
+                        + file.getId() + " anymore");
+            }
+            return fileRepository.save(file);
+        });
+    }
+
+    /**
+     * Give up a job that was started too often without finishing.
+     */
+    private void abandon(UploadJob job, Long fileId) {
+        logger.error("Upload job {} of file {} was interrupted {} times, giving up", job.getId(), fileId, maxAttempts);
+        fileRepository.findById(fileId).ifPresent(file -> {
+            deleteQuietly(file.getSpoolPath());
+            deleteQuietly(file.getEncodedVideoPath());
+            file.setSpoolPath(null);
+            file.setEncodedVideoPath(null);
+            file.setUploadSessionUri(null);
+            file.setStatus(Status.FAILED);
+            file.setFailureReason("Upload was interrupted " + maxAttempts + " times");
+            fileRepository.save(file);
+        });
+    }
+
+    private static void deleteQuietly(String path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(Path.of(path));
+        } catch (IOException e) {
+            logger.warn("Could not delete {}: {}", path, e.getMessage());
+        }
+    }
+
+    /**
+     * Renew the leases of this node's jobs and requeue jobs whose node stopped renewing them.
+     */
+    private void heartbeat() {
+        try {
+            if (!runningJobs.isEmpty()) {
+                Set<Long> jobs = Set.copyOf(runningJobs.keySet());
+                if (uploadJobRepository.renewLeases(jobs, nodeId, leaseMillis) < jobs.size()) {
+                    interruptLostJobs(jobs);
+                }
+            }
+            int requeued = uploadJobRepository.requeueExpired();
+            if (requeued > 0) {
+                logger.warn("Requeued {} upload jobs whose node stopped renewing their lease", requeued);
+                poll();
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Upload job heartbeat failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Interrupt the jobs among {@code jobs} this node does not hold anymore, requeued since their
+     * lease expired, so only the node they went to goes on uploading them.
+     */
+    private void interruptLostJobs(Set<Long> jobs) {
+        Set<Long> held = new HashSet<>(uploadJobRepository.findIdsByOwner(jobs, nodeId));
+        for (Long jobId : jobs) {
+            // A job not held anymore may also have just finished
+            Thread thread = held.contains(jobId) ? null : runningJobs.get(jobId);
+            if (thread != null) {
+                logger.warn("Lease of upload job {} expired and it was requeued, stopping it on this node", jobId);
+                thread.interrupt();
+            }
+        }
+    }
+
+    /**
+     * Poll now instead of at the next interval.
+     */
+    private void wakeUp() {
+        try {
+            scheduler.execute(this::poll);
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+        }
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName().replaceAll("[^A-Za-z0-9._-]", "_");
+        } catch (UnknownHostException e) {
+            return UUID.randomUUID().toString();
+        }
+    }
+
+    /**
+     * Runs the upload of a file from its checkpoint. It records the outcome on the file itself;
+     * a job is only retried when its node dies or this throws.
+     */
+    @FunctionalInterface
+    public interface JobHandler {
+        void run(Long fileId);
+    }
+
+    /**
+     * Thrown when the file of a job is saved by a node that does not hold the job anymore.
+     */
+    public static class LeaseLostException extends IllegalStateException {
+        public LeaseLostException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * A held encode slot.
+     */
+    @FunctionalInterface
+    public interface EncodeSlot extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,180 @@
+package com.jaimin.justStore.service;
+
+import com.jaimin.justStore.enums.Status;
+import com.jaimin.justStore.model.File;
+import com.jaimin.justStore.repository.FileRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Finds uploads a crash left behind, at startup and then periodically.
+ * <p>
+ * An unfinished file with no upload job (its node died before queueing it, or it predates upload
+ * jobs) is queued again when its checkpoint still holds the spooled upload or the encoded video, so
+ * the job resumes from there, and marked FAILED otherwise. Files in the spool directory no
+ * unfinished upload points to are deleted, and so are the temp files of this node's last run, from
+ * its own temp directory only.
+ */
+@Service
+public class UploadRecoveryService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UploadRecoveryService.class);
+
+    private static final Set<Status> UNFINISHED = Set.of(Status.PENDING, Status.SPOOLED, Status.ENCODING, Status.UPLOADING);
+
+    private final FileRepository fileRepository;
+    private final UploadJobService uploadJobService;
+
+    @Value("${app.recovery.interval-ms:600000}")
+    private long intervalMillis;
+
+    // Unfinished uploads and spool files untouched for this long count as abandoned
+    @Value("${app.recovery.stale-after-ms:600000}")
+    private long staleAfterMillis;
+
+    private ScheduledExecutorService scheduler;
+
+    public UploadRecoveryService(FileRepository fileRepository, UploadJobService uploadJobService) {
+        this.fileRepository = fileRepository;
+        this.uploadJobService = uploadJobService;
+    }
+
+    @PostConstruct
+    public void init() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("upload-recovery").daemon(true).factory());
+        Instant started = Instant.now();
+        scheduler.execute(() -> deleteLocalTempFiles(started));
+        scheduler.scheduleWithFixedDelay(this::runPass, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * One recovery pass: requeue or fail stale uploads, then collect orphaned spool files.
+     */
+    private void runPass() {
+        try {
+            Instant staleBefore = Instant.now().minus(Duration.ofMillis(staleAfterMillis));
+            List<File> stale = fileRepository.findStaleUploads(UNFINISHED,
+                    LocalDateTime.now().minus(Duration.ofMillis(staleAfterMillis)));
+            for (File file : stale) {
+                recover(file);
+            }
+            collectSpoolGarbage(staleBefore);
+        } catch (RuntimeException e) {
+            // Thrown out of a scheduled task it would stop the recovery for good
+            logger.warn("Upload recovery pass failed: {}", e.getMessage());
+        }
+    }
+
+    private void recover(File file) {
+        if (exists(file.getEncodedVideoPath()) || exists(file.getSpoolPath())) {
+            try {
+                uploadJobService.enqueue(file);
+                logger.warn("Requeued interrupted upload of file {}, it was {}", file.getId(), file.getStatus());
+            } catch (DataIntegrityViolationException e) {
+                logger.debug("File {} was requeued by another node", file.getId());
+            }
+            return;
+        }
+        logger.warn("Interrupted upload of file {} has nothing left to resume from, marking it FAILED", file.getId());
+        file.setUploadSessionUri(null);
+        file.setStatus(Status.FAILED);
+        file.setFailureReason("Upload was interrupted and its spooled file is gone");
+        fileRepository.save(file);
+    }
+
+    /**
+     * Delete spool directory files no unfinished upload points to. Recently written ones are kept,
+     * since an upload being spooled or encoded is not recorded on its file yet.
+     */
+    private void collectSpoolGarbage(Instant staleBefore) {
+        Set<Path> referenced = new HashSet<>();
+        for (File file : fileRepository.findByStatusIn(UNFINISHED)) {
+            if (file.getSpoolPath() != null) {
+                referenced.add(Path.of(file.getSpoolPath()).toAbsolutePath());
+            }
+            if (file.getEncodedVideoPath() != null) {
+                referenced.add(Path.of(file.getEncodedVideoPath()).toAbsolutePath());
+            }
+        }
+        int deleted = deleteOlderThan(uploadJobService.getSpoolDirectory(), "", staleBefore, referenced);
+        if (deleted > 0) {
+            logger.info("Deleted {} orphaned spool files", deleted);
+        }
+    }
+
+    /**
+     * Delete the temp files a previous run of this node left behind when it died: those in its
+     * temp directory from before it started, and the directories of exited processes of this host
+     * that ran under their default node id, which no later run would find again.
+     */
+    private void deleteLocalTempFiles(Instant started) {
+        Path own = uploadJobService.getTempDirectory();
+        int deleted = deleteOlderThan(own, "", started, Set.of());
+        try (Stream<Path> entries = Files.list(own.getParent())) {
+            for (Path entry : (Iterable<Path>) entries::iterator) {
+                if (Files.isDirectory(entry) && uploadJobService.isExitedDefaultNodeDirectory(entry)) {
+                    deleted += deleteOlderThan(entry, "", Instant.MAX, Set.of());
+                    Files.deleteIfExists(entry);
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Could not clean up temp directories next to {}: {}", own, e.getMessage());
+        }
+        if (deleted > 0) {
+            logger.info("Deleted {} temp files left by an earlier run", deleted);
+        }
+    }
+
+    private static int deleteOlderThan(Path directory, String prefix, Instant before, Set<Path> keep) {
+        int deleted = 0;
+        try (Stream<Path> entries = Files.list(directory)) {
+            for (Path entry : (Iterable<Path>) entries::iterator) {
+                if (!entry.getFileName().toString().startsWith(prefix) || keep.contains(entry.toAbsolutePath())
+                        || !Files.isRegularFile(entry)) {
+                    continue;
+                }
+                try {
+                    FileTime modified = Files.getLastModifiedTime(entry);
+                    if (modified.toInstant().isBefore(before) && Files.deleteIfExists(entry)) {
+                        deleted++;
+                    }
+                } catch (IOException e) {
+                    logger.warn("Could not delete {}: {}", entry, e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Could not clean up {}: {}", directory, e.getMessage());
+        }
+        return deleted;
+    }
+
+    private static boolean exists(String path) {
+        return path != null && Files.exists(Path.of(path));
+    }
+}
@@ -0,0 +1,95 @@
+package com.jaimin.justStore.service;
+
+import com.jaimin.justStore.enums.EncodingProfile;
+import com.jaimin.justStore.utils.RetrieveVideo;
+import com.jaimin.justStore.utils.VideoInput;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Owns the frame decode workers and turns videos back into file content.
+ */
+@Service
+public class VideoDecoderService {
+
+    private static final Logger logger = LoggerFactory.getLogger(VideoDecoderService.class);
+
+    // 0 = one decode worker per available core
+    @Value("${app.decoder.parallelism:0}")
+    private int configuredParallelism;
+
+    // false = log corrupt frames and keep decoding instead of failing the download
+    @Value("${app.decoder.strict:true}")
+    private boolean strict;
+
+    private int parallelism;
+    private ExecutorService decodePool;
+
+    @PostConstruct
+    public void init() {
+        parallelism = configuredParallelism > 0
+                ? configuredParallelism
+                : Runtime.getRuntime().availableProcessors();
+        ThreadFactory threadFactory = Thread.ofPlatform().name("frame-decode-", 0).daemon(true).factory();
+        decodePool = Executors.newFixedThreadPool(parallelism, threadFactory);
+        logger.info("Video decoder initialized with {} decode workers, strict checksums {}", parallelism, strict);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        decodePool.shutdownNow();
+    }
+
+    /**
+     * Decode a video and write the file content to {@code outputStream} in order,
+     * verifying frame checksums and the trailer's SHA-256 of videos that have them.
+     */
+    public void decode(InputStream video, EncodingProfile profile, OutputStream outputStream) throws Exception {
+        logger.debug("Decoding video with profile {}", profile);
+        RetrieveVideo.decodeVideo(video, profile, outputStream, decodePool, parallelism, strict);
+    }
+
+    /**
+     * Decode only bytes {@code first} to {@code last} (inclusive) of the file content.
+     */
+    public void decodeRange(InputStream video, EncodingProfile profile, OutputStream outputStream,
+                            long first, long last) throws Exception {
+        logger.debug("Decoding bytes {}-{} of video with profile {}", first, last, profile);
+        RetrieveVideo.decodeRange(video, profile, outputStream, decodePool, parallelism, strict, first, last);
+    }
+
+    /**
+     * Decode bytes {@code first} to {@code last} (inclusive), going on from {@code digest}, the
+     * SHA-256 of the bytes before {@code first}, to check the trailer once the decode reaches the end.
+     * An unreadable header frame only falls back to the legacy length frame when it holds
+     * {@code legacyBytes}, see {@link RetrieveVideo#NOT_LEGACY}.
+     */
+    public void decodeRange(VideoInput video, EncodingProfile profile, OutputStream outputStream,
+                            long first, long last, MessageDigest digest, long legacyBytes) throws Exception {
+        logger.debug("Decoding bytes {}-{} of video with profile {}", first, last, profile);
+        RetrieveVideo.decodeRange(video, profile, outputStream, decodePool, parallelism, strict, first, last,
+                digest, legacyBytes);
+    }
+
+    public byte[] decode(InputStream video, EncodingProfile profile) throws Exception {
+        ByteArrayOutputStream fileContent = new ByteArrayOutputStream();
+        decode(video, profile, fileContent);
+        return fileContent.toByteArray();
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+}
@@ -0,0 +1,149 @@
+package com.jaimin.justStore.service;
+
+import com.jaimin.justStore.enums.EncoderBackend;
+import com.jaimin.justStore.enums.EncodingProfile;
+import com.jaimin.justStore.utils.CreateVideoUtil;
+import com.jaimin.justStore.utils.FFmpegEncoderOptions;
+import com.jaimin.justStore.utils.FecOptions;
+import com.jaimin.justStore.utils.VideoSink;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Owns the frame render workers and turns file streams into videos.
+ */
+@Service
+public class VideoEncoderService {
+
+    private static final Logger logger = LoggerFactory.getLogger(VideoEncoderService.class);
+
+    // 0 = one render worker per available core
+    @Value("${app.encoder.parallelism:0}")
+    private int configuredParallelism;
+
+    @Value("${app.encoder.default-profile:BW_1080P_BLOCK2}")
+    private EncodingProfile defaultProfile;
+
+    // Empty = the backend named by each profile
+    @Value("${app.encoder.backend:}")
+    private EncoderBackend backendOverride;
+
+    // -1 = the parity named by each profile, 0 = no FEC
+    @Value("${app.encoder.fec.parity:-1}")
+    private int fecParityOverride;
+
+    @Value("${app.encoder.fec.group-frames:" + FecOptions.DEFAULT_GROUP_FRAMES + "}")
+    private int fecGroupFrames;
+
+    @Value("${app.encoder.ffmpeg.codec:libx264}")
+    private String ffmpegCodec;
+
+    @Value("${app.encoder.ffmpeg.preset:veryfast}")
+    private String ffmpegPreset;
+
+    @Value("${app.encoder.ffmpeg.crf:18}")
+    private int ffmpegCrf;
+
+    @Value("${app.encoder.ffmpeg.qp:-1}")
+    private int ffmpegQp;
+
+    @Value("${app.encoder.ffmpeg.bitrate:50000000}")
+    private int ffmpegBitrate;
+
+    @Value("${app.encoder.ffmpeg.threads:0}")
+    private int ffmpegThreads;
+
+    @Value("${app.encoder.ffmpeg.gop-size:24}")
+    private int ffmpegGopSize;
+
+    private int parallelism;
+    private ExecutorService renderPool;
+    private FFmpegEncoderOptions ffmpegOptions;
+
+    @PostConstruct
+    public void init() {
+        parallelism = configuredParallelism > 0
+                ? configuredParallelism
+                : Runtime.getRuntime().availableProcessors();
+        ThreadFactory threadFactory = Thread.ofPlatform().name("frame-render-", 0).daemon(true).factory();
+        renderPool = Executors.newFixedThreadPool(parallelism, threadFactory);
+        ffmpegOptions = new FFmpegEncoderOptions(ffmpegCodec, ffmpegPreset, ffmpegCrf, ffmpegQp,
+                ffmpegBitrate, ffmpegThreads, ffmpegGopSize);
+        logger.info("Video encoder initialized with {} render workers, FFmpeg options {}", parallelism, ffmpegOptions);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        renderPool.shutdownNow();
+    }
+
+    /**
+     * The requested profile, or the configured default when none was given.
+     */
+    public EncodingProfile resolveProfile(EncodingProfile requested) {
+        return requested != null ? requested : defaultProfile;
+    }
+
+    /**
+     * Encode {@code totalBytes} bytes of the stream into a video at {@code outputPath}.
+     *
+     * @return SHA-256 of the encoded content.
+     */
+    public byte[] encode(InputStream fileContent, long totalBytes, EncodingProfile profile, String outputPath) throws IOException {
+        EncoderBackend backend = resolveBackend(profile);
+        FecOptions fec = resolveFec(profile);
+        logger.debug("Encoding {} bytes with profile {} on {}, FEC {}", totalBytes, profile, backend, fec);
+        try (VideoSink sink = CreateVideoUtil.openSink(profile, backend, ffmpegOptions, outputPath)) {
+            return CreateVideoUtil.createVideo(fileContent, totalBytes, profile, sink, fec, renderPool, parallelism);
+        }
+    }
+
+    /**
+     * Encode {@code totalBytes} bytes of the stream into a video written to {@code output} as it is
+     * encoded, for profiles where {@link #canStream(EncodingProfile)}. {@code output} is not closed.
+     *
+     * @return SHA-256 of the encoded content.
+     */
+    public byte[] encode(InputStream fileContent, long totalBytes, EncodingProfile profile, OutputStream output) throws IOException {
+        EncoderBackend backend = resolveBackend(profile);
+        FecOptions fec = resolveFec(profile);
+        logger.debug("Encoding {} bytes with profile {} on {} to a stream, FEC {}", totalBytes, profile, backend, fec);
+        try (VideoSink sink = CreateVideoUtil.openSink(profile, backend, ffmpegOptions, output)) {
+            return CreateVideoUtil.createVideo(fileContent, totalBytes, profile, sink, fec, renderPool, parallelism);
+        }
+    }
+
+    /**
+     * Whether videos of this profile can be written to a stream instead of a file.
+     */
+    public boolean canStream(EncodingProfile profile) {
+        return resolveBackend(profile) == EncoderBackend.FFMPEG;
+    }
+
+    private EncoderBackend resolveBackend(EncodingProfile profile) {
+        return backendOverride != null ? backendOverride : profile.getEncoderBackend();
+    }
+
+    /**
+     * Reed-Solomon settings for a profile: its own parity unless overridden in the configuration.
+     */
+    public FecOptions resolveFec(EncodingProfile profile) {
+        int parity = fecParityOverride >= 0 ? fecParityOverride : profile.getFecParity();
+        return new FecOptions(parity, fecGroupFrames);
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+}
@@ -0,0 +1,248 @@
+package com.jaimin.justStore.service;
+
+import com.jaimin.justStore.enums.EncodingProfile;
+import com.jaimin.justStore.model.File;
+import com.jaimin.justStore.model.FilePart;
+import com.jaimin.justStore.repository.FilePartRepository;
+import com.jaimin.justStore.repository.FileRepository;
+import com.jaimin.justStore.utils.ChecksumMismatchException;
+import com.jaimin.justStore.utils.ChecksumUtil;
+import com.jaimin.justStore.utils.RetrieveVideo;
+import com.jaimin.justStore.utils.VideoFormat;
+import com.jaimin.justStore.utils.VideoInput;
+import com.jaimin.justStore.utils.VideoStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Decodes stored videos from the format that suits decoding best.
+ * <p>
+ * A video is read in the format it decoded from last time, recorded with its file or part. The
+ * first time, or once that format fails, the store's formats of the encoded frame size are probed
+ * and tried in the store's order, the smallest stream of the fastest decoded codec first. A format
+ * whose frames fail their checksum is given up for the next one, which goes on from the first byte
+ * not written yet, since a frame is only written once it passed its checksum. The SHA-256 of a whole
+ * video decode is carried from format to format, so the trailer is still checked after a fallback.
+ * Bytes downloaded and decode time are logged for every format tried. A video none of whose
+ * formats suit is recorded as {@value #AS_STORED}, read as it was put, so it is not probed again.
+ */
+@Service
+public class VideoFormatService {
+
+    private static final Logger logger = LoggerFactory.getLogger(VideoFormatService.class);
+
+    // Recorded format of a video read as it was put
+    static final String AS_STORED = "*";
+
+    private final VideoStoreService videoStoreService;
+    private final DownloadCacheService downloadCacheService;
+    private final VideoDecoderService videoDecoderService;
+    private final FileRepository fileRepository;
+    private final FilePartRepository filePartRepository;
+
+    public VideoFormatService(VideoStoreService videoStoreService, DownloadCacheService downloadCacheService,
+                              VideoDecoderService videoDecoderService, FileRepository fileRepository,
+                              FilePartRepository filePartRepository) {
+        this.videoStoreService = videoStoreService;
+        this.downloadCacheService = downloadCacheService;
+        this.videoDecoderService = videoDecoderService;
+        this.fileRepository = fileRepository;
+        this.filePartRepository = filePartRepository;
+    }
+
+    /**
+     * Decode bytes {@code first} to {@code last} (inclusive, capped at its end) of a file stored as
+     * one video; the whole video, its trailer checksum included, when {@code first} is 0 and
+     * {@code last} is {@link Long#MAX_VALUE}.
+     */
+    public void decode(File file, OutputStream outputStream, long first, long last) throws Exception {
+        // Files from before the version was recorded may be legacy videos, of the original length
+        long legacyBytes = file.getVideoVersion() != null || file.getOriginalFileSizeInByte() == null
+                ? RetrieveVideo.NOT_LEGACY : file.getOriginalFileSizeInByte();
+        decode(new Source("file " + file.getId(), videoStoreService.get(file.getVideoStore()),
+                file.getYoutubeVideoId(), file.getYoutubeVideoUrl(), file.getVideoFormat(), legacyBytes,
+                format -> fileRepository.updateVideoFormat(file.getId(), format)),
+                file.getEncodingProfile(), outputStream, first, last);
+    }
+
+    /**
+     * Decode bytes {@code first} to {@code last} (inclusive) of a part's video, like
+     * {@link #decode(File, OutputStream, long, long)}.
+     */
+    public void decode(FilePart part, EncodingProfile profile, OutputStream outputStream, long first, long last)
+            throws Exception {
+        decode(new Source("part " + part.getPartIndex() + " of file " + part.getFile().getId(),
+                videoStoreService.get(part.getVideoStore()), part.getYoutubeVideoId(), part.getYoutubeVideoUrl(),
+                part.getVideoFormat(), RetrieveVideo.NOT_LEGACY,
+                format -> filePartRepository.updateVideoFormat(part.getId(), format)),
+                profile, outputStream, first, last);
+    }
+
+    private void decode(Source video, EncodingProfile profile, OutputStream outputStream, long first, long last)
+            throws Exception {
+        CountingOutputStream written = new CountingOutputStream(outputStream);
+        // SHA-256 of everything written so far, checked against the trailer when the decode reaches the end
+        MessageDigest digest = first == 0 ? ChecksumUtil.newDigest() : null;
+        // Formats in the order they are tried, null for the video as it was put
+        List<String> formats = new ArrayList<>();
+        if (video.format() != null) {
+            formats.add(AS_STORED.equals(video.format()) ? null : video.format());
+        }
+        boolean probed = false;
+        boolean probeFailed = false;
+        IOException failure = null;
+        for (int attempt = 0; ; attempt++) {
+            if (attempt == formats.size()) {
+                if (!probed) {
+                    probed = true;
+                    List<String> probedFormats = probe(video, profile);
+                    probeFailed = probedFormats == null;
+                    for (String format : probeFailed ? List.<String>of() : probedFormats) {
+                        if (!formats.contains(format)) {
+                            formats.add(format);
+                        }
+                    }
+                    if (attempt == formats.size() && !formats.contains(null)) {
+                        // Nothing else suits, the video as it was put is the last resort
+                        formats.add(null);
+                    }
+                }
+                if (attempt == formats.size()) {
+                    throw failure;
+                }
+            }
+            String format = formats.get(attempt);
+            long from = first + written.count;
+            try {
+                decodeFormat(video, format, profile, written, from, last, digest);
+            } catch (ChecksumMismatchException e) {
+                logger.warn("Decoding {} from format {} failed at byte {}, trying the next format: {}",
+                        video.name(), format, first + written.count, e.getMessage());
+                failure = e;
+                continue;
+            } catch (IOException e) {
+                if (attempt > 0 || video.format() == null || written.count > 0) {
+                    throw e;
+                }
+                // The recorded format may be gone, e.g. re-encoded by YouTube since
+                logger.warn("Could not read {} in its recorded format {}, probing its formats: {}",
+                        video.name(), format, e.getMessage());
+                failure = e;
+                continue;
+            }
+            // Reading it as stored is only recorded once its formats are known not to suit
+            String recorded = format != null ? format : probeFailed ? null : AS_STORED;
+            if (recorded != null && !recorded.equals(video.format())) {
+                video.recorder().accept(recorded);
+                logger.info("Format {} recorded for {}", recorded, video.name());
+            }
+            return;
+        }
+    }
+
+    private void decodeFormat(Source video, String format, EncodingProfile profile, OutputStream outputStream,
+                              long from, long last, MessageDigest digest) throws Exception {
+        long started = System.nanoTime();
+        CountingInputStream downloaded = null;
+        try (VideoInput input = downloadCacheService.openVideo(video.store(), video.videoId(),
+                video.videoUrl(), format)) {
+            // Only a stream is counted, a video on disk is read as far as the decode seeks
+            downloaded = input.isSeekable() ? null : new CountingInputStream(input.stream());
+            videoDecoderService.decodeRange(downloaded != null ? VideoInput.of(downloaded) : input, profile,
+                    outputStream, from, last, digest, video.legacyBytes());
+        } finally {
+            logger.info("{} from format {}: {}, decoded in {} ms", video.name(),
+                    format != null ? format : "as stored",
+                    downloaded != null ? downloaded.count + " bytes read" : "read from disk",
+                    (System.nanoTime() - started) / 1_000_000);
+        }
+    }
+
+    /**
+     * The video's formats to try, in order; {@code null} when they could not be probed.
+     */
+    private List<String> probe(Source video, EncodingProfile profile) {
+        List<VideoFormat> formats;
+        try {
+            formats = video.store().formats(video.videoId(), video.videoUrl(), profile.getWidth(), profile.getHeight());
+        } catch (IOException e) {
+            logger.warn("Could not probe the formats of {}, reading it as stored: {}", video.name(), e.getMessage());
+            return null;
+        }
+        if (!formats.isEmpty()) {
+            logger.info("Formats of {} to try: {}", video.name(), formats);
+        }
+        return formats.stream().map(VideoFormat::id).toList();
+    }
+
+    /**
+     * A stored video and where the format it decoded from is recorded.
+     */
+    private record Source(String name, VideoStore store, String videoId, String videoUrl, String format,
+                          long legacyBytes, Consumer<String> recorder) {
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = super.read();
+            if (read >= 0) {
+                count++;
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            int read = super.read(bytes, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+            count += length;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.jaimin.justStore.service;
+
+import com.jaimin.justStore.utils.LocalVideoStore;
+import com.jaimin.justStore.utils.VideoStore;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.util.Map;
+
+/**
+ * The video stores known to this node and the one new videos go to.
+ * <p>
+ * Every video records the name of the store holding it, videos from before stores were
+ * selectable being on YouTube, so switching the backend only changes where new videos go.
+ */
+@Service
+public class VideoStoreService {
+
+    private static final Logger logger = LoggerFactory.getLogger(VideoStoreService.class);
+
+    private final YouTubeVideoStore youTubeVideoStore;
+
+    // Store new videos go to: youtube, or local for offline runs
+    @Value("${app.store.backend:youtube}")
+    private String backend;
+
+    // Directory of the local store
+    @Value("${app.store.local.dir:${java.io.tmpdir}/juststore-videos}")
+    private String localDir;
+
+    private Map<String, VideoStore> stores;
+    private VideoStore uploadStore;
+
+    public VideoStoreService(YouTubeVideoStore youTubeVideoStore) {
+        this.youTubeVideoStore = youTubeVideoStore;
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        stores = Map.of(
+                YouTubeVideoStore.NAME, youTubeVideoStore,
+                LocalVideoStore.NAME, new LocalVideoStore(Path.of(localDir))
+        );
+        uploadStore = stores.get(backend);
+        if (uploadStore == null) {
+            throw new IllegalArgumentException("app.store.backend must be one of " + stores.keySet() + ", got " + backend);
+        }
+        logger.info("New videos stored in the {} store{}", backend,
+                uploadStore.isLocal() ? " at " + localDir : "");
+    }
+
+    /**
+     * The store new videos go to.
+     */
+    public VideoStore getUploadStore() {
+        return uploadStore;
+    }
+
+    /**
+     * Whether new videos need an authenticated YouTube account.
+     */
+    public boolean isYouTubeBackend() {
+        return uploadStore == youTubeVideoStore;
+    }
+
+    /**
+     * The store a video records as holding it.
+     */
+    public VideoStore get(String name) {
+        if (name == null) {
+            return youTubeVideoStore;
+        }
+        VideoStore store = stores.get(name);
+        if (store == null) {
+            throw new IllegalStateException("Unknown video store: " + name);
+        }
+        return store;
+    }
+
+    /**
+     * Delete a video that is not needed anymore. A video that can't be deleted is only logged,
+     * it takes space but nothing points to it.
+     */
+    public void deleteQuietly(String name, String videoId) {
+        try {
+            get(name).delete(videoId);
+        } catch (IOException | GeneralSecurityException | RuntimeException e) {
+            logger.warn("Could not delete video {} from the {} store: {}", videoId,
+                    name != null ? name : YouTubeVideoStore.NAME, e.getMessage());
+        }
+    }
+}
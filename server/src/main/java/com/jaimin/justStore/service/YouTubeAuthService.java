@@ -33,9 +33,9 @@ public class YouTubeAuthService {
 
     public static final String PROVIDER_YOUTUBE = "youtube";
 
-    private static final List<String> SCOPES = List.of(
-            "https://www.googleapis.com/auth/youtube.upload"
-    );
+    private static final String UPLOAD_SCOPE = "https://www.googleapis.com/auth/youtube.upload";
+    // Deleting videos; tokens granted before it was asked for can only upload
+    private static final String MANAGE_SCOPE = "https://www.googleapis.com/auth/youtube.force-ssl";
 
     private static final JsonFactory JSON_FACTORY = GsonFactory.getDefaultInstance();
 
@@ -48,6 +48,10 @@ public class YouTubeAuthService {
     @Value("${app.base-url:http://localhost:8080}")
     private String baseUrl;
 
+    // Only then is consent asked for managing the account's videos
+    @Value("${app.store.youtube.delete-videos:false}")
+    private boolean deleteVideos;
+
     private GoogleClientSecrets clientSecrets;
     private NetHttpTransport httpTransport;
 
@@ -220,7 +224,8 @@ public class YouTubeAuthService {
 
     private GoogleAuthorizationCodeFlow buildFlow() {
         return new GoogleAuthorizationCodeFlow.Builder(
-                httpTransport, JSON_FACTORY, clientSecrets, SCOPES)
+                httpTransport, JSON_FACTORY, clientSecrets,
+                deleteVideos ? List.of(UPLOAD_SCOPE, MANAGE_SCOPE) : List.of(UPLOAD_SCOPE))
                 .setAccessType("offline")
                 .build();
     }
@@ -0,0 +1,177 @@
+package com.jaimin.justStore.service;
+
+import com.jaimin.justStore.utils.BoundedPipe;
+import com.jaimin.justStore.utils.ResumableUpload;
+import com.jaimin.justStore.utils.UploadOptions;
+import com.jaimin.justStore.utils.VideoStore;
+import com.jaimin.justStore.utils.YouTubeApi;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.security.GeneralSecurityException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Uploads videos to YouTube, either from a finished file or piped straight from the encoder.
+ */
+@Service
+public class YouTubeUploadService {
+
+    private static final Logger logger = LoggerFactory.getLogger(YouTubeUploadService.class);
+
+    private final YouTubeAuthService youTubeAuthService;
+
+    // Upload the encoder's output while it is encoded instead of from a temp file, for FFmpeg profiles
+    @Value("${app.upload.pipe.enabled:false}")
+    private boolean pipeEnabled;
+
+    // Encoded bytes buffered between the encoder and the upload
+    @Value("${app.upload.pipe.buffer-size:67108864}")
+    private int pipeBufferBytes;
+
+    // Bytes per request, a multiple of 256 KiB; the chunk in flight is kept in memory for retries
+    @Value("${app.upload.chunk-size:8388608}")
+    private int chunkBytes;
+
+    // Failed attempts in a row before an upload gives up
+    @Value("${app.upload.max-retries:8}")
+    private int maxRetries;
+
+    // Wait before the first retry, doubled for every further one
+    @Value("${app.upload.retry-backoff-ms:1000}")
+    private long retryBackoffMillis;
+
+    // Least time between two checkpoints of an upload's committed offset
+    @Value("${app.upload.progress-interval-ms:5000}")
+    private long progressIntervalMillis;
+
+    private UploadOptions uploadOptions;
+    private ExecutorService uploadPool;
+
+    public YouTubeUploadService(YouTubeAuthService youTubeAuthService) {
+        this.youTubeAuthService = youTubeAuthService;
+    }
+
+    @PostConstruct
+    public void init() {
+        uploadOptions = new UploadOptions(chunkBytes, maxRetries, retryBackoffMillis, progressIntervalMillis);
+        uploadPool = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("youtube-upload-", 0).factory());
+        logger.info("YouTube uploads {}, {}",
+                pipeEnabled ? "piped from the encoder with a " + pipeBufferBytes + " byte buffer" : "from temp files",
+                uploadOptions);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        uploadPool.shutdownNow();
+    }
+
+    public boolean isPipeEnabled() {
+        return pipeEnabled;
+    }
+
+    /**
+     * Upload a finished video file.
+     */
+    public YouTubeApi.YouTubeUploadResult upload(String videoPath, String title, Set<String> tags,
+                                                 ResumableUpload.ProgressListener listener)
+            throws IOException, GeneralSecurityException {
+        return openApi().uploadVideo(videoPath, title, tags, uploadOptions, listener);
+    }
+
+    /**
+     * Finish the upload of a video file in a session that was interrupted, from what YouTube committed.
+     */
+    public YouTubeApi.YouTubeUploadResult resume(String sessionUri, String videoPath,
+                                                 ResumableUpload.ProgressListener listener)
+            throws IOException, GeneralSecurityException {
+        return openApi().resumeVideo(sessionUri, videoPath, uploadOptions, listener);
+    }
+
+    /**
+     * Upload the video {@code encoder} writes while it is writing it, through a bounded pipe, so
+     * encoding and the network transfer overlap and no temp file is needed.
+     * <p>
+     * A failure on either side aborts the other: an encoder error fails the upload before its
+     * last piece is sent, so YouTube never gets a truncated video as a complete one, and an upload
+     * error stops the encoder at its next write.
+     */
+    public YouTubeApi.YouTubeUploadResult uploadWhileEncoding(String title, Set<String> tags,
+                                                              ResumableUpload.ProgressListener listener,
+                                                              VideoStore.VideoWriter encoder)
+            throws IOException, GeneralSecurityException {
+        YouTubeApi youTubeApi = openApi();
+        BoundedPipe pipe = new BoundedPipe(pipeBufferBytes);
+        CompletableFuture<YouTubeApi.YouTubeUploadResult> upload = CompletableFuture.supplyAsync(() -> {
+            try (InputStream video = pipe.source()) {
+                return youTubeApi.uploadVideo(video, title, tags, uploadOptions, listener);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, uploadPool);
+        upload.whenComplete((result, failure) -> {
+            if (failure != null) {
+                pipe.fail(failure);
+            }
+        });
+
+        // Closed only once the whole video is written, closing it ends the upload's stream
+        OutputStream video = pipe.sink();
+        try {
+            encoder.writeTo(video);
+            video.close();
+        } catch (IOException | RuntimeException e) {
+            pipe.fail(e);
+            if (upload.isCompletedExceptionally()) {
+                // The encoder only failed because the upload did; report the upload's error
+                awaitUpload(upload);
+            }
+            throw e;
+        }
+        return awaitUpload(upload);
+    }
+
+    /**
+     * Delete an uploaded video.
+     */
+    public void delete(String videoId) throws IOException, GeneralSecurityException {
+        openApi().deleteVideo(videoId);
+    }
+
+    private static YouTubeApi.YouTubeUploadResult awaitUpload(CompletableFuture<YouTubeApi.YouTubeUploadResult> upload)
+            throws IOException {
+        try {
+            return upload.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            throw new IOException("YouTube upload failed", e.getCause());
+        }
+    }
+
+    private YouTubeApi openApi() throws IOException, GeneralSecurityException {
+        String accessToken = youTubeAuthService.getAccessToken();
+        if (accessToken == null) {
+            throw new ResponseStatusException(
+                    HttpStatus.UNAUTHORIZED,
+                    "YouTube access token not available. Please re-authenticate."
+            );
+        }
+        return new YouTubeApi(youTubeAuthService.getHttpTransport(), accessToken);
+    }
+}
@@ -0,0 +1,116 @@
+package com.jaimin.justStore.service;
+
+import com.jaimin.justStore.utils.FormatSelector;
+import com.jaimin.justStore.utils.ResumableUpload;
+import com.jaimin.justStore.utils.VideoDownloader;
+import com.jaimin.justStore.utils.VideoFormat;
+import com.jaimin.justStore.utils.VideoStore;
+import com.jaimin.justStore.utils.YouTubeApi;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps videos on YouTube: uploaded as unlisted videos of the authenticated account and
+ * downloaded again with yt-dlp, in whichever of the streams YouTube transcoded them to suits
+ * decoding best. Videos are only deleted when app.store.youtube.delete-videos is on, which needs
+ * consent to manage the account's videos; otherwise replaced and orphaned videos stay unlisted
+ * for a manual sweep.
+ */
+@Service
+public class YouTubeVideoStore implements VideoStore {
+
+    public static final String NAME = "youtube";
+
+    private static final Logger logger = LoggerFactory.getLogger(YouTubeVideoStore.class);
+
+    private final YouTubeUploadService youTubeUploadService;
+    private final VideoDownloader videoDownloader;
+
+    // Codecs of the streams downloaded, the one decoded fastest first
+    @Value("${app.download.codec-preference:avc1,vp9,av01}")
+    private List<String> codecPreference;
+
+    // Delete replaced and orphaned videos; off leaves them on the account
+    @Value("${app.store.youtube.delete-videos:false}")
+    private boolean deleteVideos;
+
+    private FormatSelector formatSelector;
+
+    public YouTubeVideoStore(YouTubeUploadService youTubeUploadService, VideoDownloader videoDownloader) {
+        this.youTubeUploadService = youTubeUploadService;
+        this.videoDownloader = videoDownloader;
+    }
+
+    @PostConstruct
+    public void init() {
+        formatSelector = new FormatSelector(codecPreference);
+        logger.info("YouTube videos downloaded in the smallest stream of the encoded size, codecs preferred {}",
+                codecPreference);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean isLocal() {
+        return false;
+    }
+
+    @Override
+    public StoredVideo put(Path video, String title, Set<String> tags, ResumableUpload.ProgressListener listener)
+            throws IOException, GeneralSecurityException {
+        return toStoredVideo(youTubeUploadService.upload(video.toString(), title, tags, listener));
+    }
+
+    @Override
+    public StoredVideo put(String title, Set<String> tags, ResumableUpload.ProgressListener listener, VideoWriter writer)
+            throws IOException, GeneralSecurityException {
+        return toStoredVideo(youTubeUploadService.uploadWhileEncoding(title, tags, listener, writer));
+    }
+
+    @Override
+    public StoredVideo resume(String sessionUri, Path video, ResumableUpload.ProgressListener listener)
+            throws IOException, GeneralSecurityException {
+        return toStoredVideo(youTubeUploadService.resume(sessionUri, video.toString(), listener));
+    }
+
+    @Override
+    public InputStream open(String videoId, String videoUrl) throws IOException {
+        return videoDownloader.downloadVideo(videoUrl);
+    }
+
+    @Override
+    public List<VideoFormat> formats(String videoId, String videoUrl, int width, int height) throws IOException {
+        return formatSelector.select(videoDownloader.probeFormats(videoUrl), width, height);
+    }
+
+    @Override
+    public InputStream open(String videoId, String videoUrl, String formatId) throws IOException {
+        return videoDownloader.downloadVideo(videoUrl, formatId);
+    }
+
+    @Override
+    public void delete(String videoId) throws IOException, GeneralSecurityException {
+        if (!deleteVideos) {
+            logger.info("Leaving YouTube video {} for a manual sweep, deleting videos is off", videoId);
+            return;
+        }
+        youTubeUploadService.delete(videoId);
+    }
+
+    private static StoredVideo toStoredVideo(YouTubeApi.YouTubeUploadResult result) {
+        return new StoredVideo(result.videoId(), result.videoUrl());
+    }
+}
@@ -0,0 +1,41 @@
+package com.jaimin.justStore.utils;
+
+import org.slf4j.LoggerFactory;
+
+/**
+ * Inner loops of the one pixel per bit profiles: packing thresholded luma samples into
+ * payload bytes when decoding, and expanding payload bits into samples when rendering.
+ * Bits are MSB first; a sample is a 1 when it is 128 or more (unsigned).
+ * <p>
+ * {@link #INSTANCE} is the SIMD kernel when the JVM runs with
+ * {@code --add-modules jdk.incubator.vector}, the scalar one otherwise
+ * (or with {@code -Djuststore.scalar-kernel=true}).
+ */
+interface BitKernel {
+
+    BitKernel INSTANCE = select();
+
+    /**
+     * Pack samples {@code 8 * i} to {@code 8 * i + 7} into {@code out[i]}, for the first {@code length} bytes.
+     */
+    void pack(byte[] samples, byte[] out, int length);
+
+    /**
+     * Expand the first {@code pixels} bits into samples, {@code channels} samples per pixel.
+     */
+    void expand(byte[] bits, int pixels, byte black, byte white, int channels, byte[] samples);
+
+    private static BitKernel select() {
+        if (!Boolean.getBoolean("juststore.scalar-kernel")
+                && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                BitKernel kernel = new VectorBitKernel();
+                LoggerFactory.getLogger(BitKernel.class).info("Using SIMD bit kernel, {} byte lanes", VectorBitKernel.LANES);
+                return kernel;
+            } catch (LinkageError e) {
+                LoggerFactory.getLogger(BitKernel.class).warn("SIMD bit kernel unavailable, using scalar kernel", e);
+            }
+        }
+        return new ScalarBitKernel();
+    }
+}
@@ -0,0 +1,209 @@
+package com.jaimin.justStore.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.zip.Deflater;
+
+/**
+ * Deflate in independent blocks, so blocks can be compressed in parallel.
+ * <p>
+ * The compressed stream is a sequence of blocks, each a big-endian int with the block's
+ * original length, a big-endian int with its stored length, then the stored bytes: zlib data,
+ * or the original bytes as they are when the stored length equals the original length
+ * (blocks that Deflate does not shrink). {@link BlockDecompressingOutputStream} reverses it.
+ */
+public class BlockCompression {
+
+    public static final int DEFAULT_BLOCK_BYTES = 1024 * 1024;
+    // Upper bound on a block's original length, so a damaged length cannot make the reader allocate gigabytes
+    static final int MAX_BLOCK_BYTES = 64 * 1024 * 1024;
+    static final int BLOCK_HEADER_BYTES = 8;
+
+    // Blocks in flight per worker: one being compressed, one waiting to be written
+    private static final int BLOCKS_PER_WORKER = 2;
+
+    /**
+     * Compress {@code input} to {@code output} in blocks of {@code blockBytes}, compressed on
+     * {@code pool}. Blocks are written in order and at most {@code 2 * parallelism} of them are
+     * held in memory.
+     *
+     * @return bytes written to {@code output}.
+     */
+    public static long compress(InputStream input, OutputStream output, int level, int blockBytes,
+                                Executor pool, int parallelism) throws IOException {
+        return compress(input, output, level, blockBytes, pool, parallelism, (rawOffset, storedOffset, storedLength) -> {
+        });
+    }
+
+    /**
+     * Compress like {@link #compress(InputStream, OutputStream, int, int, Executor, int)}, telling
+     * {@code listener} where each block went as it is written.
+     */
+    public static long compress(InputStream input, OutputStream output, int level, int blockBytes,
+                                Executor pool, int parallelism, BlockListener listener) throws IOException {
+        if (blockBytes < 1 || blockBytes > MAX_BLOCK_BYTES) {
+            throw new IllegalArgumentException("Block size must be 1 to " + MAX_BLOCK_BYTES + " bytes, got " + blockBytes);
+        }
+        final int queueDepth = Math.max(1, parallelism) * BLOCKS_PER_WORKER;
+        FramePool<byte[]> blocks = new FramePool<>(() -> new byte[blockBytes], queueDepth);
+        FramePool<byte[]> compressedBlocks = new FramePool<>(() -> new byte[blockBytes], queueDepth);
+        FramePool<Deflater> deflaters = new FramePool<>(() -> new Deflater(level), queueDepth);
+        Deque<CompletableFuture<CompressedBlock>> inFlight = new ArrayDeque<>(queueDepth);
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(output, BLOCK_HEADER_BYTES + blockBytes));
+
+        long written = 0;
+        long rawOffset = 0;
+        try {
+            boolean inputEnded = false;
+            while (!inputEnded || !inFlight.isEmpty()) {
+                // Read ahead so every worker has a block to compress while this thread writes
+                while (!inputEnded && inFlight.size() < queueDepth) {
+                    final byte[] block = blocks.acquire();
+                    final int length = input.readNBytes(block, 0, blockBytes);
+                    if (length < blockBytes) {
+                        inputEnded = true;
+                    }
+                    if (length == 0) {
+                        blocks.release(block);
+                        break;
+                    }
+                    inFlight.add(CompletableFuture.supplyAsync(() -> {
+                        Deflater deflater = deflaters.acquire();
+                        try {
+                            return deflate(block, length, compressedBlocks.acquire(), deflater);
+                        } finally {
+                            deflaters.release(deflater);
+                        }
+                    }, pool));
+                }
+
+                CompletableFuture<CompressedBlock> next = inFlight.poll();
+                if (next == null) {
+                    break;
+                }
+                CompressedBlock block = awaitBlock(next);
+                data.writeInt(block.rawLength());
+                if (block.compressedLength() < block.rawLength()) {
+                    data.writeInt(block.compressedLength());
+                    data.write(block.compressed(), 0, block.compressedLength());
+                } else {
+                    data.writeInt(block.rawLength());
+                    data.write(block.raw(), 0, block.rawLength());
+                }
+                int storedLength = BLOCK_HEADER_BYTES + Math.min(block.compressedLength(), block.rawLength());
+                listener.onBlock(rawOffset, written, storedLength);
+                written += storedLength;
+                rawOffset += block.rawLength();
+                blocks.release(block.raw());
+                compressedBlocks.release(block.compressed());
+            }
+            data.flush();
+            return written;
+        } finally {
+            inFlight.forEach(pending -> pending.cancel(true));
+            // Deflaters hold native memory until ended; one still out with a cancelled block is left to its cleaner
+            deflaters.drain(Deflater::end);
+        }
+    }
+
+    /**
+     * Compress {@code raw} as a single block of the format above, header included, so that
+     * independently compressed blocks can be concatenated into one compressed stream.
+     */
+    public static byte[] compressBlock(byte[] raw, int length, int level) {
+        if (length < 1 || length > MAX_BLOCK_BYTES) {
+            throw new IllegalArgumentException("Block size must be 1 to " + MAX_BLOCK_BYTES + " bytes, got " + length);
+        }
+        Deflater deflater = new Deflater(level);
+        CompressedBlock block;
+        try {
+            block = deflate(raw, length, new byte[length], deflater);
+        } finally {
+            deflater.end();
+        }
+
+        boolean shrunk = block.compressedLength() < length;
+        int storedLength = shrunk ? block.compressedLength() : length;
+        ByteBuffer encoded = ByteBuffer.allocate(BLOCK_HEADER_BYTES + storedLength)
+                .putInt(length)
+                .putInt(storedLength)
+                .put(shrunk ? block.compressed() : raw, 0, storedLength);
+        return encoded.array();
+    }
+
+    /**
+     * Shannon entropy of a sample in bits per byte: 8 for random or already compressed data,
+     * typically below 5 for text.
+     */
+    public static double entropy(byte[] sample, int length) {
+        if (length == 0) {
+            return 0;
+        }
+        int[] counts = new int[256];
+        for (int i = 0; i < length; i++) {
+            counts[sample[i] & 0xFF]++;
+        }
+        double entropy = 0;
+        for (int count : counts) {
+            if (count > 0) {
+                double p = (double) count / length;
+                entropy -= p * Math.log(p);
+            }
+        }
+        return entropy / Math.log(2);
+    }
+
+    /**
+     * Deflate a block into {@code compressed}, which is as long as a whole block; a block
+     * that does not fit in fewer bytes than it started with is reported as not compressible.
+     */
+    private static CompressedBlock deflate(byte[] raw, int rawLength, byte[] compressed, Deflater deflater) {
+        try {
+            deflater.setInput(raw, 0, rawLength);
+            deflater.finish();
+            int compressedLength = 0;
+            while (!deflater.finished() && compressedLength < rawLength) {
+                compressedLength += deflater.deflate(compressed, compressedLength, rawLength - compressedLength);
+            }
+            return new CompressedBlock(raw, rawLength, compressed, deflater.finished() ? compressedLength : rawLength);
+        } finally {
+            deflater.reset();
+        }
+    }
+
+    private static CompressedBlock awaitBlock(CompletableFuture<CompressedBlock> block) throws IOException {
+        try {
+            return block.join();
+        } catch (CompletionException e) {
+            throw new IOException("Block compression failed", e.getCause());
+        }
+    }
+
+    /**
+     * Told where each block of a compressed stream went, in order.
+     */
+    @FunctionalInterface
+    public interface BlockListener {
+        /**
+         * @param rawOffset    Offset of the block's first byte in the original content.
+         * @param storedOffset Offset of the block's header in the compressed stream.
+         * @param storedLength Bytes of the block in the compressed stream, header included.
+         */
+        void onBlock(long rawOffset, long storedOffset, int storedLength);
+    }
+
+    /**
+     * A block and its Deflate output; {@code compressedLength == rawLength} when it did not shrink.
+     */
+    private record CompressedBlock(byte[] raw, int rawLength, byte[] compressed, int compressedLength) {
+    }
+}
@@ -0,0 +1,145 @@
+package com.jaimin.justStore.utils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Takes a {@link BlockCompression} stream as it is written and writes the original content to
+ * the wrapped stream, one block at a time, so a decoder can stream straight through it.
+ */
+public class BlockDecompressingOutputStream extends OutputStream {
+
+    private final OutputStream out;
+    private final Inflater inflater = new Inflater();
+    private final byte[] blockHeader = new byte[BlockCompression.BLOCK_HEADER_BYTES];
+
+    private int headerFilled;
+    private int rawLength;
+    private int storedLength;
+    private byte[] stored = new byte[0];
+    private int storedFilled;
+    private byte[] raw = new byte[0];
+
+    public BlockDecompressingOutputStream(OutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+        while (length > 0) {
+            int count;
+            if (headerFilled < blockHeader.length) {
+                count = Math.min(length, blockHeader.length - headerFilled);
+                System.arraycopy(buffer, offset, blockHeader, headerFilled, count);
+                headerFilled += count;
+                if (headerFilled == blockHeader.length) {
+                    startBlock();
+                }
+            } else {
+                count = Math.min(length, storedLength - storedFilled);
+                System.arraycopy(buffer, offset, stored, storedFilled, count);
+                storedFilled += count;
+            }
+            offset += count;
+            length -= count;
+
+            if (headerFilled == blockHeader.length && storedFilled == storedLength) {
+                writeBlock();
+            }
+        }
+    }
+
+    /**
+     * Check that the compressed stream ended on a block boundary, and release the inflater;
+     * nothing can be written after this.
+     */
+    public void finish() throws IOException {
+        try {
+            if (headerFilled > 0) {
+                throw new EOFException("Compressed content ended inside a block");
+            }
+            out.flush();
+        } finally {
+            end();
+        }
+    }
+
+    /**
+     * Release the inflater without checking the stream or closing the wrapped one, for a
+     * stream given up before its end. Ending it twice is harmless.
+     */
+    public void end() {
+        inflater.end();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void startBlock() throws IOException {
+        rawLength = readInt(0);
+        storedLength = readInt(4);
+        if (rawLength < 1 || rawLength > BlockCompression.MAX_BLOCK_BYTES || storedLength < 1 || storedLength > rawLength) {
+            throw new IOException("Corrupt compressed block header: " + rawLength + " bytes stored in " + storedLength);
+        }
+        if (stored.length < storedLength) {
+            stored = new byte[rawLength];
+        }
+        storedFilled = 0;
+    }
+
+    private void writeBlock() throws IOException {
+        if (storedLength == rawLength) {
+            out.write(stored, 0, rawLength);
+        } else {
+            if (raw.length < rawLength) {
+                raw = new byte[rawLength];
+            }
+            inflater.reset();
+            inflater.setInput(stored, 0, storedLength);
+            int inflated = 0;
+            try {
+                while (!inflater.finished() && inflated < rawLength) {
+                    int count = inflater.inflate(raw, inflated, rawLength - inflated);
+                    if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    inflated += count;
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt compressed block", e);
+            }
+            if (!inflater.finished() || inflated != rawLength) {
+                throw new IOException("Compressed block inflated to " + inflated + " bytes, expected " + rawLength);
+            }
+            out.write(raw, 0, rawLength);
+        }
+        headerFilled = 0;
+        storedFilled = 0;
+    }
+
+    private int readInt(int offset) {
+        return (blockHeader[offset] & 0xFF) << 24
+                | (blockHeader[offset + 1] & 0xFF) << 16
+                | (blockHeader[offset + 2] & 0xFF) << 8
+                | (blockHeader[offset + 3] & 0xFF);
+    }
+}
@@ -0,0 +1,204 @@
+package com.jaimin.justStore.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A byte ring buffer between one writing and one reading thread, so a producer can stream into a
+ * consumer with at most {@code capacity} bytes in memory.
+ * <p>
+ * Unlike {@link java.io.PipedInputStream} a failure on either side reaches the other one: after
+ * {@link #fail(Throwable)} the reader gets an {@link IOException} instead of a clean end of stream,
+ * so a consumer never mistakes a producer that died halfway for a complete stream, and a reader
+ * that closes early makes the writer fail instead of blocking forever.
+ */
+public class BoundedPipe {
+
+    private final byte[] buffer;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+
+    private int readIndex;
+    private int size;
+    private boolean writeClosed;
+    private boolean readClosed;
+    private Throwable failure;
+
+    private final OutputStream sink = new OutputStream() {
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            BoundedPipe.this.write(bytes, offset, length);
+        }
+
+        @Override
+        public void close() {
+            closeWrite();
+        }
+    };
+
+    private final InputStream source = new InputStream() {
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            return BoundedPipe.this.read(bytes, offset, length);
+        }
+
+        @Override
+        public int available() {
+            lock.lock();
+            try {
+                return size;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void close() {
+            closeRead();
+        }
+    };
+
+    public BoundedPipe(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Pipe capacity must be positive, got " + capacity);
+        }
+        this.buffer = new byte[capacity];
+    }
+
+    /**
+     * The writing end; closing it ends the stream for the reader.
+     */
+    public OutputStream sink() {
+        return sink;
+    }
+
+    /**
+     * The reading end; closing it before the end of the stream fails the writer.
+     */
+    public InputStream source() {
+        return source;
+    }
+
+    /**
+     * Abort the pipe: both ends fail from now on with {@code cause}.
+     */
+    public void fail(Throwable cause) {
+        lock.lock();
+        try {
+            if (failure == null) {
+                failure = cause;
+            }
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void write(byte[] bytes, int offset, int length) throws IOException {
+        lock.lock();
+        try {
+            while (length > 0) {
+                checkFailure();
+                if (writeClosed) {
+                    throw new IOException("Pipe is closed for writing");
+                }
+                if (readClosed) {
+                    throw new IOException("Pipe was closed by the reader");
+                }
+                if (size == buffer.length) {
+                    await(notFull);
+                    continue;
+                }
+                int writeIndex = (readIndex + size) % buffer.length;
+                int count = Math.min(length, Math.min(buffer.length - size, buffer.length - writeIndex));
+                System.arraycopy(bytes, offset, buffer, writeIndex, count);
+                size += count;
+                offset += count;
+                length -= count;
+                notEmpty.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        lock.lock();
+        try {
+            checkFailure();
+            while (size == 0) {
+                if (writeClosed) {
+                    return -1;
+                }
+                if (readClosed) {
+                    throw new IOException("Pipe is closed for reading");
+                }
+                await(notEmpty);
+                checkFailure();
+            }
+            int count = Math.min(length, Math.min(size, buffer.length - readIndex));
+            System.arraycopy(buffer, readIndex, bytes, offset, count);
+            readIndex = (readIndex + count) % buffer.length;
+            size -= count;
+            notFull.signal();
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void closeWrite() {
+        lock.lock();
+        try {
+            writeClosed = true;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void closeRead() {
+        lock.lock();
+        try {
+            readClosed = true;
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            throw new IOException("Pipe aborted: " + failure.getMessage(), failure);
+        }
+    }
+
+    private static void await(Condition condition) throws InterruptedIOException {
+        try {
+            condition.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting on the pipe");
+        }
+    }
+}
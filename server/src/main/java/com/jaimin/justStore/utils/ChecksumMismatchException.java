@@ -0,0 +1,14 @@
+package com.jaimin.justStore.utils;
+
+import java.io.IOException;
+
+/**
+ * A data frame failed its checksum and could not be repaired. Nothing of the frame was written,
+ * so decoding can go on from the same byte in another copy of the video.
+ */
+public class ChecksumMismatchException extends IOException {
+
+    public ChecksumMismatchException(String message) {
+        super(message);
+    }
+}
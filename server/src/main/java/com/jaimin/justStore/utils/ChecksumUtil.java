@@ -3,7 +3,7 @@ package com.jaimin.justStore.utils;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.io.InputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
@@ -11,19 +11,47 @@ import static com.jaimin.justStore.utils.BytesToHex.bytesToHex;
 
 public class ChecksumUtil {
 
+    private static final int BUFFER_SIZE = 64 * 1024;
+
     public static String calculateChecksum(byte[] data) {
+        MessageDigest digest = newDigest();
+        return bytesToHex(digest.digest(data));
+    }
+
+    public static String calculateChecksum(MultipartFile file) throws IOException {
+        try (InputStream inputStream = file.getInputStream()) {
+            return calculateChecksum(inputStream);
+        }
+    }
+
+    /**
+     * Hash a stream in fixed-size chunks, so the whole content is never in memory.
+     */
+    public static String calculateChecksum(InputStream inputStream) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+        }
+        return bytesToHex(digest.digest());
+    }
+
+    /**
+     * Digest for incremental hashing, e.g. behind a {@link java.security.DigestInputStream}.
+     * Use {@link #toChecksum(MessageDigest)} once all data went through it.
+     */
+    public static MessageDigest newDigest() {
         try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(data);
-            return bytesToHex(hash);
+            return MessageDigest.getInstance("SHA-256");
         } catch (NoSuchAlgorithmException e) {
             throw new RuntimeException("SHA-256 algorithm not found", e);
         }
     }
 
-    public static String calculateChecksum(MultipartFile file) throws IOException {
-        return calculateChecksum(file.getBytes());
+    public static String toChecksum(MessageDigest digest) {
+        return bytesToHex(digest.digest());
     }
 
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,126 @@
+package com.jaimin.justStore.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Splits a stream into chunks whose boundaries depend on the content around them (FastCDC),
+ * so an insertion or deletion in a file only changes the chunks it touches and the rest
+ * are found again by their fingerprint.
+ * <p>
+ * A rolling Gear hash over the last 64 bytes is tested against a mask after the first
+ * {@code minBytes} of a chunk: a stricter mask up to {@code averageBytes} and a looser one
+ * after it, which keeps chunk sizes close to the average, with a hard cut at {@code maxBytes}.
+ * The Gear table comes from a fixed seed; changing it would change every boundary and
+ * defeat deduplication against chunks already stored.
+ */
+public class ContentDefinedChunker {
+
+    public static final int DEFAULT_MIN_BYTES = 256 * 1024;
+    public static final int DEFAULT_AVERAGE_BYTES = 1024 * 1024;
+    public static final int DEFAULT_MAX_BYTES = 4 * 1024 * 1024;
+
+    private static final long[] GEAR = new long[256];
+
+    static {
+        // SplitMix64, spelled out so the table never depends on a library's random generator
+        long seed = 0x4A75737453746F72L;
+        for (int i = 0; i < GEAR.length; i++) {
+            long z = (seed += 0x9E3779B97F4A7C15L);
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            GEAR[i] = z ^ (z >>> 31);
+        }
+    }
+
+    private final InputStream input;
+    private final int minBytes;
+    private final int averageBytes;
+    private final int maxBytes;
+    // Masks on the top bits, which depend on the last 64 bytes hashed
+    private final long strictMask;
+    private final long looseMask;
+
+    private final byte[] buffer;
+    private int start;
+    private int end;
+    private boolean inputEnded;
+
+    public ContentDefinedChunker(InputStream input, int minBytes, int averageBytes, int maxBytes) {
+        if (minBytes < 64 || averageBytes <= minBytes || maxBytes <= averageBytes) {
+            throw new IllegalArgumentException("Chunk sizes must be 64 <= min < average < max, got "
+                    + minBytes + ", " + averageBytes + ", " + maxBytes);
+        }
+        this.input = input;
+        this.minBytes = minBytes;
+        this.averageBytes = averageBytes;
+        this.maxBytes = maxBytes;
+        int bits = 31 - Integer.numberOfLeadingZeros(averageBytes);
+        this.strictMask = -1L << (64 - (bits + 1));
+        this.looseMask = -1L << (64 - (bits - 1));
+        this.buffer = new byte[2 * maxBytes];
+    }
+
+    public int getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Copy the next chunk into {@code chunk}, which must hold {@link #getMaxBytes()} bytes.
+     *
+     * @return the chunk's length, or 0 at the end of the stream.
+     */
+    public int next(byte[] chunk) throws IOException {
+        fill();
+        int available = end - start;
+        if (available == 0) {
+            return 0;
+        }
+        int length = cutPoint(start, Math.min(available, maxBytes));
+        System.arraycopy(buffer, start, chunk, 0, length);
+        start += length;
+        return length;
+    }
+
+    private int cutPoint(int offset, int available) {
+        if (available <= minBytes) {
+            return available;
+        }
+        final int normal = Math.min(averageBytes, available);
+        long hash = 0;
+        int i = minBytes;
+        for (; i < normal; i++) {
+            hash = (hash << 1) + GEAR[buffer[offset + i] & 0xFF];
+            if ((hash & strictMask) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < available; i++) {
+            hash = (hash << 1) + GEAR[buffer[offset + i] & 0xFF];
+            if ((hash & looseMask) == 0) {
+                return i + 1;
+            }
+        }
+        return available;
+    }
+
+    /**
+     * Make at least {@code maxBytes} bytes available from {@code start}, unless the stream ends first.
+     */
+    private void fill() throws IOException {
+        if (inputEnded || end - start >= maxBytes) {
+            return;
+        }
+        System.arraycopy(buffer, start, buffer, 0, end - start);
+        end -= start;
+        start = 0;
+        while (end < buffer.length) {
+            int read = input.read(buffer, end, buffer.length - end);
+            if (read < 0) {
+                inputEnded = true;
+                return;
+            }
+            end += read;
+        }
+    }
+}
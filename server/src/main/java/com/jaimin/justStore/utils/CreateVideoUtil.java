@@ -1,64 +1,157 @@
 package com.jaimin.justStore.utils;
 
-import java.awt.image.BufferedImage;
-import java.io.File;
+import com.jaimin.justStore.enums.EncoderBackend;
+import com.jaimin.justStore.enums.EncodingProfile;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.IOException;
-import org.jcodec.api.awt.AWTSequenceEncoder;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 
 public class CreateVideoUtil {
 
+    // Frames in flight per render worker: one being rendered, one waiting for the encoder
+    private static final int FRAMES_PER_WORKER = 2;
 
-    public static void createVideo(byte[] fileContent, int width, int height, int frameRate, String outputPath) throws IOException {
-
-
-        final int bytesInOneFrame = width * height / 8;
-        final int totalFrames = (int) Math.ceil((double) fileContent.length / bytesInOneFrame);
-        int byteIndex = 0;
-
-        File video = new File(outputPath);
-        AWTSequenceEncoder encoder = AWTSequenceEncoder.createSequenceEncoder(video, frameRate);
-        encoder.encodeImage(createMetadataFrame(fileContent.length, width, height));
+    public static void createVideo(byte[] fileContent, EncodingProfile profile, String outputPath) throws IOException {
+        createVideo(new ByteArrayInputStream(fileContent), fileContent.length, profile, outputPath);
+    }
 
-        for (int i = 0; i < totalFrames; i++) {
-            BufferedImage image = createFrame(fileContent, byteIndex, width, height);
-            byteIndex += bytesInOneFrame;
-            encoder.encodeImage(image);
+    /**
+     * Encode a stream of {@code totalBytes} bytes into a video, one frame at a time, with the
+     * profile's backend, FEC level and default encoder options.
+     * Only one frame (or FEC group) of payload is held in memory, whatever the size of the input.
+     *
+     * @return SHA-256 of the encoded content.
+     */
+    public static byte[] createVideo(InputStream fileContent, long totalBytes, EncodingProfile profile, String outputPath) throws IOException {
+        try (VideoSink sink = openSink(profile, profile.getEncoderBackend(), FFmpegEncoderOptions.defaults(), outputPath)) {
+            return createVideo(fileContent, totalBytes, profile, sink, FecOptions.forProfile(profile), Runnable::run, 1);
         }
+    }
 
-        encoder.finish();
+    public static VideoSink openSink(EncodingProfile profile, EncoderBackend backend, FFmpegEncoderOptions ffmpegOptions,
+                                     String outputPath) throws IOException {
+        return switch (backend) {
+            case JCODEC -> new JCodecVideoSink(outputPath, profile);
+            case FFMPEG -> new FFmpegVideoSink(outputPath, profile, ffmpegOptions);
+        };
+    }
 
+    /**
+     * A sink that writes the video to {@code output} while encoding; only the FFmpeg backend can
+     * write an MP4 without seeking back into it.
+     */
+    public static VideoSink openSink(EncodingProfile profile, EncoderBackend backend, FFmpegEncoderOptions ffmpegOptions,
+                                     OutputStream output) throws IOException {
+        return switch (backend) {
+            case JCODEC -> throw new IllegalArgumentException("The JCodec backend can only write to a file");
+            case FFMPEG -> new FFmpegVideoSink(output, profile, ffmpegOptions);
+        };
     }
 
-    public static BufferedImage createMetadataFrame(int totalBytes, int width, int height) {
-        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_BINARY);
+    /**
+     * Encode a stream into a video with frames rendered in parallel.
+     * <p>
+     * The calling thread reads the input one frame at a time and hands each frame to
+     * {@code renderPool}, which turns the payload into a frame plane. Futures are
+     * kept in submission order in a bounded queue of {@code 2 * parallelism} frames, so
+     * the calling thread, acting as the single encoder, always encodes frames in order
+     * and never holds more than that many frames in memory.
+     * <p>
+     * The video is laid out as described by {@link VideoHeader}: a header frame, data frames
+     * each ending with the CRC32C of their payload (computed by the render workers), and a
+     * trailer frame with the SHA-256 the calling thread computes while reading. With FEC the
+     * frames are read from a {@link FecEncodingInputStream}, which computes each group's parity
+     * on {@code renderPool} before its first frame is handed out.
+     *
+     * @return SHA-256 of the encoded content.
+     */
+    public static byte[] createVideo(InputStream fileContent, long totalBytes, EncodingProfile profile,
+                                     VideoSink sink, FecOptions fec, Executor renderPool, int parallelism) throws IOException {
+        final VideoHeader header = VideoHeader.of(profile, totalBytes, fec);
+        final int payloadBytes = header.payloadBytesPerFrame();
+        final SampleFormat format = sink.getSampleFormat();
+        final int queueDepth = Math.max(1, parallelism) * FRAMES_PER_WORKER;
+        FramePool<byte[]> payloads = new FramePool<>(() -> new byte[profile.getBytesPerFrame()], queueDepth);
+        FramePool<byte[]> planes = new FramePool<>(() -> FrameRenderer.newPlane(profile, format), queueDepth);
+        Deque<CompletableFuture<byte[]>> inFlight = new ArrayDeque<>(queueDepth);
+
+        MessageDigest digest = ChecksumUtil.newDigest();
+        InputStream frameContent = new DigestInputStream(fileContent, digest);
+        long remainingBytes = totalBytes;
+        if (header.hasFec()) {
+            FecEncodingInputStream fecStream = new FecEncodingInputStream(frameContent, header,
+                    new FecGroup(header.fecParity(), renderPool, parallelism));
+            frameContent = fecStream;
+            remainingBytes = fecStream.length();
+        }
+
+        byte[] headerPlane = header.render(format, planes.acquire());
+        sink.encode(headerPlane);
+        planes.release(headerPlane);
+
+        try {
+            while (remainingBytes > 0 || !inFlight.isEmpty()) {
+                // Read ahead so every worker has a frame to render while the encoder is busy
+                while (remainingBytes > 0 && inFlight.size() < queueDepth) {
+                    byte[] payload = payloads.acquire();
+                    remainingBytes -= readFrame(frameContent, remainingBytes, payload, payloadBytes);
+                    inFlight.add(CompletableFuture.supplyAsync(() -> {
+                        FrameChecksum.write(payload, payloadBytes);
+                        byte[] plane = FrameRenderer.render(payload, profile, format, planes.acquire());
+                        payloads.release(payload);
+                        return plane;
+                    }, renderPool));
+                }
 
-        for (int bitPosition = 0; bitPosition < 32; bitPosition++) {
-            int bitValue = (totalBytes >> (bitPosition)) & 1;
-            int rgb = bitValue == 1 ? 0xFFFFFF : 0x000000;
-            image.setRGB(bitPosition, 0, rgb);
+                byte[] plane = awaitFrame(inFlight.poll());
+                sink.encode(plane);
+                planes.release(plane);
+            }
+        } finally {
+            inFlight.forEach(frame -> frame.cancel(true));
         }
 
-        return image;
+        byte[] sha256 = digest.digest();
+        byte[] trailer = new VideoTrailer(totalBytes, header.getDataFrames(), sha256).render(profile, format, planes.acquire());
+        sink.encode(trailer);
+        planes.release(trailer);
+        sink.finish();
+        return sha256;
     }
 
-    public static BufferedImage createFrame(byte[] fileContent, int byteIndex, int width, int height) {
-        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_BINARY);
-        for (int i = 0; i < height; i++) {
-            for (int j = 0; j < width; j += 8) {
-                for (int bitPosition = 0; bitPosition < 8; bitPosition++) {
-                    int bitValue = (fileContent[byteIndex] >> (7 - bitPosition)) & 1;
-                    int rgb = bitValue == 1 ? 0xFFFFFF : 0x000000;
-                    image.setRGB(j + bitPosition, i, rgb);
-                }
-                byteIndex++;
-                if (byteIndex == fileContent.length) {
-                    return image;
-                }
-            }
+    private static byte[] awaitFrame(CompletableFuture<byte[]> frame) throws IOException {
+        try {
+            return frame.join();
+        } catch (CompletionException e) {
+            throw new IOException("Frame rendering failed", e.getCause());
         }
+    }
 
-        return image;
+    /**
+     * Read up to {@code capacity} bytes of payload for the next frame from the stream.
+     * Bytes past the end of the payload are zero.
+     *
+     * @return number of payload bytes consumed, at most {@code capacity}.
+     */
+    static int readFrame(InputStream fileContent, long remainingBytes, byte[] payload, int capacity) throws IOException {
+        final int length = (int) Math.max(0, Math.min(capacity, remainingBytes));
+        if (fileContent.readNBytes(payload, 0, length) != length) {
+            throw new EOFException("File content ended before the declared size");
+        }
+        Arrays.fill(payload, length, payload.length, (byte) 0);
+        return length;
     }
 
 }
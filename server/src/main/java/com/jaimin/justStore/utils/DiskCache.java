@@ -0,0 +1,283 @@
+package com.jaimin.justStore.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Files in a directory under a size budget, evicting the least recently used ones.
+ * <p>
+ * An entry is written to a temp file and only becomes visible once it is complete, by moving it
+ * to its key's name, so a reader never sees half an entry. Temp files a crash left behind are
+ * deleted when the cache is opened again, and the entries found are indexed by their last use,
+ * which is kept as each file's modification time.
+ */
+public class DiskCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(DiskCache.class);
+
+    private static final String TEMP_SUFFIX = ".tmp";
+    // Keys are used as file names, so only hex digests and video ids are accepted
+    private static final Pattern KEY = Pattern.compile("[A-Za-z0-9_-]{1,128}");
+
+    private final Path directory;
+    private final long maxBytes;
+    // Entry sizes, least recently used first
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    /**
+     * Open the cache in {@code directory}, creating it when needed.
+     */
+    public DiskCache(Path directory, long maxBytes) throws IOException {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("Cache size must not be negative, got " + maxBytes);
+        }
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(directory);
+        load();
+    }
+
+    /**
+     * Open the entry of {@code key} for reading and mark it as just used, or return {@code null}
+     * when there is none. An open entry stays readable even if it is evicted meanwhile.
+     */
+    public synchronized FileChannel open(String key) throws IOException {
+        checkKey(key);
+        if (entries.get(key) == null) {
+            return null;
+        }
+        Path entry = directory.resolve(key);
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(entry, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            // Deleted behind the cache's back
+            remove(key);
+            return null;
+        }
+        try {
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            logger.debug("Could not mark cache entry {} as used: {}", entry, e.getMessage());
+        }
+        return channel;
+    }
+
+    /**
+     * The file of the entry of {@code key}, marked as just used, for a reader that opens it by
+     * path, or {@code null} when there is none. Unlike an {@link #open}ed entry, it is gone once
+     * evicted; being the most recently used entry, it is the last to be.
+     */
+    public synchronized Path path(String key) throws IOException {
+        FileChannel channel = open(key);
+        if (channel == null) {
+            return null;
+        }
+        channel.close();
+        return directory.resolve(key);
+    }
+
+    /**
+     * Start writing the entry of {@code key}; it replaces any entry of that key once committed.
+     */
+    public Writer write(String key) throws IOException {
+        return new Writer(key, createTempFile(key));
+    }
+
+    /**
+     * A temp file for an entry written other than through a {@link Writer}, e.g. while it is read
+     * as well, to {@link #publish(String, Path)} once complete. Deleted when the cache is opened
+     * again if it never was published.
+     */
+    public Path createTempFile(String key) throws IOException {
+        checkKey(key);
+        return Files.createTempFile(directory, key + "_", TEMP_SUFFIX);
+    }
+
+    /**
+     * Make a complete temp file of {@link #createTempFile(String)} the entry of {@code key},
+     * evicting older entries if the cache is over its budget.
+     */
+    public void publish(String key, Path temp) throws IOException {
+        checkKey(key);
+        publish(key, temp, Files.size(temp));
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    private synchronized void publish(String key, Path temp, long size) throws IOException {
+        if (size > maxBytes) {
+            Files.deleteIfExists(temp);
+            logger.debug("Not caching {}, its {} bytes exceed the cache size", key, size);
+            return;
+        }
+        Path entry = directory.resolve(key);
+        try {
+            Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING);
+        }
+        Long replaced = entries.put(key, size);
+        totalBytes += size - (replaced != null ? replaced : 0);
+        evict();
+    }
+
+    /**
+     * Delete least recently used entries until the cache fits its budget.
+     */
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> eldest = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            try {
+                Files.deleteIfExists(directory.resolve(entry.getKey()));
+            } catch (IOException e) {
+                logger.warn("Could not evict cache entry {}: {}", entry.getKey(), e.getMessage());
+                continue;
+            }
+            totalBytes -= entry.getValue();
+            eldest.remove();
+            logger.debug("Evicted {} from {}", entry.getKey(), directory);
+        }
+    }
+
+    private void remove(String key) {
+        Long size = entries.remove(key);
+        if (size != null) {
+            totalBytes -= size;
+        }
+    }
+
+    /**
+     * Delete the temp files of writes a crash interrupted and index the entries, oldest use first.
+     */
+    private void load() throws IOException {
+        record Found(String key, long size, long lastUsed) {
+        }
+        List<Found> found = new ArrayList<>();
+        int deleted = 0;
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                try {
+                    if (name.endsWith(TEMP_SUFFIX)) {
+                        Files.deleteIfExists(file);
+                        deleted++;
+                    } else if (KEY.matcher(name).matches() && Files.isRegularFile(file)) {
+                        found.add(new Found(name, Files.size(file), Files.getLastModifiedTime(file).toMillis()));
+                    }
+                } catch (NoSuchFileException e) {
+                    // Gone meanwhile
+                }
+            }
+        }
+        found.sort(Comparator.comparingLong(Found::lastUsed));
+        synchronized (this) {
+            for (Found entry : found) {
+                entries.put(entry.key(), entry.size());
+                totalBytes += entry.size();
+            }
+            evict();
+        }
+        logger.info("Cache {} holds {} entries, {} of {} bytes; deleted {} interrupted writes",
+                directory, entries.size(), totalBytes, maxBytes, deleted);
+    }
+
+    private static void checkKey(String key) {
+        if (key == null || !KEY.matcher(key).matches()) {
+            throw new IllegalArgumentException("Invalid cache key: " + key);
+        }
+    }
+
+    /**
+     * An entry being written. Nothing is visible until {@link #commit()}; closing it without
+     * committing discards what was written.
+     */
+    public final class Writer extends OutputStream {
+        private final String key;
+        private final Path temp;
+        private final OutputStream out;
+        private long written;
+        private boolean done;
+
+        private Writer(String key, Path temp) throws IOException {
+            this.key = key;
+            this.temp = temp;
+            this.out = new BufferedOutputStream(Files.newOutputStream(temp));
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            written++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+            written += length;
+        }
+
+        /**
+         * Make the entry visible, evicting older ones if the cache is over its budget.
+         */
+        public void commit() throws IOException {
+            if (done) {
+                throw new IOException("Cache entry " + key + " was already closed");
+            }
+            done = true;
+            try {
+                out.close();
+                publish(key, temp, written);
+            } catch (IOException e) {
+                Files.deleteIfExists(temp);
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() {
+            if (done) {
+                return;
+            }
+            done = true;
+            try {
+                out.close();
+            } catch (IOException e) {
+                // Discarded anyway
+            }
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException e) {
+                logger.warn("Could not delete cache temp file {}: {}", temp, e.getMessage());
+            }
+        }
+    }
+}
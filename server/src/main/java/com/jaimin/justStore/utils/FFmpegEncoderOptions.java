@@ -0,0 +1,26 @@
+package com.jaimin.justStore.utils;
+
+/**
+ * Encoder settings for {@link FFmpegVideoSink}.
+ *
+ * @param codec    FFmpeg encoder name, e.g. libx264 (needs the GPL FFmpeg build) or libopenh264.
+ * @param preset   x264 speed preset (ultrafast ... veryslow); ignored by other codecs.
+ * @param crf      Constant rate factor, lower is better quality; -1 to leave unset.
+ * @param qp       Constant quantizer, 0 is lossless with x264; -1 to leave unset. Wins over crf.
+ * @param bitrate  Target bits per second, used only when neither crf nor qp is set.
+ * @param threads  Encoder threads, 0 lets the codec pick one per core.
+ * @param gopSize  Frames between keyframes; shorter survives damage better, longer compresses better.
+ */
+public record FFmpegEncoderOptions(
+        String codec,
+        String preset,
+        int crf,
+        int qp,
+        int bitrate,
+        int threads,
+        int gopSize
+) {
+    public static FFmpegEncoderOptions defaults() {
+        return new FFmpegEncoderOptions("libx264", "veryfast", 18, -1, 50_000_000, 0, 24);
+    }
+}
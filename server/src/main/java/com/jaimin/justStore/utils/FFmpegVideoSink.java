@@ -0,0 +1,140 @@
+package com.jaimin.justStore.utils;
+
+import com.jaimin.justStore.enums.EncodingProfile;
+import org.bytedeco.ffmpeg.global.avutil;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.bytedeco.javacv.Frame;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import static org.bytedeco.ffmpeg.global.avcodec.avcodec_find_encoder_by_name;
+
+/**
+ * MP4 output through FFmpeg. Gray profiles are fed as GRAY8, so no color conversion
+ * happens before the codec; RGB profiles are fed as RGB24.
+ */
+public class FFmpegVideoSink implements VideoSink {
+
+    private static final Logger logger = LoggerFactory.getLogger(FFmpegVideoSink.class);
+
+    // Always present in the LGPL FFmpeg build shipped with javacv
+    private static final String FALLBACK_CODEC = "libopenh264";
+    // Index up front and one fragment per keyframe, so the MP4 never needs seeking back
+    private static final String STREAMING_MOVFLAGS = "frag_keyframe+empty_moov";
+
+    private final FFmpegFrameRecorder recorder;
+    private final SampleFormat sampleFormat;
+    private final int width;
+    private final int height;
+    private final ByteBuffer buffer;
+
+    public FFmpegVideoSink(String outputPath, EncodingProfile profile, FFmpegEncoderOptions options) throws IOException {
+        this(new FFmpegFrameRecorder(outputPath, profile.getWidth(), profile.getHeight(), 0), profile, options, false);
+    }
+
+    /**
+     * Write the MP4 to {@code output} as it is encoded, fragmented since a stream cannot seek back
+     * to the index. {@code output} is left open; the caller closes it once {@link #finish()} returned,
+     * so a failed encode never looks like a complete video downstream.
+     */
+    public FFmpegVideoSink(OutputStream output, EncodingProfile profile, FFmpegEncoderOptions options) throws IOException {
+        this(new FFmpegFrameRecorder(new UnclosedOutputStream(output), profile.getWidth(), profile.getHeight(), 0),
+                profile, options, true);
+    }
+
+    private FFmpegVideoSink(FFmpegFrameRecorder recorder, EncodingProfile profile, FFmpegEncoderOptions options,
+                            boolean streaming) throws IOException {
+        this.width = profile.getWidth();
+        this.height = profile.getHeight();
+        this.sampleFormat = profile.getChannels() == 1 ? SampleFormat.GRAY8 : SampleFormat.RGB24;
+        this.buffer = ByteBuffer.allocateDirect(width * height * sampleFormat.getChannels());
+
+        this.recorder = recorder;
+        recorder.setFormat("mp4");
+        if (streaming) {
+            recorder.setOption("movflags", STREAMING_MOVFLAGS);
+        }
+        recorder.setVideoCodecName(resolveCodec(options.codec()));
+        recorder.setPixelFormat(avutil.AV_PIX_FMT_YUV420P);
+        recorder.setFrameRate(profile.getFrameRate());
+        recorder.setGopSize(options.gopSize());
+        recorder.setVideoOption("threads", String.valueOf(options.threads()));
+        if (options.preset() != null && !options.preset().isBlank()) {
+            recorder.setVideoOption("preset", options.preset());
+        }
+        if (options.qp() >= 0) {
+            recorder.setVideoBitrate(0);
+            recorder.setVideoOption("qp", String.valueOf(options.qp()));
+        } else if (options.crf() >= 0) {
+            recorder.setVideoBitrate(0);
+            recorder.setVideoOption("crf", String.valueOf(options.crf()));
+        } else {
+            recorder.setVideoBitrate(options.bitrate());
+        }
+
+        try {
+            recorder.start();
+        } catch (IOException e) {
+            recorder.release();
+            throw e;
+        }
+    }
+
+    private static String resolveCodec(String codec) {
+        if (avcodec_find_encoder_by_name(codec) != null) {
+            return codec;
+        }
+        logger.warn("FFmpeg encoder {} is not available in this build, using {}", codec, FALLBACK_CODEC);
+        return FALLBACK_CODEC;
+    }
+
+    @Override
+    public SampleFormat getSampleFormat() {
+        return sampleFormat;
+    }
+
+    @Override
+    public void encode(byte[] plane) throws IOException {
+        buffer.clear();
+        buffer.put(plane);
+        buffer.flip();
+        int pixelFormat = sampleFormat == SampleFormat.GRAY8 ? avutil.AV_PIX_FMT_GRAY8 : avutil.AV_PIX_FMT_RGB24;
+        recorder.recordImage(width, height, Frame.DEPTH_UBYTE, sampleFormat.getChannels(),
+                width * sampleFormat.getChannels(), pixelFormat, buffer);
+    }
+
+    @Override
+    public void finish() throws IOException {
+        recorder.stop();
+    }
+
+    @Override
+    public void close() throws IOException {
+        recorder.release();
+    }
+
+    /**
+     * Keeps the recorder from closing the caller's stream when it is released.
+     */
+    private static final class UnclosedOutputStream extends FilterOutputStream {
+
+        private UnclosedOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
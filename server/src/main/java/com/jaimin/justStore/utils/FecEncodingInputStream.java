@@ -0,0 +1,75 @@
+package com.jaimin.justStore.utils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Turns file content into the payload of a video's FEC-protected data frames: one group at a
+ * time, the group's file content followed by its parity, zero-padded to whole frames
+ * (see {@link VideoHeader}). Holds one group in memory.
+ */
+class FecEncodingInputStream extends InputStream {
+
+    private final InputStream fileContent;
+    private final VideoHeader header;
+    private final FecGroup fecGroup;
+    private final byte[] group;
+
+    private long nextGroup;
+    private int position;
+    private int limit;
+
+    FecEncodingInputStream(InputStream fileContent, VideoHeader header, FecGroup fecGroup) {
+        this.fileContent = fileContent;
+        this.header = header;
+        this.fecGroup = fecGroup;
+        this.group = new byte[header.getGroupFrames() * header.payloadBytesPerFrame()];
+    }
+
+    /**
+     * Bytes this stream produces in total, a whole number of frames.
+     */
+    long length() {
+        return header.getDataFrames() * header.payloadBytesPerFrame();
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (position == limit && !fillGroup()) {
+            return -1;
+        }
+        int count = Math.min(length, limit - position);
+        System.arraycopy(group, position, buffer, offset, count);
+        position += count;
+        return count;
+    }
+
+    private boolean fillGroup() throws IOException {
+        if (nextGroup >= header.getGroups()) {
+            return false;
+        }
+        final int dataBytes = header.dataBytesInGroup(nextGroup);
+        final int codewords = header.codewordsInGroup(nextGroup);
+        if (fileContent.readNBytes(group, 0, dataBytes) != dataBytes) {
+            throw new EOFException("File content ended before the declared size");
+        }
+        Arrays.fill(group, dataBytes, group.length, (byte) 0);
+        fecGroup.encode(group, codewords);
+
+        position = 0;
+        limit = header.framesInGroup(nextGroup) * header.payloadBytesPerFrame();
+        nextGroup++;
+        return true;
+    }
+}
@@ -0,0 +1,117 @@
+package com.jaimin.justStore.utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reed-Solomon over one group of data frames, laid out as described in {@link VideoHeader}:
+ * symbol {@code j} of codeword {@code c} is {@code group[j * codewords + c]}. Codewords are
+ * independent, so both directions split them into one slice per worker.
+ */
+class FecGroup {
+
+    private final ReedSolomon reedSolomon;
+    private final Executor pool;
+    private final int parallelism;
+
+    FecGroup(int parity, Executor pool, int parallelism) {
+        this.reedSolomon = new ReedSolomon(parity);
+        this.pool = pool;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Fill in the parity of a group whose data symbols are in place.
+     */
+    void encode(byte[] group, int codewords) throws IOException {
+        final int dataSymbols = reedSolomon.getDataSymbols();
+        forEachSlice(codewords, (from, to) -> {
+            byte[] codeword = new byte[ReedSolomon.CODEWORD_SYMBOLS];
+            for (int c = from; c < to; c++) {
+                for (int j = 0; j < dataSymbols; j++) {
+                    codeword[j] = group[j * codewords + c];
+                }
+                reedSolomon.encode(codeword);
+                for (int j = dataSymbols; j < ReedSolomon.CODEWORD_SYMBOLS; j++) {
+                    group[j * codewords + c] = codeword[j];
+                }
+            }
+            return 0;
+        });
+    }
+
+    /**
+     * Repair a group in place. Symbols in frames whose checksum failed are passed to the decoder as erasures.
+     *
+     * @return number of codewords that could not be repaired.
+     */
+    int correct(byte[] group, int codewords, int payloadBytesPerFrame, boolean[] frameIntact) throws IOException {
+        return forEachSlice(codewords, (from, to) -> {
+            byte[] codeword = new byte[ReedSolomon.CODEWORD_SYMBOLS];
+            int[] erasures = new int[ReedSolomon.CODEWORD_SYMBOLS];
+            int failed = 0;
+            for (int c = from; c < to; c++) {
+                int erasureCount = 0;
+                for (int j = 0; j < ReedSolomon.CODEWORD_SYMBOLS; j++) {
+                    int position = j * codewords + c;
+                    codeword[j] = group[position];
+                    if (!frameIntact[position / payloadBytesPerFrame]) {
+                        erasures[erasureCount++] = j;
+                    }
+                }
+                if (!reedSolomon.decode(codeword, erasures, erasureCount)) {
+                    // A frame can fail its checksum over a few bits; erasing all of its symbols may
+                    // then cost more than correcting the actual errors
+                    if (erasureCount == 0 || !decodeErrorsOnly(group, codewords, c, codeword)) {
+                        failed++;
+                        continue;
+                    }
+                }
+                for (int j = 0; j < ReedSolomon.CODEWORD_SYMBOLS; j++) {
+                    group[j * codewords + c] = codeword[j];
+                }
+            }
+            return failed;
+        });
+    }
+
+    private boolean decodeErrorsOnly(byte[] group, int codewords, int c, byte[] codeword) {
+        for (int j = 0; j < ReedSolomon.CODEWORD_SYMBOLS; j++) {
+            codeword[j] = group[j * codewords + c];
+        }
+        return reedSolomon.decode(codeword, new int[0], 0);
+    }
+
+    private interface Slice {
+        int run(int from, int to);
+    }
+
+    /**
+     * Run {@code slice} over {@code [0, codewords)} split across the pool, summing the results.
+     */
+    private int forEachSlice(int codewords, Slice slice) throws IOException {
+        final int slices = Math.min(parallelism, codewords);
+        if (slices <= 1) {
+            return slice.run(0, codewords);
+        }
+
+        AtomicInteger total = new AtomicInteger();
+        List<CompletableFuture<Void>> tasks = new ArrayList<>(slices);
+        for (int s = 0; s < slices; s++) {
+            final int from = (int) ((long) codewords * s / slices);
+            final int to = (int) ((long) codewords * (s + 1) / slices);
+            tasks.add(CompletableFuture.runAsync(() -> total.addAndGet(slice.run(from, to)), pool));
+        }
+        try {
+            CompletableFuture.allOf(tasks.toArray(CompletableFuture[]::new)).join();
+        } catch (CompletionException e) {
+            throw new IOException("Reed-Solomon coding failed", e.getCause());
+        }
+        return total.get();
+    }
+}
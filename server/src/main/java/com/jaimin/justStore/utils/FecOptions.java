@@ -0,0 +1,38 @@
+package com.jaimin.justStore.utils;
+
+import com.jaimin.justStore.enums.EncodingProfile;
+
+/**
+ * Reed-Solomon protection of a video's data frames.
+ *
+ * @param parity      parity symbols per 255-symbol codeword, 0 for no FEC. Up to {@code parity / 2}
+ *                    damaged symbols per codeword are repaired, or {@code parity} in frames known
+ *                    to be damaged from their checksum.
+ * @param groupFrames frames each codeword is interleaved over; a lost frame costs each codeword
+ *                    about {@code 255 / groupFrames} symbols.
+ */
+public record FecOptions(int parity, int groupFrames) {
+
+    public static final int DEFAULT_GROUP_FRAMES = 16;
+
+    public FecOptions {
+        if (parity != 0 && (parity < 2 || parity > 254 || parity % 2 != 0)) {
+            throw new IllegalArgumentException("FEC parity must be 0, or even between 2 and 254, got " + parity);
+        }
+        if (groupFrames < 1 || groupFrames > 0xFFFF) {
+            throw new IllegalArgumentException("FEC group must be 1 to 65535 frames, got " + groupFrames);
+        }
+    }
+
+    public static FecOptions none() {
+        return new FecOptions(0, 1);
+    }
+
+    public static FecOptions forProfile(EncodingProfile profile) {
+        return new FecOptions(profile.getFecParity(), DEFAULT_GROUP_FRAMES);
+    }
+
+    public boolean enabled() {
+        return parity > 0;
+    }
+}
@@ -0,0 +1,61 @@
+package com.jaimin.justStore.utils;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Orders the formats of a video for decoding: only video streams of exactly the encoded frame size
+ * can be decoded, those of the codec decoded fastest come first, and the smallest stream first
+ * among those of one codec, so the least is downloaded.
+ */
+public class FormatSelector {
+
+    // Codec families, fastest decoded first
+    private final List<String> codecPreference;
+
+    /**
+     * @param codecPreference codec families as {@link #codecFamily(String)} names them, fastest
+     *                        decoded first; codecs not listed come after all listed ones.
+     */
+    public FormatSelector(List<String> codecPreference) {
+        this.codecPreference = codecPreference.stream()
+                .map(codec -> codec.trim().toLowerCase(Locale.ROOT))
+                .filter(codec -> !codec.isEmpty())
+                .toList();
+    }
+
+    /**
+     * The formats of {@code width} x {@code height} frames, in the order they should be tried.
+     */
+    public List<VideoFormat> select(List<VideoFormat> formats, int width, int height) {
+        return formats.stream()
+                .filter(format -> format.width() == width && format.height() == height)
+                .filter(format -> codecFamily(format.codec()) != null)
+                .sorted(Comparator.comparingInt((VideoFormat format) -> codecRank(format.codec()))
+                        .thenComparingLong(format -> format.bytes() >= 0 ? format.bytes() : Long.MAX_VALUE))
+                .toList();
+    }
+
+    private int codecRank(String codec) {
+        int rank = codecPreference.indexOf(codecFamily(codec));
+        return rank >= 0 ? rank : codecPreference.size();
+    }
+
+    /**
+     * The codec family of a codec string, {@code avc1}, {@code vp9}, {@code av01} or its first
+     * dot-separated part for others, or {@code null} for a stream without video.
+     */
+    public static String codecFamily(String codec) {
+        if (codec == null || codec.isBlank() || codec.equals("none")) {
+            return null;
+        }
+        String family = codec.toLowerCase(Locale.ROOT).split("\\.", 2)[0];
+        return switch (family) {
+            case "avc1", "avc3", "h264" -> "avc1";
+            case "vp9", "vp09" -> "vp9";
+            case "av01", "av1" -> "av01";
+            default -> family;
+        };
+    }
+}
@@ -0,0 +1,31 @@
+package com.jaimin.justStore.utils;
+
+import java.util.zip.CRC32C;
+
+/**
+ * CRC32C of a data frame's payload, stored big-endian in the 4 bytes right after it.
+ */
+class FrameChecksum {
+
+    static void write(byte[] frame, int payloadBytes) {
+        int crc = compute(frame, payloadBytes);
+        frame[payloadBytes] = (byte) (crc >>> 24);
+        frame[payloadBytes + 1] = (byte) (crc >>> 16);
+        frame[payloadBytes + 2] = (byte) (crc >>> 8);
+        frame[payloadBytes + 3] = (byte) crc;
+    }
+
+    static boolean verify(byte[] frame, int payloadBytes) {
+        int stored = (frame[payloadBytes] & 0xFF) << 24
+                | (frame[payloadBytes + 1] & 0xFF) << 16
+                | (frame[payloadBytes + 2] & 0xFF) << 8
+                | (frame[payloadBytes + 3] & 0xFF);
+        return stored == compute(frame, payloadBytes);
+    }
+
+    private static int compute(byte[] frame, int payloadBytes) {
+        CRC32C crc = new CRC32C();
+        crc.update(frame, 0, payloadBytes);
+        return (int) crc.getValue();
+    }
+}
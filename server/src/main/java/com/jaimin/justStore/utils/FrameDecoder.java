@@ -0,0 +1,178 @@
+package com.jaimin.justStore.utils;
+
+import com.jaimin.justStore.enums.EncodingProfile;
+import org.bytedeco.ffmpeg.global.avutil;
+import org.bytedeco.javacv.Frame;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Turns grabbed frames back into payload bytes, the inverse of {@link FrameRenderer}.
+ * <p>
+ * Gray profiles are grabbed as GRAY8, so only luma is read and FFmpeg does no color
+ * conversion; color profiles are grabbed as RGB24. {@link #load(Frame, byte[])} copies a
+ * frame's pixels out of native memory in one bulk read, so the grabber can move on to the
+ * next frame while the plane is decoded elsewhere. Planes and scratch space are reused,
+ * so decoding does not allocate per frame or per pixel.
+ * One instance per decoding thread.
+ */
+public class FrameDecoder {
+
+    // Bits of the file length carried by the legacy metadata frame
+    private static final int LEGACY_METADATA_BITS = 32;
+
+    private final EncodingProfile profile;
+    private final SampleFormat format;
+    private final int rowBytes;
+    // Sum of each channel over the current row of blocks, per block
+    private final int[] blockSums;
+
+    public FrameDecoder(EncodingProfile profile) {
+        this.profile = profile;
+        this.format = profile.getChannels() == 1 ? SampleFormat.GRAY8 : SampleFormat.RGB24;
+        this.rowBytes = profile.getWidth() * format.getChannels();
+        this.blockSums = new int[profile.getColumns() * format.getChannels()];
+    }
+
+    /**
+     * Pixel format to ask the grabber for.
+     */
+    public int getPixelFormat() {
+        return format == SampleFormat.GRAY8 ? avutil.AV_PIX_FMT_GRAY8 : avutil.AV_PIX_FMT_RGB24;
+    }
+
+    public byte[] newPlane() {
+        return FrameRenderer.newPlane(profile, format);
+    }
+
+    /**
+     * Read the header from the loaded first frame, falling back to the legacy 32-bit length frame.
+     */
+    public VideoHeader readHeader(byte[] plane) throws IOException {
+        VideoHeader header = VideoHeader.read(plane, profile, format);
+        return header != null ? header : VideoHeader.legacy(profile, readLegacyLength(plane));
+    }
+
+    /**
+     * Read the trailer from a loaded frame, {@code null} when it is not a trailer frame.
+     */
+    public VideoTrailer readTrailer(byte[] plane) {
+        return VideoTrailer.read(plane, profile, format);
+    }
+
+    private long readLegacyLength(byte[] plane) {
+        final int channels = format.getChannels();
+        final int blockSize = profile.getBlockSize();
+
+        long totalBytes = 0;
+        for (int k = 0; k < LEGACY_METADATA_BITS; k++) {
+            int column = k % profile.getColumns();
+            int row = k / profile.getColumns();
+            int sum = 0;
+            for (int y = 0; y < blockSize; y++) {
+                int start = (row * blockSize + y) * rowBytes + column * blockSize * channels;
+                for (int i = start; i < start + blockSize * channels; i++) {
+                    sum += plane[i] & 0xFF;
+                }
+            }
+            // Strictly above mid-gray, as legacy videos were always read
+            if (sum / (blockSize * blockSize * channels) > 128) {
+                totalBytes |= 1L << k;
+            }
+        }
+        return totalBytes;
+    }
+
+    /**
+     * Decode the first {@code length} payload bytes of a loaded data frame into {@code payload}.
+     */
+    public void decode(byte[] plane, byte[] payload, int length) {
+        if (profile.getBlockSize() == 1 && profile.getBitsPerBlock() == 1) {
+            // One black/white pixel per bit: a luma sample is white when its top bit is set
+            BitKernel.INSTANCE.pack(plane, payload, length);
+            return;
+        }
+
+        final int channels = format.getChannels();
+        final int blockSize = profile.getBlockSize();
+        final int blockPixels = blockSize * blockSize;
+        final int bitsPerBlock = profile.getBitsPerBlock();
+        final int bitsPerChannel = profile.getBitsPerChannel();
+        final int levels = profile.getLevels();
+
+        int byteIndex = 0;
+        int bitBuffer = 0;
+        int bitCount = 0;
+        for (int row = 0; row < profile.getRows() && byteIndex < length; row++) {
+            sumBlockRow(plane, row);
+            for (int column = 0; column < profile.getColumns() && byteIndex < length; column++) {
+                int sumIndex = column * channels;
+                int symbol;
+                if (channels == 1) {
+                    symbol = toLevel(blockSums[sumIndex] / blockPixels, levels);
+                } else {
+                    symbol = toLevel(blockSums[sumIndex] / blockPixels, levels) << (2 * bitsPerChannel)
+                            | toLevel(blockSums[sumIndex + 1] / blockPixels, levels) << bitsPerChannel
+                            | toLevel(blockSums[sumIndex + 2] / blockPixels, levels);
+                }
+
+                bitBuffer = (bitBuffer << bitsPerBlock) | symbol;
+                bitCount += bitsPerBlock;
+                while (bitCount >= 8 && byteIndex < length) {
+                    bitCount -= 8;
+                    payload[byteIndex++] = (byte) (bitBuffer >>> bitCount);
+                }
+                bitBuffer &= (1 << bitCount) - 1;
+            }
+        }
+    }
+
+    private void sumBlockRow(byte[] plane, int row) {
+        final int channels = format.getChannels();
+        final int blockSize = profile.getBlockSize();
+        Arrays.fill(blockSums, 0);
+        for (int y = 0; y < blockSize; y++) {
+            int sampleIndex = (row * blockSize + y) * rowBytes;
+            for (int column = 0; column < profile.getColumns(); column++) {
+                int sumIndex = column * channels;
+                for (int x = 0; x < blockSize; x++) {
+                    for (int channel = 0; channel < channels; channel++) {
+                        blockSums[sumIndex + channel] += plane[sampleIndex++] & 0xFF;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Nearest channel level for an 8-bit intensity, the inverse of the encoder's level spacing.
+     */
+    private static int toLevel(int value, int levels) {
+        return (value * (levels - 1) + 127) / 255;
+    }
+
+    /**
+     * Copy the frame's pixels into {@code plane}, one bulk read per frame (or per row when padded).
+     */
+    public byte[] load(Frame frame, byte[] plane) throws IOException {
+        if (frame.imageWidth < profile.getWidth() || frame.imageHeight < profile.getHeight()
+                || frame.imageChannels != format.getChannels()) {
+            throw new IOException("Frame is " + frame.imageWidth + "x" + frame.imageHeight + "x" + frame.imageChannels
+                    + ", profile " + profile + " needs " + profile.getWidth() + "x" + profile.getHeight()
+                    + "x" + format.getChannels());
+        }
+
+        ByteBuffer image = (ByteBuffer) frame.image[0];
+        final int stride = frame.imageStride;
+        if (stride == rowBytes) {
+            image.get(0, plane, 0, plane.length);
+            return plane;
+        }
+        for (int row = 0; row < profile.getHeight(); row++) {
+            image.get(row * stride, plane, row * rowBytes, rowBytes);
+        }
+        return plane;
+    }
+}
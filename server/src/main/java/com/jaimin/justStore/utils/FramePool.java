@@ -0,0 +1,48 @@
+package com.jaimin.justStore.utils;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Small thread-safe pool of reusable frame buffers, so encoding does not
+ * allocate a new image for every frame. A buffer taken from the pool may
+ * hold the previous frame's pixels; callers overwrite it before using it.
+ */
+public class FramePool<T> {
+
+    private final Supplier<T> factory;
+    private final BlockingQueue<T> frames;
+
+    public FramePool(Supplier<T> factory, int size) {
+        this.factory = factory;
+        this.frames = new ArrayBlockingQueue<>(Math.max(1, size));
+    }
+
+    /**
+     * Take a buffer from the pool, or create one if the pool is empty.
+     */
+    public T acquire() {
+        T frame = frames.poll();
+        return frame != null ? frame : factory.get();
+    }
+
+    /**
+     * Return a buffer to the pool. Buffers beyond the pool size are dropped.
+     */
+    public void release(T frame) {
+        frames.offer(frame);
+    }
+
+    /**
+     * Empty the pool, handing every pooled buffer to {@code disposer}, for buffers holding
+     * native resources.
+     */
+    public void drain(Consumer<? super T> disposer) {
+        T frame;
+        while ((frame = frames.poll()) != null) {
+            disposer.accept(frame);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.jaimin.justStore.utils;
+
+import com.jaimin.justStore.enums.EncodingProfile;
+
+import java.util.Arrays;
+
+/**
+ * Turns payload bytes into frame planes following an {@link EncodingProfile}.
+ * A plane holds one row of pixels after another, {@link SampleFormat#getChannels()}
+ * samples per pixel.
+ */
+public class FrameRenderer {
+
+    public static byte[] newPlane(EncodingProfile profile, SampleFormat format) {
+        return new byte[profile.getWidth() * profile.getHeight() * format.getChannels()];
+    }
+
+    /**
+     * Stored sample for a channel level, spreading the levels evenly over 0..255.
+     */
+    static byte levelToSample(int level, int levels, SampleFormat format) {
+        return (byte) (level * 255 / (levels - 1) + format.getSampleOffset());
+    }
+
+    /**
+     * Render one frame of payload. {@code payload} holds {@link EncodingProfile#getBytesPerFrame()}
+     * bytes; callers zero the tail of the last frame.
+     */
+    public static byte[] render(byte[] payload, EncodingProfile profile, SampleFormat format, byte[] plane) {
+        if (profile.getChannels() == 3 && format.getChannels() != 3) {
+            throw new IllegalArgumentException(format + " cannot hold color profile " + profile);
+        }
+        if (profile.getBlockSize() == 1 && profile.getBitsPerBlock() == 1) {
+            return renderBits(payload, profile, format, plane);
+        }
+
+        final int channels = format.getChannels();
+        final int blockSize = profile.getBlockSize();
+        final int bitsPerBlock = profile.getBitsPerBlock();
+        final int bitsPerChannel = profile.getBitsPerChannel();
+        final int channelMask = profile.getLevels() - 1;
+        final int rowStride = profile.getWidth() * channels;
+        final byte[] levelSamples = new byte[profile.getLevels()];
+        for (int level = 0; level < levelSamples.length; level++) {
+            levelSamples[level] = levelToSample(level, profile.getLevels(), format);
+        }
+
+        long bitBuffer = 0;
+        int bitCount = 0;
+        int byteIndex = 0;
+        for (int row = 0; row < profile.getRows(); row++) {
+            final int rowStart = row * blockSize * rowStride;
+            int sampleIndex = rowStart;
+            for (int column = 0; column < profile.getColumns(); column++) {
+                while (bitCount < bitsPerBlock) {
+                    int next = byteIndex < payload.length ? payload[byteIndex++] & 0xFF : 0;
+                    bitBuffer = (bitBuffer << 8) | next;
+                    bitCount += 8;
+                }
+                bitCount -= bitsPerBlock;
+                int symbol = (int) (bitBuffer >>> bitCount) & ((1 << bitsPerBlock) - 1);
+
+                if (channels == 1) {
+                    Arrays.fill(plane, sampleIndex, sampleIndex + blockSize, levelSamples[symbol]);
+                    sampleIndex += blockSize;
+                    continue;
+                }
+
+                byte red;
+                byte green;
+                byte blue;
+                if (profile.getChannels() == 1) {
+                    red = green = blue = levelSamples[symbol];
+                } else {
+                    red = levelSamples[(symbol >>> (2 * bitsPerChannel)) & channelMask];
+                    green = levelSamples[(symbol >>> bitsPerChannel) & channelMask];
+                    blue = levelSamples[symbol & channelMask];
+                }
+                for (int k = 0; k < blockSize; k++) {
+                    plane[sampleIndex++] = red;
+                    plane[sampleIndex++] = green;
+                    plane[sampleIndex++] = blue;
+                }
+            }
+            // The remaining pixel rows of the block row are copies of the first one
+            for (int k = 1; k < blockSize; k++) {
+                System.arraycopy(plane, rowStart, plane, rowStart + k * rowStride, rowStride);
+            }
+        }
+        return plane;
+    }
+
+    /**
+     * Fast path for one black/white pixel per bit: the payload is already the packed pixel row.
+     */
+    private static byte[] renderBits(byte[] payload, EncodingProfile profile, SampleFormat format, byte[] plane) {
+        BitKernel.INSTANCE.expand(payload, profile.getWidth() * profile.getHeight(),
+                levelToSample(0, 2, format), levelToSample(1, 2, format), format.getChannels(), plane);
+        return plane;
+    }
+}
@@ -0,0 +1,46 @@
+package com.jaimin.justStore.utils;
+
+import com.jaimin.justStore.enums.EncodingProfile;
+import org.jcodec.api.SequenceEncoder;
+import org.jcodec.common.model.ColorSpace;
+import org.jcodec.common.model.Picture;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * MP4 output through jcodec's pure Java H.264 encoder.
+ */
+public class JCodecVideoSink implements VideoSink {
+
+    private final SequenceEncoder encoder;
+    private final int width;
+    private final int height;
+
+    public JCodecVideoSink(String outputPath, EncodingProfile profile) throws IOException {
+        this.encoder = SequenceEncoder.createSequenceEncoder(new File(outputPath), profile.getFrameRate());
+        this.width = profile.getWidth();
+        this.height = profile.getHeight();
+    }
+
+    @Override
+    public SampleFormat getSampleFormat() {
+        return SampleFormat.JCODEC_RGB;
+    }
+
+    @Override
+    public void encode(byte[] plane) throws IOException {
+        // Wraps the plane, no copy
+        encoder.encodeNativeFrame(Picture.createPicture(width, height, new byte[][]{plane}, ColorSpace.RGB));
+    }
+
+    @Override
+    public void finish() throws IOException {
+        encoder.finish();
+    }
+
+    @Override
+    public void close() {
+        // jcodec keeps no native resources; an unfinished file is left for the caller to delete
+    }
+}
@@ -0,0 +1,112 @@
+package com.jaimin.justStore.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Set;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps videos as files in a local directory, for running the encode and decode pipeline without
+ * network access, e.g. for throughput tests.
+ * <p>
+ * A video is written to a temp file and moved to its name once complete, so a video is either
+ * there in full or not at all. Titles and tags are not kept.
+ */
+public class LocalVideoStore implements VideoStore {
+
+    public static final String NAME = "local";
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalVideoStore.class);
+
+    private static final String VIDEO_SUFFIX = ".mp4";
+    private static final String TEMP_SUFFIX = ".tmp";
+    // Ids are random UUIDs and used as file names, anything else is refused
+    private static final Pattern VIDEO_ID = Pattern.compile("[0-9a-f]{8}(-[0-9a-f]{4}){3}-[0-9a-f]{12}");
+
+    private final Path directory;
+
+    /**
+     * Store videos in {@code directory}, creating it when needed.
+     */
+    public LocalVideoStore(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean isLocal() {
+        return true;
+    }
+
+    @Override
+    public StoredVideo put(Path video, String title, Set<String> tags, ResumableUpload.ProgressListener listener)
+            throws IOException {
+        return put(title, tags, listener, out -> Files.copy(video, out));
+    }
+
+    @Override
+    public StoredVideo put(String title, Set<String> tags, ResumableUpload.ProgressListener listener, VideoWriter writer)
+            throws IOException {
+        String videoId = UUID.randomUUID().toString();
+        Path temp = Files.createTempFile(directory, videoId + "_", TEMP_SUFFIX);
+        try {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp))) {
+                writer.writeTo(out);
+            }
+            Path target = path(videoId);
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target);
+            }
+            long size = Files.size(target);
+            if (listener != null) {
+                listener.onProgress(null, size, size);
+            }
+            logger.info("Stored {} byte video {} in {}", size, videoId, directory);
+            return new StoredVideo(videoId, target.toUri().toString());
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @Override
+    public InputStream open(String videoId, String videoUrl) throws IOException {
+        return new BufferedInputStream(Files.newInputStream(path(videoId)));
+    }
+
+    @Override
+    public Path localPath(String videoId) {
+        return path(videoId);
+    }
+
+    @Override
+    public void delete(String videoId) throws IOException {
+        if (Files.deleteIfExists(path(videoId))) {
+            logger.info("Deleted video {} from {}", videoId, directory);
+        }
+    }
+
+    private Path path(String videoId) {
+        if (videoId == null || !VIDEO_ID.matcher(videoId).matches()) {
+            throw new IllegalArgumentException("Invalid local video id: " + videoId);
+        }
+        return directory.resolve(videoId + VIDEO_SUFFIX);
+    }
+}
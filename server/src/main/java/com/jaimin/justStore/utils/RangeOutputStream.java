@@ -0,0 +1,36 @@
+package com.jaimin.justStore.utils;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Passes on only bytes {@code first} to {@code last} (inclusive) of what is written to it.
+ */
+public class RangeOutputStream extends FilterOutputStream {
+
+    private final long first;
+    private final long last;
+    private long position;
+
+    public RangeOutputStream(OutputStream out, long first, long last) {
+        super(out);
+        this.first = first;
+        this.last = last;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+        long from = Math.max(position, first);
+        long to = Math.min(position + length, last + 1);
+        if (from < to) {
+            out.write(buffer, offset + (int) (from - position), (int) (to - from));
+        }
+        position += length;
+    }
+}
@@ -0,0 +1,107 @@
+package com.jaimin.justStore.utils;
+
+import com.jaimin.justStore.enums.EncodingProfile;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Renders a small fixed-size record (the video header or trailer) into a frame so that it
+ * survives lossy re-encoding, whatever the profile of the data frames.
+ * <p>
+ * Every bit is a black or white cell of {@value #CELL_SIZE}x{@value #CELL_SIZE} pixels, and the
+ * record is written {@value #COPIES} times one after another, cells left to right, top to bottom.
+ * Reading takes a majority vote of each bit over the copies, sampling only the middle of each
+ * cell, then checks the magic number and the CRC32 in the last 4 bytes of the record. A frame
+ * that is not a record, like the legacy length frame, fails the check.
+ */
+public class RecordFrame {
+
+    public static final int RECORD_BYTES = 64;
+    static final int MAGIC = 0x4A535456; // "JSTV"
+
+    private static final int CELL_SIZE = 8;
+    private static final int COPIES = 9;
+    private static final int RECORD_BITS = RECORD_BYTES * 8;
+
+    /**
+     * A record buffer starting with the magic number and {@code kind}, for the caller to fill
+     * up to {@code RECORD_BYTES - 4}; {@link #render} adds the CRC.
+     */
+    static ByteBuffer newRecord(byte kind) {
+        return ByteBuffer.allocate(RECORD_BYTES).putInt(MAGIC).put(kind);
+    }
+
+    public static byte[] render(ByteBuffer record, EncodingProfile profile, SampleFormat format, byte[] plane) {
+        byte[] bytes = record.array();
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, RECORD_BYTES - 4);
+        ByteBuffer.wrap(bytes).putInt(RECORD_BYTES - 4, (int) crc.getValue());
+
+        final byte black = FrameRenderer.levelToSample(0, 2, format);
+        final byte white = FrameRenderer.levelToSample(1, 2, format);
+        final int channels = format.getChannels();
+        final int rowStride = profile.getWidth() * channels;
+        final int columns = profile.getWidth() / CELL_SIZE;
+
+        Arrays.fill(plane, black);
+        for (int cell = 0; cell < COPIES * RECORD_BITS; cell++) {
+            int bit = cell % RECORD_BITS;
+            if ((bytes[bit >>> 3] & (0x80 >>> (bit & 7))) == 0) {
+                continue;
+            }
+            int x = (cell % columns) * CELL_SIZE;
+            int y = (cell / columns) * CELL_SIZE;
+            for (int row = 0; row < CELL_SIZE; row++) {
+                int start = (y + row) * rowStride + x * channels;
+                Arrays.fill(plane, start, start + CELL_SIZE * channels, white);
+            }
+        }
+        return plane;
+    }
+
+    /**
+     * Read a record of the given kind from a loaded frame plane.
+     *
+     * @return the record positioned after its kind byte, or {@code null} when the frame holds no valid record of that kind.
+     */
+    static ByteBuffer read(byte[] plane, EncodingProfile profile, SampleFormat format, byte kind) {
+        final int channels = format.getChannels();
+        final int rowStride = profile.getWidth() * channels;
+        final int columns = profile.getWidth() / CELL_SIZE;
+        // Sample the middle half of each cell, away from edges blurred by the codec
+        final int margin = CELL_SIZE / 4;
+
+        int[] votes = new int[RECORD_BITS];
+        for (int cell = 0; cell < COPIES * RECORD_BITS; cell++) {
+            int x = (cell % columns) * CELL_SIZE;
+            int y = (cell / columns) * CELL_SIZE;
+            int sum = 0;
+            for (int row = margin; row < CELL_SIZE - margin; row++) {
+                int start = (y + row) * rowStride + (x + margin) * channels;
+                for (int i = start; i < start + (CELL_SIZE - 2 * margin) * channels; i++) {
+                    sum += plane[i] & 0xFF;
+                }
+            }
+            if (sum / ((CELL_SIZE - 2 * margin) * (CELL_SIZE - 2 * margin) * channels) >= 128) {
+                votes[cell % RECORD_BITS]++;
+            }
+        }
+
+        byte[] bytes = new byte[RECORD_BYTES];
+        for (int bit = 0; bit < RECORD_BITS; bit++) {
+            if (votes[bit] > COPIES / 2) {
+                bytes[bit >>> 3] |= (byte) (0x80 >>> (bit & 7));
+            }
+        }
+
+        ByteBuffer record = ByteBuffer.wrap(bytes);
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, RECORD_BYTES - 4);
+        if (record.getInt() != MAGIC || record.get() != kind || record.getInt(RECORD_BYTES - 4) != (int) crc.getValue()) {
+            return null;
+        }
+        return record;
+    }
+}
@@ -0,0 +1,298 @@
+package com.jaimin.justStore.utils;
+
+import java.util.Arrays;
+
+/**
+ * Systematic Reed-Solomon code over GF(256) with full 255-symbol codewords: {@code 255 - parity}
+ * data symbols followed by {@code parity} parity symbols. Corrects any mix of {@code e} errors and
+ * {@code f} erasures (symbols known to be suspect) with {@code 2e + f <= parity}.
+ * <p>
+ * Field polynomial 0x11d, generator 2, first consecutive root 1 (α^0). Codeword index 0 is the
+ * highest degree coefficient. Instances only hold lookup tables and can be shared between threads.
+ */
+public final class ReedSolomon {
+
+    public static final int CODEWORD_SYMBOLS = 255;
+
+    private static final int[] EXP = new int[512];
+    private static final int[] LOG = new int[256];
+
+    static {
+        int x = 1;
+        for (int i = 0; i < 255; i++) {
+            EXP[i] = x;
+            LOG[x] = i;
+            x <<= 1;
+            if ((x & 0x100) != 0) {
+                x ^= 0x11d;
+            }
+        }
+        for (int i = 255; i < 512; i++) {
+            EXP[i] = EXP[i - 255];
+        }
+    }
+
+    private final int parity;
+    // generatorProducts[i][x] = g_(i+1) * x, for the encoder's shift register
+    private final byte[][] generatorProducts;
+    // rootProducts[i][x] = α^i * x, for evaluating syndromes
+    private final byte[][] rootProducts;
+
+    public ReedSolomon(int parity) {
+        if (parity < 2 || parity > 254 || parity % 2 != 0) {
+            throw new IllegalArgumentException("Parity symbols must be even, between 2 and 254, got " + parity);
+        }
+        this.parity = parity;
+
+        int[] generator = {1};
+        for (int i = 0; i < parity; i++) {
+            generator = polyMul(generator, new int[]{1, EXP[i]});
+        }
+        generatorProducts = new byte[parity][256];
+        rootProducts = new byte[parity][256];
+        for (int i = 0; i < parity; i++) {
+            for (int value = 0; value < 256; value++) {
+                generatorProducts[i][value] = (byte) mul(generator[i + 1], value);
+                rootProducts[i][value] = (byte) mul(EXP[i], value);
+            }
+        }
+    }
+
+    public int getParity() {
+        return parity;
+    }
+
+    public int getDataSymbols() {
+        return CODEWORD_SYMBOLS - parity;
+    }
+
+    /**
+     * Compute the parity of a codeword whose data symbols are in {@code codeword[0 .. dataSymbols)},
+     * writing it to {@code codeword[dataSymbols .. 255)}.
+     */
+    public void encode(byte[] codeword) {
+        final int dataSymbols = getDataSymbols();
+        Arrays.fill(codeword, dataSymbols, CODEWORD_SYMBOLS, (byte) 0);
+        for (int i = 0; i < dataSymbols; i++) {
+            int feedback = (codeword[i] ^ codeword[dataSymbols]) & 0xFF;
+            for (int j = 0; j < parity - 1; j++) {
+                codeword[dataSymbols + j] = (byte) (codeword[dataSymbols + j + 1] ^ generatorProducts[j][feedback]);
+            }
+            codeword[CODEWORD_SYMBOLS - 1] = generatorProducts[parity - 1][feedback];
+        }
+    }
+
+    /**
+     * Correct a codeword in place. The first {@code erasureCount} entries of {@code erasures} are
+     * indexes of symbols known to be unreliable; errors elsewhere are located by the decoder.
+     *
+     * @return false when there are too many errors to correct; the codeword may then be partly changed.
+     */
+    public boolean decode(byte[] codeword, int[] erasures, int erasureCount) {
+        int[] syndromes = syndromes(codeword);
+        if (isZero(syndromes)) {
+            return true;
+        }
+        if (erasureCount > parity) {
+            // Too many to treat as erasures, but the actual errors may still be few enough
+            erasureCount = 0;
+        }
+
+        int[] erasurePositions = Arrays.copyOf(erasures, erasureCount);
+        int[] forney = forneySyndromes(syndromes, erasurePositions);
+        int[] errorLocator = findErrorLocator(forney, erasureCount);
+        if (errorLocator == null) {
+            return false;
+        }
+        int[] errorPositions = findErrors(reverse(errorLocator));
+        if (errorPositions == null) {
+            return false;
+        }
+
+        int[] errata = new int[erasureCount + errorPositions.length];
+        System.arraycopy(erasurePositions, 0, errata, 0, erasureCount);
+        System.arraycopy(errorPositions, 0, errata, erasureCount, errorPositions.length);
+        if (!correctErrata(codeword, syndromes, errata)) {
+            return false;
+        }
+        return isZero(syndromes(codeword));
+    }
+
+    /**
+     * Syndromes with a leading 0, as the decoding steps below expect.
+     */
+    private int[] syndromes(byte[] codeword) {
+        int[] syndromes = new int[parity + 1];
+        for (int i = 0; i < parity; i++) {
+            byte[] products = rootProducts[i];
+            int value = 0;
+            for (int k = 0; k < CODEWORD_SYMBOLS; k++) {
+                value = (products[value] ^ codeword[k]) & 0xFF;
+            }
+            syndromes[i + 1] = value;
+        }
+        return syndromes;
+    }
+
+    private int[] forneySyndromes(int[] syndromes, int[] erasurePositions) {
+        int[] forney = Arrays.copyOfRange(syndromes, 1, syndromes.length);
+        for (int position : erasurePositions) {
+            int x = EXP[CODEWORD_SYMBOLS - 1 - position];
+            for (int j = 0; j < forney.length - 1; j++) {
+                forney[j] = mul(forney[j], x) ^ forney[j + 1];
+            }
+        }
+        return forney;
+    }
+
+    /**
+     * Berlekamp-Massey on the Forney syndromes.
+     */
+    private int[] findErrorLocator(int[] syndromes, int erasureCount) {
+        int[] locator = {1};
+        int[] old = {1};
+        for (int i = 0; i < parity - erasureCount; i++) {
+            int delta = syndromes[i];
+            for (int j = 1; j < locator.length && j <= i; j++) {
+                delta ^= mul(locator[locator.length - 1 - j], syndromes[i - j]);
+            }
+            old = Arrays.copyOf(old, old.length + 1);
+            if (delta != 0) {
+                if (old.length > locator.length) {
+                    int[] next = polyScale(old, delta);
+                    old = polyScale(locator, inverse(delta));
+                    locator = next;
+                }
+                locator = polyAdd(locator, polyScale(old, delta));
+            }
+        }
+
+        int leadingZeros = 0;
+        while (leadingZeros < locator.length && locator[leadingZeros] == 0) {
+            leadingZeros++;
+        }
+        locator = Arrays.copyOfRange(locator, leadingZeros, locator.length);
+        int errors = locator.length - 1;
+        if (errors * 2 + erasureCount > parity) {
+            return null;
+        }
+        return locator;
+    }
+
+    /**
+     * Chien search: positions where the reversed error locator has a root.
+     */
+    private int[] findErrors(int[] locator) {
+        int errors = locator.length - 1;
+        int[] positions = new int[errors];
+        int found = 0;
+        for (int i = 0; i < CODEWORD_SYMBOLS; i++) {
+            if (polyEval(locator, EXP[i]) == 0) {
+                if (found == errors) {
+                    return null;
+                }
+                positions[found++] = CODEWORD_SYMBOLS - 1 - i;
+            }
+        }
+        return found == errors ? positions : null;
+    }
+
+    /**
+     * Forney algorithm: compute the error magnitudes at the errata positions and apply them.
+     */
+    private boolean correctErrata(byte[] codeword, int[] syndromes, int[] positions) {
+        int[] coefficientPositions = new int[positions.length];
+        int[] locator = {1};
+        for (int i = 0; i < positions.length; i++) {
+            coefficientPositions[i] = CODEWORD_SYMBOLS - 1 - positions[i];
+            locator = polyMul(locator, new int[]{EXP[coefficientPositions[i]], 1});
+        }
+
+        // Error evaluator: (S(x) * Λ(x)) mod x^(errata + 1), on the reversed syndromes
+        int[] product = polyMul(reverse(syndromes), locator);
+        int[] evaluator = Arrays.copyOfRange(product, product.length - locator.length, product.length);
+
+        for (int i = 0; i < positions.length; i++) {
+            int x = EXP[coefficientPositions[i]];
+            int xInverse = inverse(x);
+            int locatorDerivative = 1;
+            for (int j = 0; j < positions.length; j++) {
+                if (j != i) {
+                    locatorDerivative = mul(locatorDerivative, 1 ^ mul(xInverse, EXP[coefficientPositions[j]]));
+                }
+            }
+            if (locatorDerivative == 0) {
+                return false;
+            }
+            int y = mul(x, polyEval(evaluator, xInverse));
+            codeword[positions[i]] ^= (byte) div(y, locatorDerivative);
+        }
+        return true;
+    }
+
+    private static boolean isZero(int[] values) {
+        for (int value : values) {
+            if (value != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int mul(int a, int b) {
+        return a == 0 || b == 0 ? 0 : EXP[LOG[a] + LOG[b]];
+    }
+
+    private static int div(int a, int b) {
+        return a == 0 ? 0 : EXP[LOG[a] + 255 - LOG[b]];
+    }
+
+    private static int inverse(int a) {
+        return EXP[255 - LOG[a]];
+    }
+
+    private static int[] polyScale(int[] p, int x) {
+        int[] result = new int[p.length];
+        for (int i = 0; i < p.length; i++) {
+            result[i] = mul(p[i], x);
+        }
+        return result;
+    }
+
+    private static int[] polyAdd(int[] p, int[] q) {
+        int[] result = new int[Math.max(p.length, q.length)];
+        for (int i = 0; i < p.length; i++) {
+            result[i + result.length - p.length] = p[i];
+        }
+        for (int i = 0; i < q.length; i++) {
+            result[i + result.length - q.length] ^= q[i];
+        }
+        return result;
+    }
+
+    private static int[] polyMul(int[] p, int[] q) {
+        int[] result = new int[p.length + q.length - 1];
+        for (int j = 0; j < q.length; j++) {
+            for (int i = 0; i < p.length; i++) {
+                result[i + j] ^= mul(p[i], q[j]);
+            }
+        }
+        return result;
+    }
+
+    private static int polyEval(int[] p, int x) {
+        int y = p[0];
+        for (int i = 1; i < p.length; i++) {
+            y = mul(y, x) ^ p[i];
+        }
+        return y;
+    }
+
+    private static int[] reverse(int[] p) {
+        int[] result = new int[p.length];
+        for (int i = 0; i < p.length; i++) {
+            result[i] = p[p.length - 1 - i];
+        }
+        return result;
+    }
+}
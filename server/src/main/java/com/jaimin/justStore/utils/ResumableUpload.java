@@ -0,0 +1,253 @@
+package com.jaimin.justStore.utils;
+
+import com.google.api.client.http.ByteArrayContent;
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpContent;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpRequestFactory;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.HttpStatusCodes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Client side of Google's resumable upload protocol.
+ * <p>
+ * A session is opened with the metadata, which answers with a session URI; the media then goes
+ * up in chunks, each a {@code PUT} to that URI with a {@code Content-Range}, and the server
+ * answers {@code 308} with the bytes it has committed until the last chunk, which returns the
+ * created resource. The stream's length may be unknown ({@code -1}); its total is sent with the
+ * last chunk.
+ * <p>
+ * The current chunk is kept in memory, so a chunk that fails on the network or with a 5xx is
+ * resent from the offset the server reports, after an exponential backoff, without rereading
+ * the stream. Committed chunks are reported to a {@link ProgressListener}, at most once per
+ * {@link UploadOptions#progressIntervalMillis()} besides the opened session and the finished
+ * upload, which can persist the session URI and offset to resume the upload later with
+ * {@link #resume}.
+ * <p>
+ * The server may commit only part of a chunk. The rest is then moved to the front of the chunk
+ * and topped up from the stream, so every chunk but the last stays a multiple of
+ * {@value #CHUNK_GRANULARITY} bytes.
+ */
+public class ResumableUpload {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResumableUpload.class);
+
+    // Chunk sizes must be multiples of this, except for the last chunk
+    public static final int CHUNK_GRANULARITY = 256 * 1024;
+    private static final int STATUS_RESUME_INCOMPLETE = 308;
+    private static final long MAX_BACKOFF_MILLIS = 60_000;
+
+    private final HttpRequestFactory requestFactory;
+    private final UploadOptions options;
+    private final ProgressListener listener;
+
+    public ResumableUpload(HttpRequestFactory requestFactory, UploadOptions options, ProgressListener listener) {
+        this.requestFactory = requestFactory;
+        this.options = options;
+        this.listener = listener;
+    }
+
+    /**
+     * Open a session by sending the resource's metadata to {@code initiationUrl}.
+     *
+     * @param totalBytes Length of the media, or -1 when it is not known yet.
+     * @return the session URI the media goes to.
+     */
+    public String start(GenericUrl initiationUrl, HttpContent metadata, String mediaType, long totalBytes) throws IOException {
+        HttpRequest request = requestFactory.buildPostRequest(initiationUrl, metadata);
+        request.getHeaders().set("X-Upload-Content-Type", mediaType);
+        if (totalBytes >= 0) {
+            request.getHeaders().set("X-Upload-Content-Length", totalBytes);
+        }
+        HttpResponse response = request.execute();
+        try {
+            String sessionUri = response.getHeaders().getLocation();
+            if (sessionUri == null) {
+                throw new IOException("Upload session was opened without a session URI");
+            }
+            logger.debug("Opened upload session for {} bytes", totalBytes);
+            listener.onProgress(sessionUri, 0, totalBytes);
+            return sessionUri;
+        } finally {
+            response.disconnect();
+        }
+    }
+
+    /**
+     * Bytes the server has committed for a session, or -1 when the upload is already complete.
+     */
+    public long committedBytes(String sessionUri, long totalBytes) throws IOException {
+        HttpResponse response = send(sessionUri, null, 0, 0, -1, totalBytes);
+        try {
+            return response.getStatusCode() == STATUS_RESUME_INCOMPLETE ? parseCommitted(response) : -1;
+        } finally {
+            response.disconnect();
+        }
+    }
+
+    /**
+     * Upload {@code content} from its start to a new session, see {@link #resume}.
+     */
+    public <T> T upload(String sessionUri, InputStream content, long totalBytes, Class<T> resultType) throws IOException {
+        return resume(sessionUri, content, 0, totalBytes, resultType);
+    }
+
+    /**
+     * Upload the rest of {@code content}, positioned at byte {@code offset} of the media, which
+     * must be no further than what the server has committed.
+     *
+     * @return the resource the server created, parsed as {@code resultType}.
+     */
+    public <T> T resume(String sessionUri, InputStream content, long offset, long totalBytes, Class<T> resultType)
+            throws IOException {
+        byte[] chunk = new byte[options.chunkBytes()];
+        // Bytes of the current chunk buffered and, of those, how many the server has committed
+        int filled = 0;
+        int committed = 0;
+        long chunkStart = offset;
+        boolean contentEnded = false;
+        // After a failed attempt the server is asked what it has before anything is resent
+        boolean queryStatus = false;
+        long lastCommitted = offset;
+        long lastReported = System.nanoTime();
+        final long reportIntervalNanos = options.progressIntervalMillis() * 1_000_000;
+        int failures = 0;
+
+        while (true) {
+            if (committed == filled || (committed > 0 && !contentEnded)) {
+                // Keep what the server has not committed and top it up to a whole chunk
+                System.arraycopy(chunk, committed, chunk, 0, filled - committed);
+                chunkStart += committed;
+                filled -= committed;
+                committed = 0;
+                if (!contentEnded) {
+                    filled += content.readNBytes(chunk, filled, chunk.length - filled);
+                    contentEnded = filled < chunk.length || (totalBytes >= 0 && chunkStart + filled == totalBytes);
+                }
+            }
+            // The total goes with the last chunk, which is the one that ends the stream
+            long declaredTotal = contentEnded ? chunkStart + filled : totalBytes;
+            if (contentEnded && totalBytes >= 0 && declaredTotal != totalBytes) {
+                throw new IOException("Upload content is " + declaredTotal + " bytes, expected " + totalBytes);
+            }
+
+            HttpResponse response;
+            try {
+                response = queryStatus
+                        ? send(sessionUri, null, 0, 0, 0, declaredTotal)
+                        : send(sessionUri, chunk, committed, filled - committed, chunkStart + committed, declaredTotal);
+            } catch (IOException e) {
+                failures = backOff(failures, e);
+                queryStatus = true;
+                continue;
+            }
+
+            try {
+                int status = response.getStatusCode();
+                if (HttpStatusCodes.isSuccess(status)) {
+                    listener.onProgress(sessionUri, declaredTotal, declaredTotal);
+                    return response.parseAs(resultType);
+                }
+                if (status == STATUS_RESUME_INCOMPLETE) {
+                    queryStatus = false;
+                    committed = recommit(parseCommitted(response), chunkStart, filled);
+                    if (chunkStart + committed > lastCommitted) {
+                        lastCommitted = chunkStart + committed;
+                        failures = 0;
+                        long now = System.nanoTime();
+                        if (now - lastReported >= reportIntervalNanos) {
+                            lastReported = now;
+                            listener.onProgress(sessionUri, lastCommitted, totalBytes);
+                        }
+                    }
+                    continue;
+                }
+                String message = "Upload chunk at " + (chunkStart + committed) + " failed with HTTP " + status;
+                if (status < 500 && status != 429) {
+                    throw new IOException(message + ": " + response.parseAsString());
+                }
+                failures = backOff(failures, new IOException(message));
+                queryStatus = true;
+            } finally {
+                response.disconnect();
+            }
+        }
+    }
+
+    private HttpResponse send(String sessionUri, byte[] chunk, int from, int length, long start, long totalBytes)
+            throws IOException {
+        HttpRequest request = requestFactory.buildPutRequest(new GenericUrl(sessionUri),
+                new ByteArrayContent(null, chunk != null ? chunk : new byte[0], from, length));
+        String total = totalBytes >= 0 ? String.valueOf(totalBytes) : "*";
+        request.getHeaders().setContentRange(length > 0
+                ? "bytes " + start + "-" + (start + length - 1) + "/" + total
+                : "bytes */" + total);
+        request.setThrowExceptionOnExecuteError(false);
+        request.setFollowRedirects(false);
+        request.setNumberOfRetries(0);
+        return request.execute();
+    }
+
+    /**
+     * Wait before the next attempt, doubling the delay each time, or give up after {@code maxRetries}.
+     *
+     * @return the failures so far, this one included.
+     */
+    private int backOff(int failures, IOException cause) throws IOException {
+        if (failures >= options.maxRetries()) {
+            throw new IOException("Upload failed after " + (failures + 1) + " attempts", cause);
+        }
+        long delay = Math.min(MAX_BACKOFF_MILLIS, options.initialBackoffMillis() << Math.min(failures, 20));
+        delay += ThreadLocalRandom.current().nextLong(delay / 4 + 1);
+        logger.warn("Upload attempt failed ({}), retrying in {} ms", cause.getMessage(), delay);
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry the upload");
+        }
+        return failures + 1;
+    }
+
+    /**
+     * How much of the current chunk is committed when the server has {@code serverCommitted} bytes.
+     */
+    private static int recommit(long serverCommitted, long chunkStart, int filled) throws IOException {
+        if (serverCommitted < chunkStart || serverCommitted > chunkStart + filled) {
+            throw new IOException("Server committed " + serverCommitted + " bytes, outside the chunk at "
+                    + chunkStart + "-" + (chunkStart + filled));
+        }
+        return (int) (serverCommitted - chunkStart);
+    }
+
+    /**
+     * Committed bytes from a {@code Range: bytes=0-N} header; no header means nothing is committed.
+     */
+    private static long parseCommitted(HttpResponse response) throws IOException {
+        String range = response.getHeaders().getRange();
+        if (range == null) {
+            return 0;
+        }
+        int dash = range.lastIndexOf('-');
+        try {
+            return Long.parseLong(range.substring(dash + 1).trim()) + 1;
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            throw new IOException("Unexpected Range header in upload response: " + range, e);
+        }
+    }
+
+    /**
+     * Told about each committed chunk, with {@code totalBytes} -1 while the length is unknown.
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+        void onProgress(String sessionUri, long committedBytes, long totalBytes);
+    }
+}
@@ -1,99 +1,351 @@
 package com.jaimin.justStore.utils;
 
-import org.bytedeco.javacv.*;
-import org.bytedeco.opencv.opencv_core.*;
+import com.jaimin.justStore.enums.EncodingProfile;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.Frame;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.*;
-import java.util.Arrays;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 public class RetrieveVideo {
 
-    public static byte[] decodeVideo(InputStream inputStream) throws Exception {
+    private static final Logger logger = LoggerFactory.getLogger(RetrieveVideo.class);
+
+    // Frames in flight per decode worker: one being decoded, one waiting to be written
+    private static final int FRAMES_PER_WORKER = 2;
+
+    /*
+     * Bytes of a streamed video the grabber keeps to seek back in while it probes the container.
+     * Its default is the whole stream, so a long video would end up in heap; streams are read
+     * front to back, and range decodes skip frames instead of seeking.
+     */
+    static final int STREAM_BUFFER_BYTES = 16 * 1024 * 1024;
+
+    // legacyBytes of a video known to start with a header frame
+    public static final long NOT_LEGACY = -1;
+    // legacyBytes of a video that may be legacy, whatever length its length frame holds
+    public static final long ANY_LEGACY_BYTES = -2;
+
+    public static byte[] decodeVideo(InputStream inputStream, EncodingProfile profile) throws Exception {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        decodeVideo(inputStream, profile, baos);
+        return baos.toByteArray();
+    }
+
+    /**
+     * Decode a video frame by frame on the calling thread and write the file content to {@code outputStream}.
+     */
+    public static void decodeVideo(InputStream inputStream, EncodingProfile profile, OutputStream outputStream) throws Exception {
+        decodeVideo(inputStream, profile, outputStream, Runnable::run, 1, true);
+    }
 
-        FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(inputStream);
+    /**
+     * Decode a video with frames decoded in parallel and write the file content to {@code outputStream}.
+     * <p>
+     * The calling thread grabs frames and copies each one into a pooled plane, then hands it to
+     * {@code decodePool}, which turns the plane back into payload bytes. Futures are kept in grab
+     * order in a bounded queue of {@code 2 * parallelism} frames, so the calling thread writes the
+     * payload in frame order, never holds more than that many frames in memory, and stops at the
+     * length recorded in the header frame.
+     * <p>
+     * For version 1 videos (see {@link VideoHeader}) each data frame's CRC32C is checked by the
+     * worker that decodes it, so corruption fails the decode at the first bad frame, and the
+     * SHA-256 of everything written is checked against the trailer frame at the end. With
+     * {@code strict} off, mismatches are logged and decoding goes on, to salvage what is left
+     * of a damaged video.
+     */
+    public static void decodeVideo(InputStream inputStream, EncodingProfile profile, OutputStream outputStream,
+                                   Executor decodePool, int parallelism, boolean strict) throws Exception {
+        decodeRange(inputStream, profile, outputStream, decodePool, parallelism, strict, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Decode bytes {@code first} to {@code last} (inclusive, capped at the end of the file) of the
+     * content, like {@link #decodeVideo(InputStream, EncodingProfile, OutputStream, Executor, int, boolean)}.
+     * <p>
+     * Where every byte sits is known from the header, so decoding starts at the first frame of
+     * the group holding {@code first} and stops after the group holding {@code last}; frames
+     * outside the range are never turned back into bytes. A video on disk is seeked in, a stream
+     * has the frames before the range grabbed and dropped. Frame checksums are still verified, the
+     * trailer's SHA-256 only when the range is the whole file.
+     * <p>
+     * With FEC, frames are collected into their group and a group with frames that failed their
+     * checksum is repaired with Reed-Solomon before it is written, the damaged frames' symbols
+     * given to the decoder as erasures. Only a group that cannot be repaired counts as corrupt.
+     */
+    public static void decodeRange(InputStream inputStream, EncodingProfile profile, OutputStream outputStream,
+                                   Executor decodePool, int parallelism, boolean strict,
+                                   long first, long last) throws Exception {
+        decodeRange(VideoInput.of(inputStream), profile, outputStream, decodePool, parallelism, strict, first, last,
+                first == 0 ? ChecksumUtil.newDigest() : null, ANY_LEGACY_BYTES);
+    }
+
+    /**
+     * Decode bytes {@code first} to {@code last} of {@code video} like
+     * {@link #decodeRange(InputStream, EncodingProfile, OutputStream, Executor, int, boolean, long, long)},
+     * going on from {@code digest}, the SHA-256 of bytes 0 to {@code first - 1} written already, so
+     * a decode resumed from another copy of the video still checks the trailer once it reaches the
+     * end. The digest takes every byte written; {@code null} skips the trailer check.
+     * <p>
+     * A first frame that is not a readable header is only taken for a legacy length frame when
+     * the length it holds is {@code legacyBytes}, the file's length if its video may be legacy,
+     * or {@link #NOT_LEGACY} when the video is known to have a header. Otherwise the header frame
+     * counts as damaged, like a data frame that failed its checksum.
+     */
+    public static void decodeRange(VideoInput video, EncodingProfile profile, OutputStream outputStream,
+                                   Executor decodePool, int parallelism, boolean strict,
+                                   long first, long last, MessageDigest digest, long legacyBytes) throws Exception {
+        final int queueDepth = Math.max(1, parallelism) * FRAMES_PER_WORKER;
+        // The grabber's decoder only loads planes and reads the metadata frame
+        FrameDecoder grabberDecoder = new FrameDecoder(profile);
+        FramePool<FrameDecoder> decoders = new FramePool<>(() -> new FrameDecoder(profile), queueDepth);
+        FramePool<byte[]> planes = new FramePool<>(grabberDecoder::newPlane, queueDepth);
+        FramePool<byte[]> payloads = new FramePool<>(() -> new byte[profile.getBytesPerFrame()], queueDepth);
+        Deque<PendingFrame> inFlight = new ArrayDeque<>(queueDepth);
+
+        // A stream is only buffered as far as probing it needs, not kept whole
+        FFmpegFrameGrabber grabber = video.isSeekable()
+                ? new FFmpegFrameGrabber(video.path().toFile())
+                : new FFmpegFrameGrabber(video.stream(), STREAM_BUFFER_BYTES);
+        grabber.setPixelFormat(grabberDecoder.getPixelFormat());
         grabber.start();
 
-        try (BufferedOutputStream bos = new BufferedOutputStream(baos)) {
+        try {
             Frame frame = grabber.grabImage();
             if (frame == null) {
                 throw new IOException("No frames found in video");
             }
 
-            int totalBytes = getMetadataFromFrame(frame);
+            byte[] headerPlane = grabberDecoder.load(frame, planes.acquire());
+            final VideoHeader header = grabberDecoder.readHeader(headerPlane);
+            planes.release(headerPlane);
+            if (header.version() == VideoHeader.LEGACY_VERSION && legacyBytes != ANY_LEGACY_BYTES
+                    && header.totalBytes() != legacyBytes) {
+                reportCorruption(legacyBytes == NOT_LEGACY
+                        ? "Header frame is unreadable"
+                        : "Header frame is unreadable and the legacy length frame says " + header.totalBytes()
+                        + " bytes, the file has " + legacyBytes, strict);
+            }
+            logger.debug("Video header : {}", header);
+
+            final int payloadBytes = header.payloadBytesPerFrame();
+            final boolean checked = header.frameChecksums();
+            final long end = Math.min(last, header.totalBytes() - 1);
+            final boolean toTheEnd = end == header.totalBytes() - 1;
+            final MessageDigest fileDigest = toTheEnd && header.version() >= VideoHeader.VERSION ? digest : null;
+            FecGroup fecGroup = header.hasFec() ? new FecGroup(header.fecParity(), decodePool, parallelism) : null;
+            GroupWriter writer = new GroupWriter(header, fecGroup, outputStream, fileDigest, first, end, strict);
 
-            while ((frame = grabber.grabImage()) != null) {
-                frameToByteArray(frame, bos, totalBytes);
+            long frameIndex = header.firstFrameOf(header.groupOf(first));
+            final long endFrame = first <= end
+                    ? header.firstFrameOf(header.groupOf(end)) + header.framesInGroup(header.groupOf(end))
+                    : frameIndex;
+            if (frameIndex > 0 && frameIndex < endFrame) {
+                skipTo(grabber, frameIndex, video.isSeekable());
             }
-            bos.flush();
+
+            boolean videoEnded = false;
+            while ((frameIndex < endFrame && !videoEnded) || !inFlight.isEmpty()) {
+                // Grab ahead so every worker has a frame to decode while this thread writes
+                while (frameIndex < endFrame && !videoEnded && inFlight.size() < queueDepth) {
+                    frame = grabber.grabImage();
+                    if (frame == null) {
+                        videoEnded = true;
+                        break;
+                    }
+                    final byte[] plane = grabberDecoder.load(frame, planes.acquire());
+                    inFlight.add(new PendingFrame(CompletableFuture.supplyAsync(() -> {
+                        FrameDecoder decoder = decoders.acquire();
+                        byte[] payload = payloads.acquire();
+                        try {
+                            decoder.decode(plane, payload, checked ? payloadBytes + VideoHeader.FRAME_CRC_BYTES : payloadBytes);
+                        } finally {
+                            decoders.release(decoder);
+                            planes.release(plane);
+                        }
+                        return new DecodedFrame(payload, !checked || FrameChecksum.verify(payload, payloadBytes));
+                    }, decodePool), frameIndex++));
+                }
+
+                PendingFrame next = inFlight.poll();
+                if (next == null) {
+                    break;
+                }
+                DecodedFrame decoded = awaitFrame(next.frame());
+                writer.accept(next.index(), decoded.payload(), decoded.intact());
+                payloads.release(decoded.payload());
+            }
+
+            if (writer.missing() > 0) {
+                throw new EOFException("Video ended with " + writer.missing() + " bytes still missing");
+            }
+            if (fileDigest != null) {
+                verifyTrailer(grabber, grabberDecoder, planes.acquire(), header, fileDigest.digest(), strict);
+            }
+            outputStream.flush();
         } finally {
+            inFlight.forEach(pending -> pending.frame().cancel(true));
             grabber.stop();
             grabber.release();
         }
+    }
 
-        return baos.toByteArray();
+    /**
+     * Move on to data frame {@code frameIndex}, right after the header frame was grabbed.
+     */
+    private static void skipTo(FFmpegFrameGrabber grabber, long frameIndex, boolean seekable) throws IOException {
+        if (seekable) {
+            // Video frame 0 is the header
+            grabber.setVideoFrameNumber(Math.toIntExact(frameIndex + 1));
+            return;
+        }
+        for (long skipped = 0; skipped < frameIndex; skipped++) {
+            // Decoded by the codec, since later frames refer to it, but never converted or read
+            if (grabber.grabFrame(false, true, false, false, false) == null) {
+                throw new EOFException("Video ended " + skipped + " frames into the " + frameIndex + " before the range");
+            }
+        }
     }
 
-    static int getMetadataFromFrame(Frame frame) {
-        Mat mat = new OpenCVFrameConverter.ToMat().convert(frame);
+    private static void verifyTrailer(FFmpegFrameGrabber grabber, FrameDecoder decoder, byte[] plane,
+                                      VideoHeader header, byte[] sha256, boolean strict) throws IOException {
+        Frame frame = grabber.grabImage();
+        VideoTrailer trailer = frame != null ? decoder.readTrailer(decoder.load(frame, plane)) : null;
 
-        int totalBytes = 0;
-        for (int k = 0; k < 32; k++) {
-            int[] rgb = getPixelRGB(mat, k, 0);
-            int red = rgb[0];
-            int green = rgb[1];
-            int blue = rgb[2];
+        String message = null;
+        if (trailer == null) {
+            message = "Video has no readable trailer frame";
+        } else if (trailer.totalBytes() != header.totalBytes() || !MessageDigest.isEqual(trailer.sha256(), sha256)) {
+            message = "Decoded content does not match the SHA-256 in the trailer frame";
+        }
+        if (message != null && strict) {
+            throw new IOException(message);
+        }
+        if (message != null) {
+            logger.warn(message);
+        }
+    }
 
-            boolean isWhite = (red > 128) && (green > 128) && (blue > 128);
-            if (isWhite) {
-                totalBytes |= (1 << k);
-            }
+    private static DecodedFrame awaitFrame(CompletableFuture<DecodedFrame> frame) throws IOException {
+        try {
+            return frame.join();
+        } catch (CompletionException e) {
+            throw new IOException("Frame decoding failed", e.getCause());
         }
-        System.out.println("Total length : " + totalBytes);
-        return totalBytes;
     }
 
-    static void frameToByteArray(Frame frame, BufferedOutputStream bos, int totalBytes) throws IOException {
-        Mat mat = new OpenCVFrameConverter.ToMat().convert(frame);
-
-        final int height = mat.rows();
-        final int width = mat.cols();
-        byte[] bytes = new byte[width / 8];
-
-        for (int i = 0; i < height; i++) {
-            for (int j = 0; j < width; j += 8) {
-                byte myByte = 0;
-                for (int k = 0; k < 8; k++) {
-                    int[] rgb = getPixelRGB(mat, j + k, i);
-                    int red = rgb[0];
-                    int green = rgb[1];
-                    int blue = rgb[2];
-
-                    boolean isWhite = (red > 128) && (green > 128) && (blue > 128);
-                    if (isWhite) {
-                        myByte |= (byte) (1 << (7 - k));
-                    }
-                }
+    private static void reportCorruption(String message, boolean strict) throws IOException {
+        if (strict) {
+            throw new ChecksumMismatchException(message);
+        }
+        logger.warn(message);
+    }
+
+    /**
+     * A frame handed to the decode pool, and its index among the data frames.
+     */
+    private record PendingFrame(CompletableFuture<DecodedFrame> frame, long index) {
+    }
+
+    /**
+     * A decoded payload, and whether it passed its checksum.
+     */
+    private record DecodedFrame(byte[] payload, boolean intact) {
+    }
+
+    /**
+     * Takes decoded data frames in order and writes the part of each group that falls in the
+     * requested range, repairing FEC groups first.
+     */
+    private static final class GroupWriter {
+
+        private final VideoHeader header;
+        private final FecGroup fecGroup;
+        private final OutputStream outputStream;
+        private final MessageDigest digest;
+        private final long first;
+        private final long end;
+        private final boolean strict;
+
+        private final byte[] group;
+        private final boolean[] frameIntact;
+        private int damagedFrames;
+        private long position;
 
-                bytes[j / 8] = myByte;
-                totalBytes--;
-                if (totalBytes == 0) {
-                    bos.write(Arrays.copyOfRange(bytes, 0, j / 8 + 1));
-                    return;
+        GroupWriter(VideoHeader header, FecGroup fecGroup, OutputStream outputStream, MessageDigest digest,
+                    long first, long end, boolean strict) {
+            this.header = header;
+            this.fecGroup = fecGroup;
+            this.outputStream = outputStream;
+            this.digest = digest;
+            this.first = first;
+            this.end = end;
+            this.strict = strict;
+            this.group = fecGroup != null ? new byte[header.getGroupFrames() * header.payloadBytesPerFrame()] : null;
+            this.frameIntact = new boolean[header.getGroupFrames()];
+            this.position = first;
+        }
+
+        /**
+         * Bytes of the range not written yet.
+         */
+        long missing() {
+            return Math.max(0, end + 1 - position);
+        }
+
+        void accept(long frameIndex, byte[] payload, boolean intact) throws IOException {
+            if (fecGroup == null) {
+                if (!intact) {
+                    reportCorruption("Data frame " + frameIndex + " failed its checksum", strict);
                 }
+                write(frameIndex, payload);
+                return;
             }
-            bos.write(bytes);
-        }
-    }
 
-    private static int[] getPixelRGB(Mat mat, int x, int y) {
-        byte[] data = new byte[3];
-        mat.ptr(y, x).get(data);
+            final int payloadBytes = header.payloadBytesPerFrame();
+            final long groupIndex = frameIndex / header.getGroupFrames();
+            final int member = (int) (frameIndex - header.firstFrameOf(groupIndex));
+            System.arraycopy(payload, 0, group, member * payloadBytes, payloadBytes);
+            frameIntact[member] = intact;
+            if (!intact) {
+                damagedFrames++;
+            }
+            if (member < header.framesInGroup(groupIndex) - 1) {
+                return;
+            }
 
-        int blue = data[0] & 0xFF;
-        int green = data[1] & 0xFF;
-        int red = data[2] & 0xFF;
+            if (damagedFrames > 0) {
+                int failed = fecGroup.correct(group, header.codewordsInGroup(groupIndex), payloadBytes, frameIntact);
+                if (failed > 0) {
+                    reportCorruption(failed + " codewords of FEC group " + groupIndex + " could not be repaired ("
+                            + damagedFrames + " frames failed their checksum)", strict);
+                } else {
+                    logger.info("Repaired {} damaged frames in FEC group {}", damagedFrames, groupIndex);
+                }
+                damagedFrames = 0;
+            }
+            write(groupIndex, group);
+        }
 
-        return new int[]{red, green, blue};
+        private void write(long groupIndex, byte[] data) throws IOException {
+            final long groupStart = groupIndex * header.getGroupDataBytes();
+            final long from = Math.max(first, groupStart);
+            final long to = Math.min(end + 1, groupStart + header.dataBytesInGroup(groupIndex));
+            if (from >= to) {
+                return;
+            }
+            outputStream.write(data, (int) (from - groupStart), (int) (to - from));
+            if (digest != null) {
+                digest.update(data, (int) (from - groupStart), (int) (to - from));
+            }
+            position = to;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,32 @@
+package com.jaimin.justStore.utils;
+
+/**
+ * Memory layout of a rendered frame plane, as each encoder backend wants it.
+ */
+public enum SampleFormat {
+    /* jcodec Picture: interleaved R, G, B shifted to -128..127 */
+    JCODEC_RGB(3, -128),
+    /* Interleaved R, G, B, 0..255 */
+    RGB24(3, 0),
+    /* One luma sample per pixel, 0..255; only for gray profiles */
+    GRAY8(1, 0);
+
+    private final int channels;
+    private final int sampleOffset;
+
+    SampleFormat(int channels, int sampleOffset) {
+        this.channels = channels;
+        this.sampleOffset = sampleOffset;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    /**
+     * Added to a 0..255 intensity to get the stored sample.
+     */
+    public int getSampleOffset() {
+        return sampleOffset;
+    }
+}
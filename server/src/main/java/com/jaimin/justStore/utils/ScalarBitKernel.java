@@ -0,0 +1,37 @@
+package com.jaimin.justStore.utils;
+
+/**
+ * Plain Java {@link BitKernel}, also used for the tails the SIMD kernel leaves over.
+ */
+final class ScalarBitKernel implements BitKernel {
+
+    @Override
+    public void pack(byte[] samples, byte[] out, int length) {
+        pack(samples, out, 0, length);
+    }
+
+    @Override
+    public void expand(byte[] bits, int pixels, byte black, byte white, int channels, byte[] samples) {
+        expand(bits, 0, pixels, black, white, channels, samples);
+    }
+
+    static void pack(byte[] samples, byte[] out, int fromByte, int length) {
+        for (int byteIndex = fromByte, sample = fromByte * 8; byteIndex < length; byteIndex++, sample += 8) {
+            int packed = 0;
+            for (int k = 0; k < 8; k++) {
+                packed |= (samples[sample + k] & 0x80) >>> k;
+            }
+            out[byteIndex] = (byte) packed;
+        }
+    }
+
+    static void expand(byte[] bits, int fromPixel, int pixels, byte black, byte white, int channels, byte[] samples) {
+        int sampleIndex = fromPixel * channels;
+        for (int pixel = fromPixel; pixel < pixels; pixel++) {
+            byte sample = (bits[pixel >>> 3] & (0x80 >>> (pixel & 7))) != 0 ? white : black;
+            for (int channel = 0; channel < channels; channel++) {
+                samples[sampleIndex++] = sample;
+            }
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package com.jaimin.justStore.utils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A file decoded once to a spool file that several readers stream as it grows, each from its own
+ * offset.
+ * <p>
+ * Readers {@link #attach()} before reading and {@link #detach()} after. Once the last reader left
+ * before the decode finished, the decode is cancelled; attaching and that decision take the same
+ * lock, so a reader either attaches in time or is turned away and decodes on its own. However the
+ * decode ends, finished, failed or cancelled before it even started, waiting readers are woken and
+ * the end callback runs exactly once.
+ */
+public class SharedDownload {
+
+    private final String name;
+    private final long length;
+    private final FileChannel channel;
+    private final MessageDigest digest = ChecksumUtil.newDigest();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition grown = lock.newCondition();
+    private final AtomicBoolean ended = new AtomicBoolean();
+    private Runnable onEnd;
+    private Future<?> task;
+    private long written;
+    private boolean completed;
+    private Throwable failure;
+    private int readers;
+    private boolean abandoned;
+    private boolean closed;
+    // Checked by the decode, which may be blocked on its input and miss the interrupt
+    private volatile boolean cancelled;
+
+    private final OutputStream sink = new OutputStream() {
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            SharedDownload.this.write(bytes, offset, length);
+        }
+    };
+
+    /**
+     * @param spool An existing, empty file the decode is written to; the caller deletes it.
+     */
+    public SharedDownload(String name, long length, Path spool) throws IOException {
+        this.name = name;
+        this.length = length;
+        this.channel = FileChannel.open(spool, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Run the decode on {@code executor}; {@code onEnd} runs once it finished, failed or was cancelled.
+     */
+    public void start(ExecutorService executor, Decoder decoder, Runnable onEnd) {
+        lock.lock();
+        try {
+            this.onEnd = onEnd;
+        } finally {
+            lock.unlock();
+        }
+        Future<?> submitted;
+        try {
+            submitted = executor.submit(() -> {
+                try {
+                    decoder.decode(sink);
+                    complete();
+                } catch (Throwable e) {
+                    fail(e);
+                } finally {
+                    end();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            fail(e);
+            end();
+            throw e;
+        }
+        lock.lock();
+        try {
+            task = submitted;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Join the readers, unless every reader left or the decode failed already.
+     *
+     * @return false when turned away; the download is on its way out.
+     */
+    public boolean attach() {
+        lock.lock();
+        try {
+            if (abandoned || closed || failure != null) {
+                return false;
+            }
+            readers++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Leave the readers, cancelling the decode when this was the last one and it has not finished.
+     *
+     * @return whether the decode was cancelled.
+     */
+    public boolean detach() {
+        boolean abandon;
+        lock.lock();
+        try {
+            readers--;
+            // Once everything is decoded it is left to finish, so it still gets cached
+            abandon = readers == 0 && !completed && failure == null && written < length;
+            if (abandon) {
+                abandoned = true;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (abandon) {
+            cancel();
+        }
+        closeIfDone();
+        return abandon;
+    }
+
+    /**
+     * Write bytes {@code first} to {@code last} (inclusive) of the file as soon as they are decoded.
+     */
+    public void read(OutputStream outputStream, long first, long last) throws IOException {
+        WritableByteChannel target = Channels.newChannel(outputStream);
+        long position = first;
+        while (position <= last) {
+            long available = awaitBeyond(position);
+            long transferred = channel.transferTo(position, Math.min(last + 1, available) - position, target);
+            if (transferred <= 0) {
+                throw new IOException("Spool of " + name + " ended at " + position);
+            }
+            position += transferred;
+        }
+    }
+
+    /**
+     * SHA-256 of the bytes decoded so far, for the decode to check once it wrote them all.
+     */
+    public String checksum() {
+        return ChecksumUtil.toChecksum(digest);
+    }
+
+    private void write(byte[] bytes, int offset, int count) throws IOException {
+        if (cancelled) {
+            throw new InterruptedIOException("Download of " + name + " was cancelled");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, count);
+        long position = written;
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        digest.update(bytes, offset, count);
+        lock.lock();
+        try {
+            written = position;
+            grown.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait until the spool holds more than {@code position} bytes.
+     *
+     * @return the bytes it holds.
+     */
+    private long awaitBeyond(long position) throws IOException {
+        lock.lock();
+        try {
+            while (written <= position) {
+                if (failure != null) {
+                    throw new IOException("Decoding failed: " + failure.getMessage(), failure);
+                }
+                if (completed) {
+                    throw new IOException(name + " decoded to " + written + " bytes, " + (position + 1) + " wanted");
+                }
+                grown.await();
+            }
+            return written;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + name + " to decode");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stop the decode, from the side of the last reader; the task may not have started, and then
+     * never runs, so the end is not left to it.
+     */
+    private void cancel() {
+        cancelled = true;
+        fail(new CancellationException("Every reader of " + name + " left"));
+        Future<?> running;
+        lock.lock();
+        try {
+            running = task;
+        } finally {
+            lock.unlock();
+        }
+        if (running != null) {
+            running.cancel(true);
+        }
+        end();
+    }
+
+    private void complete() {
+        lock.lock();
+        try {
+            if (failure == null) {
+                completed = true;
+            }
+            grown.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void fail(Throwable cause) {
+        lock.lock();
+        try {
+            if (failure == null && !completed) {
+                failure = cause;
+            }
+            grown.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void end() {
+        if (ended.compareAndSet(false, true)) {
+            Runnable callback;
+            lock.lock();
+            try {
+                callback = onEnd;
+            } finally {
+                lock.unlock();
+            }
+            if (callback != null) {
+                callback.run();
+            }
+        }
+        closeIfDone();
+    }
+
+    /**
+     * Close the spool once the decode ended and no reader is left.
+     */
+    private void closeIfDone() {
+        lock.lock();
+        try {
+            if (closed || readers > 0 || !ended.get()) {
+                return;
+            }
+            closed = true;
+        } finally {
+            lock.unlock();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Nothing reads it anymore
+        }
+    }
+
+    /**
+     * Decodes the whole file to the stream it is given, without closing it.
+     */
+    @FunctionalInterface
+    public interface Decoder {
+        void decode(OutputStream sink) throws Exception;
+    }
+}
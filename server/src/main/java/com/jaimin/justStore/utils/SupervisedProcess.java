@@ -0,0 +1,208 @@
+package com.jaimin.justStore.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A child process whose standard output is read as a stream, supervised so it can't outlive its reader.
+ * <p>
+ * Its standard error is drained as it is written, so a chatty process never blocks on a full pipe,
+ * and its last lines are kept for the error message. The process and everything it started are
+ * killed once the deadline passes or when the output is closed before its end. The end of the
+ * output waits for the process to exit and fails with its standard error unless it exited with 0,
+ * so a reader never mistakes a process that died halfway for a complete output.
+ */
+public class SupervisedProcess {
+
+    private static final Logger logger = LoggerFactory.getLogger(SupervisedProcess.class);
+
+    // Lines of standard error kept for the error message
+    private static final int STDERR_TAIL_LINES = 20;
+    // Wait for standard error to be drained once the process exited
+    private static final long STDERR_DRAIN_MILLIS = 1000;
+
+    private final String name;
+    private final Process process;
+    private final long timeoutMillis;
+    private final Deque<String> stderrTail = new ArrayDeque<>();
+    private final Thread stderrDrainer;
+    private final InputStream output;
+    private volatile boolean timedOut;
+
+    private SupervisedProcess(String name, Process process, long timeoutMillis) {
+        this.name = name;
+        this.process = process;
+        this.timeoutMillis = timeoutMillis;
+        this.stderrDrainer = Thread.ofVirtual().name(name + "-stderr-" + process.pid()).start(this::drainStderr);
+        this.output = new SupervisedInputStream(process.getInputStream());
+        process.onExit()
+                .orTimeout(timeoutMillis, TimeUnit.MILLISECONDS)
+                .whenComplete((exited, failure) -> {
+                    if (failure instanceof TimeoutException) {
+                        timedOut = true;
+                        logger.warn("{} (pid {}) still running after {} ms, killing it", name, process.pid(), timeoutMillis);
+                        kill();
+                    }
+                });
+    }
+
+    /**
+     * Start {@code command}, killed after {@code timeoutMillis} if it has not exited by then.
+     *
+     * @param name Used for logs and error messages.
+     */
+    public static SupervisedProcess start(String name, List<String> command, long timeoutMillis) throws IOException {
+        if (timeoutMillis <= 0) {
+            throw new IllegalArgumentException("Process timeout must be positive, got " + timeoutMillis);
+        }
+        Process process = new ProcessBuilder(command).start();
+        // Nothing is written to it, closed so a process reading its input sees the end
+        process.getOutputStream().close();
+        logger.debug("Started {} (pid {})", name, process.pid());
+        return new SupervisedProcess(name, process, timeoutMillis);
+    }
+
+    /**
+     * The process's standard output. Its end fails unless the process exited with 0 in time;
+     * closing it earlier kills the process.
+     */
+    public InputStream getOutput() {
+        return output;
+    }
+
+    /**
+     * Completes once the process has exited, however it ended.
+     */
+    public CompletableFuture<Process> onExit() {
+        return process.onExit();
+    }
+
+    /**
+     * Kill the process and every process it started.
+     */
+    public void kill() {
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+        process.destroyForcibly();
+    }
+
+    private void drainStderr() {
+        try (BufferedReader stderr = new BufferedReader(
+                new InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = stderr.readLine()) != null) {
+                logger.trace("{}: {}", name, line);
+                synchronized (stderrTail) {
+                    if (stderrTail.size() == STDERR_TAIL_LINES) {
+                        stderrTail.poll();
+                    }
+                    stderrTail.add(line);
+                }
+            }
+        } catch (IOException e) {
+            // The process was killed while writing
+        }
+    }
+
+    /**
+     * Wait for the process once its output ended and fail unless it exited with 0.
+     */
+    private void checkExit() throws IOException {
+        try {
+            process.waitFor();
+            stderrDrainer.join(STDERR_DRAIN_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            kill();
+            throw new InterruptedIOException("Interrupted while waiting for " + name + " to exit");
+        }
+        if (timedOut) {
+            throw timeoutException();
+        }
+        int exitCode = process.exitValue();
+        if (exitCode != 0) {
+            throw new IOException(name + " exited with code " + exitCode + stderrMessage());
+        }
+        logger.debug("{} (pid {}) exited with 0", name, process.pid());
+    }
+
+    private IOException timeoutException() {
+        return new IOException(name + " was killed after running for " + timeoutMillis + " ms" + stderrMessage());
+    }
+
+    private String stderrMessage() {
+        synchronized (stderrTail) {
+            return stderrTail.isEmpty() ? "" : ": " + String.join("\n", stderrTail);
+        }
+    }
+
+    /**
+     * Standard output, checking the exit status at its end and killing the process when closed before.
+     */
+    private final class SupervisedInputStream extends FilterInputStream {
+        private boolean ended;
+        private IOException failure;
+
+        private SupervisedInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (failure != null) {
+                throw failure;
+            }
+            if (ended) {
+                return -1;
+            }
+            int read;
+            try {
+                read = super.read(bytes, offset, length);
+            } catch (IOException e) {
+                throw fail(timedOut ? timeoutException() : e);
+            }
+            if (read < 0) {
+                ended = true;
+                try {
+                    checkExit();
+                } catch (IOException e) {
+                    throw fail(e);
+                }
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!ended && process.isAlive()) {
+                logger.debug("Output of {} (pid {}) closed before its end, killing it", name, process.pid());
+                kill();
+            }
+            super.close();
+        }
+
+        private IOException fail(IOException e) {
+            failure = e;
+            return e;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.jaimin.justStore.utils;
+
+/**
+ * How a {@link ResumableUpload} sends its media.
+ *
+ * @param chunkBytes           bytes per request, a multiple of {@link ResumableUpload#CHUNK_GRANULARITY};
+ *                             the chunk in flight is held in memory so it can be resent.
+ * @param maxRetries           failed attempts in a row after which the upload gives up.
+ * @param initialBackoffMillis wait before the first retry, doubled for every further one.
+ * @param progressIntervalMillis least time between two committed chunks reported to the
+ *                             {@link ResumableUpload.ProgressListener}; 0 reports every chunk.
+ */
+public record UploadOptions(int chunkBytes, int maxRetries, long initialBackoffMillis, long progressIntervalMillis) {
+
+    public UploadOptions(int chunkBytes, int maxRetries, long initialBackoffMillis) {
+        this(chunkBytes, maxRetries, initialBackoffMillis, 0);
+    }
+
+    public UploadOptions {
+        if (chunkBytes < ResumableUpload.CHUNK_GRANULARITY || chunkBytes % ResumableUpload.CHUNK_GRANULARITY != 0) {
+            throw new IllegalArgumentException("Upload chunk size must be a multiple of "
+                    + ResumableUpload.CHUNK_GRANULARITY + " bytes, got " + chunkBytes);
+        }
+        if (maxRetries < 0 || initialBackoffMillis < 0 || progressIntervalMillis < 0) {
+            throw new IllegalArgumentException("Upload retries, backoff and progress interval must not be negative");
+        }
+    }
+}
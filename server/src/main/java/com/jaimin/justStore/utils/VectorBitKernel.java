@@ -0,0 +1,86 @@
+package com.jaimin.justStore.utils;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link BitKernel} on the incubating Vector API, one vector of samples per step.
+ * <p>
+ * Packing compares a vector of samples with 0 as signed bytes (so 128..255 are the 1s) and turns
+ * the mask into a long, lane 0 in bit 0; reversing that long puts lane 0 in the top bit, which
+ * written big-endian is the MSB-first payload, {@code LANES / 8} bytes at a time. Expanding is the
+ * reverse: a mask from the payload bits blends black and white, and three constant shuffles
+ * spread each pixel over three samples for RGB planes.
+ */
+final class VectorBitKernel implements BitKernel {
+
+    // Masks go through a long, so at most 64 lanes
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED.length() <= 64
+            ? ByteVector.SPECIES_PREFERRED
+            : ByteVector.SPECIES_512;
+    static final int LANES = SPECIES.length();
+    private static final int BYTES_PER_STEP = LANES / 8;
+
+    // Shuffle v takes sample lane i of the v-th output vector from pixel (v * LANES + i) / 3
+    private static final VectorShuffle<Byte>[] TRIPLETS = triplets();
+
+    @Override
+    public void pack(byte[] samples, byte[] out, int length) {
+        int byteIndex = 0;
+        for (int sample = 0; byteIndex + BYTES_PER_STEP <= length; byteIndex += BYTES_PER_STEP, sample += LANES) {
+            long bits = ByteVector.fromArray(SPECIES, samples, sample)
+                    .compare(VectorOperators.LT, (byte) 0)
+                    .toLong();
+            long msbFirst = Long.reverse(bits);
+            for (int k = 0; k < BYTES_PER_STEP; k++) {
+                out[byteIndex + k] = (byte) (msbFirst >>> (56 - 8 * k));
+            }
+        }
+        ScalarBitKernel.pack(samples, out, byteIndex, length);
+    }
+
+    @Override
+    public void expand(byte[] bits, int pixels, byte black, byte white, int channels, byte[] samples) {
+        if (channels != 1 && channels != 3) {
+            ScalarBitKernel.expand(bits, 0, pixels, black, white, channels, samples);
+            return;
+        }
+
+        ByteVector blackVector = ByteVector.broadcast(SPECIES, black);
+        ByteVector whiteVector = ByteVector.broadcast(SPECIES, white);
+        int pixel = 0;
+        for (; pixel + LANES <= pixels; pixel += LANES) {
+            long msbFirst = 0;
+            for (int k = 0; k < BYTES_PER_STEP; k++) {
+                msbFirst |= (bits[(pixel >>> 3) + k] & 0xFFL) << (56 - 8 * k);
+            }
+            VectorMask<Byte> whiteLanes = VectorMask.fromLong(SPECIES, Long.reverse(msbFirst));
+            ByteVector pixelSamples = blackVector.blend(whiteVector, whiteLanes);
+
+            if (channels == 1) {
+                pixelSamples.intoArray(samples, pixel);
+            } else {
+                for (int v = 0; v < 3; v++) {
+                    pixelSamples.rearrange(TRIPLETS[v]).intoArray(samples, pixel * 3 + v * LANES);
+                }
+            }
+        }
+        ScalarBitKernel.expand(bits, pixel, pixels, black, white, channels, samples);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static VectorShuffle<Byte>[] triplets() {
+        VectorShuffle<Byte>[] shuffles = new VectorShuffle[3];
+        for (int v = 0; v < 3; v++) {
+            int[] lanes = new int[LANES];
+            for (int i = 0; i < LANES; i++) {
+                lanes[i] = (v * LANES + i) / 3;
+            }
+            shuffles[v] = VectorShuffle.fromArray(SPECIES, lanes, 0);
+        }
+        return shuffles;
+    }
+}
@@ -0,0 +1,30 @@
+package com.jaimin.justStore.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Source of uploaded videos for decoding.
+ */
+public interface VideoDownloader {
+
+    /**
+     * Open the video at {@code videoUrl} in its best video format as a stream. Its end fails
+     * unless the whole video was downloaded, and closing it before then stops the download.
+     */
+    default InputStream downloadVideo(String videoUrl) throws IOException {
+        return downloadVideo(videoUrl, null);
+    }
+
+    /**
+     * Open the video at {@code videoUrl} in the format {@code formatId}, or its best video format
+     * when {@code null}, like {@link #downloadVideo(String)}.
+     */
+    InputStream downloadVideo(String videoUrl, String formatId) throws IOException;
+
+    /**
+     * The formats the video at {@code videoUrl} can be downloaded as.
+     */
+    List<VideoFormat> probeFormats(String videoUrl) throws IOException;
+}
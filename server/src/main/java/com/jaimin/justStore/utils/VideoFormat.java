@@ -0,0 +1,16 @@
+package com.jaimin.justStore.utils;
+
+/**
+ * One of the streams a stored video can be downloaded as.
+ *
+ * @param id     the store's name for the format, e.g. a YouTube itag.
+ * @param codec  video codec as the store reports it, e.g. {@code avc1.640028}.
+ * @param bytes  size of the stream, exact or estimated, or -1 when unknown.
+ */
+public record VideoFormat(String id, String codec, int width, int height, long bytes) {
+
+    @Override
+    public String toString() {
+        return id + " (" + codec + " " + width + "x" + height + (bytes >= 0 ? ", " + bytes + " bytes" : "") + ")";
+    }
+}
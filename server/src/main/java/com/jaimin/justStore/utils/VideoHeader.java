@@ -0,0 +1,165 @@
+package com.jaimin.justStore.utils;
+
+import com.jaimin.justStore.enums.EncodingProfile;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * What the first frame of a video says about the rest of it.
+ * <p>
+ * Version 1 videos are: this header as a {@link RecordFrame}, then data frames of
+ * {@code payloadBytesPerFrame} bytes each followed by the CRC32C of those bytes, then a
+ * {@link VideoTrailer}.
+ * <p>
+ * Data frames come in groups. Without FEC a group is one frame of file content. With FEC
+ * ({@code fecParity > 0}) a group is {@code fecGroupFrames} frames holding
+ * {@link #getCodewordsPerGroup()} Reed-Solomon codewords interleaved column-wise: symbol
+ * {@code j} of codeword {@code c} is byte {@code j * codewords + c} of the group. The group
+ * therefore starts with its file content in order, followed by the parity, and each codeword
+ * is spread evenly over every row of every frame of the group, so a burst of damaged pixels or
+ * a whole lost frame costs each codeword only a few symbols. The last group is shortened to
+ * the codewords it needs. Either way, where any byte of the file sits is known up front.
+ * <p>
+ * Version 0 is the legacy layout: the 32-bit length in the first blocks of the first frame,
+ * full frames of payload with no checksums, and no trailer.
+ */
+public record VideoHeader(int version, EncodingProfile profile, long totalBytes, int payloadBytesPerFrame,
+                          boolean frameChecksums, int fecParity, int fecGroupFrames) {
+
+    public static final int LEGACY_VERSION = 0;
+    public static final int VERSION = 1;
+    static final int FRAME_CRC_BYTES = 4;
+
+    private static final byte KIND = 'H';
+    private static final int PROFILE_NAME_BYTES = 24;
+
+    public static VideoHeader of(EncodingProfile profile, long totalBytes, FecOptions fec) {
+        return new VideoHeader(VERSION, profile, totalBytes, profile.getBytesPerFrame() - FRAME_CRC_BYTES, true,
+                fec.parity(), fec.enabled() ? fec.groupFrames() : 1);
+    }
+
+    public static VideoHeader legacy(EncodingProfile profile, long totalBytes) {
+        return new VideoHeader(LEGACY_VERSION, profile, totalBytes, profile.getBytesPerFrame(), false, 0, 1);
+    }
+
+    public boolean hasFec() {
+        return fecParity > 0;
+    }
+
+    public int getGroupFrames() {
+        return hasFec() ? fecGroupFrames : 1;
+    }
+
+    public int getCodewordsPerGroup() {
+        return hasFec() ? (int) ((long) fecGroupFrames * payloadBytesPerFrame / ReedSolomon.CODEWORD_SYMBOLS) : 0;
+    }
+
+    /**
+     * File bytes carried by every group but the last.
+     */
+    public long getGroupDataBytes() {
+        return hasFec()
+                ? (long) getCodewordsPerGroup() * (ReedSolomon.CODEWORD_SYMBOLS - fecParity)
+                : payloadBytesPerFrame;
+    }
+
+    public long getGroups() {
+        return (totalBytes + getGroupDataBytes() - 1) / getGroupDataBytes();
+    }
+
+    public long groupOf(long offset) {
+        return offset / getGroupDataBytes();
+    }
+
+    public long firstFrameOf(long group) {
+        return group * getGroupFrames();
+    }
+
+    public int dataBytesInGroup(long group) {
+        return (int) Math.min(getGroupDataBytes(), totalBytes - group * getGroupDataBytes());
+    }
+
+    public int codewordsInGroup(long group) {
+        int dataSymbols = ReedSolomon.CODEWORD_SYMBOLS - fecParity;
+        return (dataBytesInGroup(group) + dataSymbols - 1) / dataSymbols;
+    }
+
+    public int framesInGroup(long group) {
+        if (!hasFec()) {
+            return 1;
+        }
+        long groupBytes = (long) codewordsInGroup(group) * ReedSolomon.CODEWORD_SYMBOLS;
+        return (int) ((groupBytes + payloadBytesPerFrame - 1) / payloadBytesPerFrame);
+    }
+
+    /**
+     * Number of data frames, not counting the header and trailer frames.
+     */
+    public long getDataFrames() {
+        long groups = getGroups();
+        return groups == 0 ? 0 : firstFrameOf(groups - 1) + framesInGroup(groups - 1);
+    }
+
+    /**
+     * Data frame holding byte {@code offset} of the file.
+     */
+    public long frameOf(long offset) {
+        long group = groupOf(offset);
+        return firstFrameOf(group) + (offset - group * getGroupDataBytes()) / payloadBytesPerFrame;
+    }
+
+    byte[] render(SampleFormat format, byte[] plane) {
+        ByteBuffer record = RecordFrame.newRecord(KIND)
+                .put((byte) version)
+                .put((byte) (frameChecksums ? 1 : 0))
+                .putLong(totalBytes)
+                .putInt(payloadBytesPerFrame);
+        byte[] name = new byte[PROFILE_NAME_BYTES];
+        byte[] profileName = profile.name().getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(profileName, 0, name, 0, profileName.length);
+        record.put(name)
+                .put((byte) fecParity)
+                .putShort((short) fecGroupFrames);
+        return RecordFrame.render(record, profile, format, plane);
+    }
+
+    /**
+     * Read the header from the loaded first frame of a video.
+     *
+     * @return the header, or {@code null} when the frame is not a header frame (a legacy video).
+     */
+    static VideoHeader read(byte[] plane, EncodingProfile profile, SampleFormat format) throws IOException {
+        ByteBuffer record = RecordFrame.read(plane, profile, format, KIND);
+        if (record == null) {
+            return null;
+        }
+
+        int version = record.get();
+        if (version != VERSION) {
+            throw new IOException("Unsupported video format version " + version);
+        }
+        boolean frameChecksums = record.get() == 1;
+        long totalBytes = record.getLong();
+        int payloadBytesPerFrame = record.getInt();
+        byte[] name = new byte[PROFILE_NAME_BYTES];
+        record.get(name);
+        String profileName = new String(name, StandardCharsets.US_ASCII).trim();
+        // Zero in headers written before FEC existed
+        int fecParity = record.get() & 0xFF;
+        int fecGroupFrames = Math.max(1, record.getShort() & 0xFFFF);
+
+        EncodingProfile encodedProfile;
+        try {
+            encodedProfile = EncodingProfile.valueOf(profileName);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Video was encoded with unknown profile " + profileName);
+        }
+        if (encodedProfile != profile) {
+            throw new IOException("Video was encoded with profile " + encodedProfile + ", expected " + profile);
+        }
+        return new VideoHeader(version, encodedProfile, totalBytes, payloadBytesPerFrame, frameChecksums,
+                fecParity, fecGroupFrames);
+    }
+}
@@ -0,0 +1,41 @@
+package com.jaimin.justStore.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+
+/**
+ * A video to decode: a file on local disk, which the decoder opens by path and seeks in, or a
+ * stream, e.g. a download, which it reads once from front to back. Exactly one of the two is set.
+ */
+public record VideoInput(Path path, InputStream stream) implements Closeable {
+
+    public VideoInput {
+        if ((path == null) == (stream == null)) {
+            throw new IllegalArgumentException("A video input is either a path or a stream");
+        }
+    }
+
+    public static VideoInput of(Path path) {
+        return new VideoInput(path, null);
+    }
+
+    public static VideoInput of(InputStream stream) {
+        return new VideoInput(null, stream);
+    }
+
+    public boolean isSeekable() {
+        return path != null;
+    }
+
+    /**
+     * Close the stream, if any; a file is only opened by the decoder.
+     */
+    @Override
+    public void close() throws IOException {
+        if (stream != null) {
+            stream.close();
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.jaimin.justStore.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Destination for rendered frames. Frames are encoded in the order they are given.
+ */
+public interface VideoSink extends Closeable {
+
+    /**
+     * Layout the sink expects for {@link #encode(byte[])}.
+     */
+    SampleFormat getSampleFormat();
+
+    /**
+     * Encode one frame plane. The plane can be reused as soon as this returns.
+     */
+    void encode(byte[] plane) throws IOException;
+
+    /**
+     * Flush pending frames and finalize the container.
+     */
+    void finish() throws IOException;
+}
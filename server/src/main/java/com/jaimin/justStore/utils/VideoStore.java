@@ -0,0 +1,103 @@
+package com.jaimin.justStore.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Where encoded videos are kept. A stored video is found again by the id {@link #put} returned,
+ * and the store's name is recorded next to it, so videos stay readable after the configured
+ * store changes.
+ */
+public interface VideoStore {
+
+    /**
+     * Name recorded with the videos of this store.
+     */
+    String getName();
+
+    /**
+     * Whether its videos are already on local disk, so caching a downloaded copy gains nothing.
+     */
+    boolean isLocal();
+
+    /**
+     * Store a finished video file, which is left in place.
+     *
+     * @param listener Told the session URI, if any, and the stored bytes as the upload goes.
+     */
+    StoredVideo put(Path video, String title, Set<String> tags, ResumableUpload.ProgressListener listener)
+            throws IOException, GeneralSecurityException;
+
+    /**
+     * Store the video {@code writer} writes, while it is writing it. A video the writer failed
+     * to finish is never stored.
+     */
+    StoredVideo put(String title, Set<String> tags, ResumableUpload.ProgressListener listener, VideoWriter writer)
+            throws IOException, GeneralSecurityException;
+
+    /**
+     * Finish storing a video file whose upload session was interrupted. Stores without
+     * sessions fail, and the video is stored again.
+     */
+    default StoredVideo resume(String sessionUri, Path video, ResumableUpload.ProgressListener listener)
+            throws IOException, GeneralSecurityException {
+        throw new IOException("The " + getName() + " store can't resume uploads");
+    }
+
+    /**
+     * Open a stored video as a stream. Its end fails unless the whole video was read, and
+     * closing it earlier stops the transfer.
+     */
+    InputStream open(String videoId, String videoUrl) throws IOException;
+
+    /**
+     * The file of a stored video when it is kept on local disk, to be read by path instead of
+     * {@link #open}ed; {@code null} otherwise.
+     */
+    default Path localPath(String videoId) {
+        return null;
+    }
+
+    /**
+     * The formats the video can be read in whose frames are {@code width} x {@code height}, to be
+     * tried in this order; empty when the store only keeps the video as it was put.
+     */
+    default List<VideoFormat> formats(String videoId, String videoUrl, int width, int height) throws IOException {
+        return List.of();
+    }
+
+    /**
+     * Open a stored video in one of its {@link #formats}, or as it was put when {@code formatId}
+     * is {@code null}, like {@link #open(String, String)}.
+     */
+    default InputStream open(String videoId, String videoUrl, String formatId) throws IOException {
+        if (formatId != null) {
+            throw new IOException("The " + getName() + " store has no format " + formatId);
+        }
+        return open(videoId, videoUrl);
+    }
+
+    /**
+     * Delete a stored video; deleting one that is gone already succeeds.
+     */
+    void delete(String videoId) throws IOException, GeneralSecurityException;
+
+    /**
+     * Id and URL of a stored video.
+     */
+    record StoredVideo(String videoId, String videoUrl) {
+    }
+
+    /**
+     * Writes a whole video to the stream it is given, without closing it.
+     */
+    @FunctionalInterface
+    interface VideoWriter {
+        void writeTo(OutputStream video) throws IOException;
+    }
+}
@@ -0,0 +1,38 @@
+package com.jaimin.justStore.utils;
+
+import com.jaimin.justStore.enums.EncodingProfile;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The last frame of a version 1 video: the length, number of data frames and SHA-256 of the file.
+ * It comes last because the encoder only knows the hash once the whole stream went through it.
+ */
+public record VideoTrailer(long totalBytes, long dataFrames, byte[] sha256) {
+
+    private static final byte KIND = 'T';
+    private static final int SHA256_BYTES = 32;
+
+    byte[] render(EncodingProfile profile, SampleFormat format, byte[] plane) {
+        ByteBuffer record = RecordFrame.newRecord(KIND)
+                .putLong(totalBytes)
+                .putLong(dataFrames)
+                .put(sha256);
+        return RecordFrame.render(record, profile, format, plane);
+    }
+
+    /**
+     * @return the trailer, or {@code null} when the frame is not a trailer frame.
+     */
+    static VideoTrailer read(byte[] plane, EncodingProfile profile, SampleFormat format) {
+        ByteBuffer record = RecordFrame.read(plane, profile, format, KIND);
+        if (record == null) {
+            return null;
+        }
+        long totalBytes = record.getLong();
+        long dataFrames = record.getLong();
+        byte[] sha256 = new byte[SHA256_BYTES];
+        record.get(sha256);
+        return new VideoTrailer(totalBytes, dataFrames, sha256);
+    }
+}
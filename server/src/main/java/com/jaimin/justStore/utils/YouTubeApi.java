@@ -1,7 +1,10 @@
 package com.jaimin.justStore.utils;
 
 import com.google.api.client.googleapis.auth.oauth2.GoogleCredential;
-import com.google.api.client.http.InputStreamContent;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpRequestFactory;
+import com.google.api.client.http.json.JsonHttpContent;
 import com.google.api.client.http.javanet.NetHttpTransport;
 import com.google.api.client.json.JsonFactory;
 import com.google.api.client.json.gson.GsonFactory;
@@ -16,13 +19,16 @@ import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.List;
+import java.io.InputStream;
 import java.util.Set;
 
 /**
  * YouTube API Utility for uploading videos to YouTube.
  * This is a pure utility class - no Spring annotations, no DB access.
  * All credentials must be passed in from the service layer.
+ * <p>
+ * Videos go up through a {@link ResumableUpload} session, so a failed chunk is retried from the
+ * offset YouTube committed and an interrupted upload can be resumed with {@link #resumeVideo}.
  */
 public class YouTubeApi {
 
@@ -30,8 +36,11 @@ public class YouTubeApi {
 
     private static final String APPLICATION_NAME = "JustStore - File Storage";
     private static final JsonFactory JSON_FACTORY = GsonFactory.getDefaultInstance();
+    private static final String DEFAULT_DESCRIPTION = "Uploaded by JustStore - Secure file storage on YouTube";
+    private static final String VIDEO_MEDIA_TYPE = "video/*";
 
     private final YouTube youtubeService;
+    private final HttpRequestFactory uploadRequestFactory;
 
     /**
      * Create YouTubeApi with an access token.
@@ -44,6 +53,10 @@ public class YouTubeApi {
         this.youtubeService = new YouTube.Builder(httpTransport, JSON_FACTORY, credential)
                 .setApplicationName(APPLICATION_NAME)
                 .build();
+        this.uploadRequestFactory = httpTransport.createRequestFactory(request -> {
+            credential.initialize(request);
+            request.setParser(JSON_FACTORY.createJsonObjectParser());
+        });
     }
 
     /**
@@ -53,15 +66,109 @@ public class YouTubeApi {
      * @param title         Title for the YouTube video.
      * @param description   Description for the YouTube video.
      * @param tags          Tags for the YouTube video.
+     * @param options       Chunk size and retries of the resumable upload.
+     * @param listener      Told the session URI and committed bytes after every chunk.
      * @return YouTubeUploadResult containing video ID and URL.
      * @throws IOException If there is an I/O error during upload.
      */
-    public YouTubeUploadResult uploadVideo(String videoFilePath, String title, String description, Set<String> tags)
+    public YouTubeUploadResult uploadVideo(String videoFilePath, String title, String description, Set<String> tags,
+                                           UploadOptions options, ResumableUpload.ProgressListener listener)
             throws IOException {
 
         logger.info("Starting YouTube upload for file: {}", videoFilePath);
 
-        // Define the Video object
+        // Prepare the video file for upload
+        File mediaFile = new File(videoFilePath);
+        if (!mediaFile.exists()) {
+            throw new IOException("Video file not found: " + videoFilePath);
+        }
+
+        // Execute the upload
+        logger.info("Uploading video to YouTube... File size: {} bytes", mediaFile.length());
+        ResumableUpload upload = new ResumableUpload(uploadRequestFactory, options, listener);
+        String sessionUri = upload.start(initiationUrl(), new JsonHttpContent(JSON_FACTORY, buildVideo(title, description, tags)),
+                VIDEO_MEDIA_TYPE, mediaFile.length());
+        try (InputStream videoStream = new BufferedInputStream(new FileInputStream(mediaFile))) {
+            return toResult(upload.upload(sessionUri, videoStream, mediaFile.length(), Video.class));
+        }
+    }
+
+    /**
+     * Upload a video to YouTube with default description.
+     *
+     * @param videoFilePath Path to the video file to upload.
+     * @param title         Title for the YouTube video.
+     * @param tags          Tags for the YouTube video.
+     * @param options       Chunk size and retries of the resumable upload.
+     * @param listener      Told the session URI and committed bytes after every chunk.
+     * @return YouTubeUploadResult containing video ID and URL.
+     * @throws IOException If there is an I/O error during upload.
+     */
+    public YouTubeUploadResult uploadVideo(String videoFilePath, String title, Set<String> tags,
+                                           UploadOptions options, ResumableUpload.ProgressListener listener)
+            throws IOException {
+        return uploadVideo(videoFilePath, title, DEFAULT_DESCRIPTION, tags, options, listener);
+    }
+
+    /**
+     * Upload a video read from a stream whose length is not known up front, such as an encoder's
+     * output while it is still encoding. Only the chunk in flight can be resent, so unlike a file
+     * upload it cannot be resumed once it gave up.
+     */
+    public YouTubeUploadResult uploadVideo(InputStream videoStream, String title, Set<String> tags,
+                                           UploadOptions options, ResumableUpload.ProgressListener listener)
+            throws IOException {
+        logger.info("Starting streamed YouTube upload in {} byte chunks", options.chunkBytes());
+        ResumableUpload upload = new ResumableUpload(uploadRequestFactory, options, listener);
+        String sessionUri = upload.start(initiationUrl(), new JsonHttpContent(JSON_FACTORY, buildVideo(title, DEFAULT_DESCRIPTION, tags)),
+                VIDEO_MEDIA_TYPE, -1);
+        return toResult(upload.upload(sessionUri, videoStream, -1, Video.class));
+    }
+
+    /**
+     * Finish an upload session that was interrupted, sending the video file from the offset
+     * YouTube reports as committed.
+     */
+    public YouTubeUploadResult resumeVideo(String sessionUri, String videoFilePath,
+                                           UploadOptions options, ResumableUpload.ProgressListener listener)
+            throws IOException {
+        File mediaFile = new File(videoFilePath);
+        ResumableUpload upload = new ResumableUpload(uploadRequestFactory, options, listener);
+        long committed = upload.committedBytes(sessionUri, mediaFile.length());
+        // A complete session answers with the video again once the total is confirmed
+        long offset = committed < 0 ? mediaFile.length() : committed;
+        logger.info("Resuming YouTube upload of {} at byte {} of {}", videoFilePath, offset, mediaFile.length());
+        try (InputStream videoStream = new BufferedInputStream(new FileInputStream(mediaFile))) {
+            videoStream.skipNBytes(offset);
+            return toResult(upload.resume(sessionUri, videoStream, offset, mediaFile.length(), Video.class));
+        }
+    }
+
+    /**
+     * Delete a video, succeeding when it is gone already. Needs a token granted more than the upload scope.
+     */
+    public void deleteVideo(String videoId) throws IOException {
+        try {
+            youtubeService.videos().delete(videoId).execute();
+        } catch (GoogleJsonResponseException e) {
+            if (e.getStatusCode() != 404) {
+                throw e;
+            }
+            logger.info("YouTube video {} was already deleted", videoId);
+            return;
+        }
+        logger.info("Deleted YouTube video {}", videoId);
+    }
+
+    private GenericUrl initiationUrl() {
+        GenericUrl url = new GenericUrl(youtubeService.getRootUrl() + "upload/youtube/v3/videos");
+        url.set("uploadType", "resumable");
+        url.set("part", "snippet,status");
+        url.set("notifySubscribers", false);
+        return url;
+    }
+
+    private static Video buildVideo(String title, String description, Set<String> tags) {
         Video video = new Video();
 
         // Set video snippet (metadata)
@@ -78,28 +185,10 @@ public class YouTubeApi {
         VideoStatus status = new VideoStatus();
         status.setPrivacyStatus("unlisted");
         video.setStatus(status);
+        return video;
+    }
 
-        // Prepare the video file for upload
-        File mediaFile = new File(videoFilePath);
-        if (!mediaFile.exists()) {
-            throw new IOException("Video file not found: " + videoFilePath);
-        }
-
-        InputStreamContent mediaContent = new InputStreamContent(
-                "video/*",
-                new BufferedInputStream(new FileInputStream(mediaFile))
-        );
-        mediaContent.setLength(mediaFile.length());
-
-        // Execute the upload
-        logger.info("Uploading video to YouTube... File size: {} bytes", mediaFile.length());
-        YouTube.Videos.Insert request = youtubeService.videos()
-                .insert(List.of("snippet", "status"), video, mediaContent);
-
-        Video response = request
-                .setNotifySubscribers(false)
-                .execute();
-
+    private static YouTubeUploadResult toResult(Video response) {
         String videoId = response.getId();
         String videoUrl = "https://www.youtube.com/watch?v=" + videoId;
 
@@ -108,23 +197,9 @@ public class YouTubeApi {
         return new YouTubeUploadResult(videoId, videoUrl);
     }
 
-    /**
-     * Upload a video to YouTube with default description.
-     *
-     * @param videoFilePath Path to the video file to upload.
-     * @param title         Title for the YouTube video.
-     * @param tags          Tags for the YouTube video.
-     * @return YouTubeUploadResult containing video ID and URL.
-     * @throws IOException If there is an I/O error during upload.
-     */
-    public YouTubeUploadResult uploadVideo(String videoFilePath, String title, Set<String> tags)
-            throws IOException {
-        return uploadVideo(videoFilePath, title, "Uploaded by JustStore - Secure file storage on YouTube", tags);
-    }
-
     /**
      * Result object for YouTube upload operation.
      */
     public record YouTubeUploadResult(String videoId, String videoUrl) {
     }
-}
\ No newline at end of file
+}
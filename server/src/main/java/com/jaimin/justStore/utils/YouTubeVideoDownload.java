@@ -1,53 +1,192 @@
 package com.jaimin.justStore.utils;
 
 
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.client.util.Key;
 import jakarta.annotation.PostConstruct;
 import org.apache.commons.exec.CommandLine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-
-
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Downloads videos with yt-dlp, one supervised process per download.
+ * <p>
+ * At most {@code max-concurrent} processes run at once; a download waits for a free one up to
+ * {@code slot-timeout-ms} and then fails rather than queue forever. Each process is killed at its
+ * deadline or when its stream is closed early, e.g. because the client disconnected, and its exit
+ * status is checked at the end of the stream.
+ * <p>
+ * A video is downloaded in its best video format unless a format is asked for; the formats it
+ * has are probed with {@code yt-dlp -J}, which takes a process slot as well.
+ */
 @Component
-public class YouTubeVideoDownload {
+public class YouTubeVideoDownload implements VideoDownloader {
 
-    private static String YT_DLP_PATH;
+    private static final Logger logger = LoggerFactory.getLogger(YouTubeVideoDownload.class);
 
     @Value("${yt_dlp.path:/home/linuxbrew/.linuxbrew/bin/yt-dlp}")
-    private String ytDlpPathTemp;
+    private String ytDlpPath;
+
+    // yt-dlp processes running at once on this node
+    @Value("${app.download.max-concurrent:4}")
+    private int maxConcurrent;
+
+    // Wait for a free process before a download fails
+    @Value("${app.download.slot-timeout-ms:60000}")
+    private long slotTimeoutMillis;
+
+    // A process still running after this long is killed
+    @Value("${app.download.timeout-ms:3600000}")
+    private long timeoutMillis;
+
+    // A format probe still running after this long is killed
+    @Value("${app.download.probe-timeout-ms:60000}")
+    private long probeTimeoutMillis;
+
+    // Fragments of a video yt-dlp downloads in parallel
+    @Value("${app.download.concurrent-fragments:4}")
+    private int concurrentFragments;
+
+    private Semaphore processSlots;
 
     @PostConstruct
     public void init() {
-        YT_DLP_PATH = ytDlpPathTemp;
+        if (maxConcurrent < 1) {
+            throw new IllegalArgumentException("app.download.max-concurrent must be positive, got " + maxConcurrent);
+        }
+        processSlots = new Semaphore(maxConcurrent, true);
+        logger.info("yt-dlp at {}, {} downloads at once, {} fragments each, killed after {} ms",
+                ytDlpPath, maxConcurrent, concurrentFragments, timeoutMillis);
     }
 
-    public String getYtDlpPathTemp() {
-        return ytDlpPathTemp;
+    public String getYtDlpPath() {
+        return ytDlpPath;
     }
 
-    public void setYtDlpPathTemp(String ytDlpPathTemp) {
-        this.ytDlpPathTemp = ytDlpPathTemp;
+    public void setYtDlpPath(String ytDlpPath) {
+        this.ytDlpPath = ytDlpPath;
     }
 
-    public static InputStream downloadVideo(String videoUrl) throws IOException {
-        System.out.println("In downlod" + YT_DLP_PATH);
-        CommandLine cmdLine = new CommandLine(YT_DLP_PATH);
+    @Override
+    public InputStream downloadVideo(String videoUrl, String formatId) throws IOException {
+        SupervisedProcess process = start(command(videoUrl, formatId), timeoutMillis, videoUrl);
+        logger.debug("Downloading {} in format {}", videoUrl, formatId != null ? formatId : "bestvideo");
+        return process.getOutput();
+    }
 
-        // Best video only, no audio
+    @Override
+    public List<VideoFormat> probeFormats(String videoUrl) throws IOException {
+        CommandLine cmdLine = new CommandLine(ytDlpPath);
+        // The video's metadata as one JSON document, nothing downloaded
+        cmdLine.addArgument("-J");
+        cmdLine.addArgument("--no-progress");
+        cmdLine.addArgument(videoUrl);
+        byte[] json;
+        try (InputStream output = start(List.of(cmdLine.toStrings()), probeTimeoutMillis, videoUrl).getOutput()) {
+            json = output.readAllBytes();
+        }
+        ProbedVideo probed = GsonFactory.getDefaultInstance()
+                .fromInputStream(new ByteArrayInputStream(json), StandardCharsets.UTF_8, ProbedVideo.class);
+        List<VideoFormat> formats = new ArrayList<>();
+        if (probed.formats != null) {
+            for (ProbedFormat format : probed.formats) {
+                if (format.formatId == null || format.width == null || format.height == null) {
+                    continue;
+                }
+                Double bytes = format.filesize != null ? format.filesize : format.filesizeApprox;
+                formats.add(new VideoFormat(format.formatId, format.vcodec, format.width, format.height,
+                        bytes != null ? Math.round(bytes) : -1));
+            }
+        }
+        logger.debug("{} has formats {}", videoUrl, formats);
+        return formats;
+    }
+
+    /**
+     * Start yt-dlp once a process slot is free; the slot is held until the process is gone,
+     * however its stream is left.
+     */
+    private SupervisedProcess start(List<String> command, long timeout, String videoUrl) throws IOException {
+        acquireSlot(videoUrl);
+        SupervisedProcess process;
+        try {
+            process = SupervisedProcess.start("yt-dlp", command, timeout);
+        } catch (IOException | RuntimeException e) {
+            processSlots.release();
+            throw e;
+        }
+        process.onExit().whenComplete((exited, failure) -> processSlots.release());
+        return process;
+    }
+
+    private List<String> command(String videoUrl, String formatId) {
+        CommandLine cmdLine = new CommandLine(ytDlpPath);
+
+        // The format asked for, or the best video only, no audio
         cmdLine.addArgument("-f");
-        cmdLine.addArgument("bestvideo");
+        cmdLine.addArgument(formatId != null ? formatId : "bestvideo", false);
+
+        if (concurrentFragments > 1) {
+            cmdLine.addArgument("--concurrent-fragments");
+            cmdLine.addArgument(String.valueOf(concurrentFragments));
+        }
+
+        // Errors still go to stderr, where they end up in the exception
+        cmdLine.addArgument("--no-progress");
 
         // Output to stdout
         cmdLine.addArgument("-o");
         cmdLine.addArgument("-");
 
         cmdLine.addArgument(videoUrl);
+        return List.of(cmdLine.toStrings());
+    }
 
-        ProcessBuilder processBuilder = new ProcessBuilder(cmdLine.toStrings());
-        Process process = processBuilder.start();
+    private void acquireSlot(String videoUrl) throws IOException {
+        try {
+            if (!processSlots.tryAcquire(slotTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new IOException("No free yt-dlp process for " + videoUrl + " after " + slotTimeoutMillis
+                        + " ms, " + maxConcurrent + " downloads are running");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a yt-dlp process");
+        }
+    }
+
+    /**
+     * The part of {@code yt-dlp -J} output formats are read from.
+     */
+    public static class ProbedVideo {
+        @Key
+        public List<ProbedFormat> formats;
+    }
 
-        return process.getInputStream();
+    public static class ProbedFormat {
+        @Key("format_id")
+        public String formatId;
+        @Key
+        public String vcodec;
+        @Key
+        public Integer width;
+        @Key
+        public Integer height;
+        @Key
+        public Double filesize;
+        @Key("filesize_approx")
+        public Double filesizeApprox;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,348 @@
+package com.jaimin.justStore.service;
+
+import com.jaimin.justStore.enums.EncodingProfile;
+import com.jaimin.justStore.model.File;
+import com.jaimin.justStore.model.FilePart;
+import com.jaimin.justStore.repository.FilePartRepository;
+import com.jaimin.justStore.utils.BytesToHex;
+import com.jaimin.justStore.utils.ChecksumUtil;
+import com.jaimin.justStore.utils.ResumableUpload;
+import com.jaimin.justStore.utils.VideoStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Content is uploaded as fixed-size parts, of which a restarted upload keeps those whose segment
+ * is unchanged and drops those past its new end, and ranges are read back across parts in order,
+ * a failed part stopping the ones still decoding. Encoder, store, decoder and repository are stubs.
+ */
+class FilePartServiceTest {
+
+    private static final long SEGMENT_BYTES = 100;
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @TempDir
+    Path directory;
+
+    private final Random random = new Random(42);
+    private final File file = new File("data.bin", 250L, "application/octet-stream", Set.of());
+    // Parts the repository holds, by index
+    private final Map<Integer, FilePart> stored = Collections.synchronizedMap(new TreeMap<>());
+    // Checksums of the segments the encoder was given
+    private final List<String> encoded = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> deletedVideos = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger videoIds = new AtomicInteger();
+    private PartDecoder decoder;
+    private FilePartService service;
+
+    @BeforeEach
+    void setUp() {
+        StubStore store = new StubStore();
+        VideoStoreService videoStoreService = new VideoStoreService(null) {
+            @Override
+            public VideoStore getUploadStore() {
+                return store;
+            }
+
+            @Override
+            public void deleteQuietly(String name, String videoId) {
+                deletedVideos.add(videoId);
+            }
+        };
+        VideoEncoderService encoder = new VideoEncoderService() {
+            @Override
+            public byte[] encode(InputStream fileContent, long totalBytes, EncodingProfile profile, String outputPath)
+                    throws IOException {
+                byte[] segment = fileContent.readAllBytes();
+                assertEquals(totalBytes, segment.length);
+                encoded.add(ChecksumUtil.calculateChecksum(segment));
+                return sha256(segment);
+            }
+        };
+        UploadJobService uploadJobService = new UploadJobService(null, null, null) {
+            @Override
+            public Path createTempFile(String suffix) throws IOException {
+                return Files.createTempFile(directory, "part", suffix);
+            }
+
+            @Override
+            public EncodeSlot acquireEncodeSlot() {
+                return () -> {
+                };
+            }
+
+            @Override
+            public File saveOwned(File saved) {
+                return saved;
+            }
+        };
+        VideoFormatService videoFormatService = new VideoFormatService(null, null, null, null, null) {
+            @Override
+            public void decode(FilePart part, EncodingProfile profile, OutputStream outputStream, long first, long last)
+                    throws Exception {
+                decoder.decode(part, outputStream, first, last);
+            }
+        };
+        service = new FilePartService(repository(), encoder, videoStoreService, uploadJobService, videoFormatService);
+        ReflectionTestUtils.setField(service, "segmentBytes", SEGMENT_BYTES);
+        ReflectionTestUtils.setField(service, "parallelism", 2);
+        ReflectionTestUtils.setField(service, "downloadBufferBytes", 16);
+        service.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void keepsPartsWhoseSegmentIsUnchangedOnRestart() throws Exception {
+        byte[] content = content(250);
+        Path spool = write(content);
+        stored.put(0, part(0, Arrays.copyOfRange(content, 0, 100), "kept-0"));
+        // Deduplicating again changed the second segment
+        stored.put(1, part(1, new byte[100], "stale-1"));
+        stored.put(2, part(2, Arrays.copyOfRange(content, 200, 250), "kept-2"));
+
+        List<FilePart> parts = service.uploadParts(file, Set.of(), "title", spool, content.length, false);
+
+        assertEquals(List.of(ChecksumUtil.calculateChecksum(Arrays.copyOfRange(content, 100, 200))), encoded);
+        assertEquals(List.of("kept-0", "video-1", "kept-2"), videoIds(parts));
+        assertEquals(List.of("stale-1"), deletedVideos);
+        assertEquals(BytesToHex.bytesToHex(sha256(Arrays.copyOfRange(content, 100, 200))), parts.get(1).getChecksum());
+    }
+
+    @Test
+    void dropsPartsPastTheNewEnd() throws Exception {
+        byte[] content = content(150);
+        Path spool = write(content);
+        for (int index = 0; index < 4; index++) {
+            stored.put(index, part(index, new byte[100], "old-" + index));
+        }
+
+        List<FilePart> parts = service.uploadParts(file, Set.of(), "title", spool, content.length, false);
+
+        assertEquals(2, parts.size());
+        assertEquals(List.of(0, 1), List.copyOf(stored.keySet()));
+        assertEquals(Set.of(ChecksumUtil.calculateChecksum(Arrays.copyOfRange(content, 0, 100)),
+                ChecksumUtil.calculateChecksum(Arrays.copyOfRange(content, 100, 150))), Set.copyOf(encoded));
+        assertTrue(deletedVideos.containsAll(List.of("old-0", "old-1", "old-2", "old-3")), deletedVideos.toString());
+        assertEquals(4, deletedVideos.size());
+    }
+
+    @Test
+    void readsRangesAcrossPartBoundaries() throws Exception {
+        byte[] content = content(250);
+        uploaded(content);
+        decoder = (part, out, first, last) -> {
+            int offset = part.getContentOffset().intValue();
+            out.write(content, offset + (int) first, (int) (last - first + 1));
+        };
+
+        ByteArrayOutputStream whole = new ByteArrayOutputStream();
+        service.writeContent(file, whole);
+        ByteArrayOutputStream range = new ByteArrayOutputStream();
+        service.writeContent(file, range, 50, 220);
+        ByteArrayOutputStream inOnePart = new ByteArrayOutputStream();
+        service.writeContent(file, inOnePart, 120, 130);
+
+        assertArrayEquals(content, whole.toByteArray());
+        assertArrayEquals(Arrays.copyOfRange(content, 50, 221), range.toByteArray());
+        assertArrayEquals(Arrays.copyOfRange(content, 120, 131), inOnePart.toByteArray());
+    }
+
+    @Test
+    void stopsThePartsStillDecodingWhenOneFails() throws Exception {
+        uploaded(content(250));
+        CountDownLatch secondDecoding = new CountDownLatch(1);
+        CountDownLatch secondInterrupted = new CountDownLatch(1);
+        decoder = (part, out, first, last) -> {
+            if (part.getPartIndex() == 0) {
+                out.write(new byte[10]);
+                secondDecoding.await();
+                throw new IOException("checksum mismatch");
+            }
+            secondDecoding.countDown();
+            try {
+                // Stands for a decode blocked on its download
+                new CountDownLatch(1).await();
+            } catch (InterruptedException e) {
+                secondInterrupted.countDown();
+                throw e;
+            }
+        };
+
+        IOException failure = assertThrows(IOException.class,
+                () -> service.writeContent(file, new ByteArrayOutputStream()));
+
+        assertTrue(failure.getMessage().contains("checksum mismatch"), failure.getMessage());
+        assertTrue(secondInterrupted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void opensPartVideosInPartOrder() throws Exception {
+        byte[] content = content(250);
+        uploaded(content);
+        Set<Integer> streaming = ConcurrentHashMap.newKeySet();
+        List<Integer> openedEarly = Collections.synchronizedList(new ArrayList<>());
+        decoder = (part, out, first, last) -> {
+            int index = part.getPartIndex();
+            if (index > 0 && !streaming.contains(index - 1)) {
+                openedEarly.add(index);
+            }
+            // Stands for yt-dlp starting up
+            Thread.sleep(50);
+            streaming.add(index);
+            int offset = part.getContentOffset().intValue();
+            out.write(content, offset + (int) first, (int) (last - first + 1));
+        };
+
+        ByteArrayOutputStream whole = new ByteArrayOutputStream();
+        service.writeContent(file, whole);
+
+        assertArrayEquals(content, whole.toByteArray());
+        // Parts holding yt-dlp slots are never ahead of a part still waiting for one
+        assertEquals(List.of(), openedEarly);
+    }
+
+    private FilePartRepository repository() {
+        return (FilePartRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{FilePartRepository.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "findByFileIdOrderByPartIndexAsc" -> {
+                        synchronized (stored) {
+                            yield List.copyOf(stored.values());
+                        }
+                    }
+                    case "deleteBeyond" -> {
+                        synchronized (stored) {
+                            int before = stored.size();
+                            stored.keySet().removeIf(index -> index >= (int) args[1]);
+                            yield before - stored.size();
+                        }
+                    }
+                    case "save" -> {
+                        FilePart part = (FilePart) args[0];
+                        stored.put(part.getPartIndex(), part);
+                        yield part;
+                    }
+                    case "toString" -> "FilePartRepository stub";
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    /**
+     * Parts for all of {@code content}, as an upload stored them.
+     */
+    private void uploaded(byte[] content) {
+        for (int offset = 0, index = 0; offset < content.length; offset += (int) SEGMENT_BYTES, index++) {
+            byte[] segment = Arrays.copyOfRange(content, offset, Math.min(content.length, offset + (int) SEGMENT_BYTES));
+            stored.put(index, part(index, segment, "video-" + index));
+        }
+    }
+
+    private FilePart part(int index, byte[] segment, String videoId) {
+        FilePart part = new FilePart(file, index);
+        part.uploaded(index * SEGMENT_BYTES, segment.length, ChecksumUtil.calculateChecksum(segment), "stub",
+                videoId, "stub:" + videoId);
+        return part;
+    }
+
+    private Path write(byte[] content) throws IOException {
+        Path spool = Files.createTempFile(directory, "content", ".spool");
+        Files.write(spool, content);
+        return spool;
+    }
+
+    private byte[] content(int length) {
+        byte[] content = new byte[length];
+        random.nextBytes(content);
+        return content;
+    }
+
+    private static List<String> videoIds(List<FilePart> parts) {
+        return parts.stream().map(FilePart::getYoutubeVideoId).toList();
+    }
+
+    private static byte[] sha256(byte[] bytes) {
+        MessageDigest digest = ChecksumUtil.newDigest();
+        digest.update(bytes);
+        return digest.digest();
+    }
+
+    /**
+     * Decodes a range of a part's content.
+     */
+    @FunctionalInterface
+    private interface PartDecoder {
+        void decode(FilePart part, OutputStream out, long first, long last) throws Exception;
+    }
+
+    /**
+     * Stores every video under a new id; nothing is read back from it.
+     */
+    private final class StubStore implements VideoStore {
+
+        @Override
+        public String getName() {
+            return "stub";
+        }
+
+        @Override
+        public boolean isLocal() {
+            return true;
+        }
+
+        @Override
+        public StoredVideo put(Path video, String title, Set<String> tags, ResumableUpload.ProgressListener listener) {
+            String videoId = "video-" + videoIds.incrementAndGet();
+            return new StoredVideo(videoId, "stub:" + videoId);
+        }
+
+        @Override
+        public StoredVideo put(String title, Set<String> tags, ResumableUpload.ProgressListener listener,
+                               VideoWriter writer) {
+            throw new UnsupportedOperationException("Parts are not piped in this test");
+        }
+
+        @Override
+        public InputStream open(String videoId, String videoUrl) {
+            throw new UnsupportedOperationException("Parts are decoded by the stub decoder");
+        }
+
+        @Override
+        public void delete(String videoId) {
+            throw new UnsupportedOperationException("Videos are deleted through the store service");
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.jaimin.justStore.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * The SIMD kernel must produce exactly what the scalar kernel does, including the
+ * tails that do not fill a whole vector.
+ */
+class BitKernelTest {
+
+    private static final int[] LENGTHS = {0, 1, 7, 8, 9, 63, 64, 65, 200, 1000};
+
+    private final BitKernel scalar = new ScalarBitKernel();
+    private final BitKernel vector = new VectorBitKernel();
+    private final Random random = new Random(42);
+
+    @Test
+    void packMatchesScalar() {
+        for (int length : LENGTHS) {
+            byte[] samples = new byte[length * 8];
+            random.nextBytes(samples);
+            byte[] expected = new byte[length];
+            byte[] actual = new byte[length];
+
+            scalar.pack(samples, expected, length);
+            vector.pack(samples, actual, length);
+
+            assertArrayEquals(expected, actual, "length " + length);
+        }
+    }
+
+    @Test
+    void expandMatchesScalar() {
+        for (int channels : new int[]{1, 3}) {
+            for (int length : LENGTHS) {
+                int pixels = length * 8 - (length > 1 ? 3 : 0);
+                byte[] bits = new byte[length];
+                random.nextBytes(bits);
+                byte[] expected = new byte[length * 8 * channels];
+                byte[] actual = new byte[length * 8 * channels];
+
+                scalar.expand(bits, pixels, (byte) -128, (byte) 127, channels, expected);
+                vector.expand(bits, pixels, (byte) -128, (byte) 127, channels, actual);
+
+                assertArrayEquals(expected, actual, channels + " channels, " + pixels + " pixels");
+            }
+        }
+    }
+
+    @Test
+    void expandThenPackRoundTrips() {
+        byte[] bits = new byte[1000];
+        random.nextBytes(bits);
+        byte[] samples = new byte[bits.length * 8];
+        byte[] packed = new byte[bits.length];
+
+        vector.expand(bits, samples.length, (byte) 0, (byte) 255, 1, samples);
+        vector.pack(samples, packed, packed.length);
+
+        assertArrayEquals(bits, packed);
+    }
+}
@@ -0,0 +1,120 @@
+package com.jaimin.justStore.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Content compressed in parallel blocks comes back unchanged through the streaming decompressor,
+ * however the compressed bytes are split into writes, and each block where the compressor said
+ * it went decompresses on its own.
+ */
+class BlockCompressionTest {
+
+    private static final int BLOCK_BYTES = 64 * 1024;
+
+    private final Random random = new Random(42);
+
+    @Test
+    void roundTripsCompressibleAndRandomContent() throws IOException {
+        byte[] text = "2026-01-01 INFO request served\n".repeat(20_000).getBytes(StandardCharsets.US_ASCII);
+        byte[] noise = new byte[300_001];
+        random.nextBytes(noise);
+        byte[] content = Arrays.copyOf(text, text.length + noise.length);
+        System.arraycopy(noise, 0, content, text.length, noise.length);
+
+        byte[] compressed = compress(content);
+        assertTrue(compressed.length < noise.length + text.length / 10, "compressed to " + compressed.length);
+
+        ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+        BlockDecompressingOutputStream stream = new BlockDecompressingOutputStream(decompressed);
+        for (int offset = 0; offset < compressed.length; ) {
+            int length = Math.min(compressed.length - offset, 1 + random.nextInt(10_000));
+            stream.write(compressed, offset, length);
+            offset += length;
+        }
+        stream.finish();
+
+        assertArrayEquals(content, decompressed.toByteArray());
+    }
+
+    @Test
+    void reportedBlocksDecompressOnTheirOwn() throws IOException {
+        byte[] content = "block index entry\n".repeat(30_000).getBytes(StandardCharsets.US_ASCII);
+        List<long[]> blocks = new ArrayList<>();
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try {
+            long written = BlockCompression.compress(new ByteArrayInputStream(content), compressed, 6, BLOCK_BYTES, pool, 2,
+                    (rawOffset, storedOffset, storedLength) -> blocks.add(new long[]{rawOffset, storedOffset, storedLength}));
+            assertEquals(compressed.size(), written);
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals((content.length + BLOCK_BYTES - 1) / BLOCK_BYTES, blocks.size());
+        for (int i = 0; i < blocks.size(); i++) {
+            long[] block = blocks.get(i);
+            assertEquals((long) i * BLOCK_BYTES, block[0]);
+            ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+            BlockDecompressingOutputStream stream = new BlockDecompressingOutputStream(decompressed);
+            stream.write(compressed.toByteArray(), (int) block[1], (int) block[2]);
+            stream.finish();
+            assertArrayEquals(Arrays.copyOfRange(content, (int) block[0], (int) Math.min(block[0] + BLOCK_BYTES, content.length)),
+                    decompressed.toByteArray(), "block " + i);
+        }
+    }
+
+    @Test
+    void rejectsTruncatedContent() throws IOException {
+        byte[] compressed = compress("truncated ".repeat(10_000).getBytes(StandardCharsets.US_ASCII));
+        BlockDecompressingOutputStream stream = new BlockDecompressingOutputStream(OutputStream.nullOutputStream());
+        stream.write(compressed, 0, compressed.length - 1);
+
+        assertThrows(EOFException.class, stream::finish);
+    }
+
+    @Test
+    void concatenatesIndependentlyCompressedBlocks() throws IOException {
+        byte[] text = "chunk of a backup\n".repeat(5_000).getBytes(StandardCharsets.US_ASCII);
+        byte[] noise = new byte[40_000];
+        random.nextBytes(noise);
+
+        ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+        BlockDecompressingOutputStream stream = new BlockDecompressingOutputStream(decompressed);
+        stream.write(BlockCompression.compressBlock(text, text.length, 6));
+        stream.write(BlockCompression.compressBlock(noise, noise.length, 6));
+        stream.finish();
+
+        byte[] content = Arrays.copyOf(text, text.length + noise.length);
+        System.arraycopy(noise, 0, content, text.length, noise.length);
+        assertArrayEquals(content, decompressed.toByteArray());
+    }
+
+    private static byte[] compress(byte[] content) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            BlockCompression.compress(new ByteArrayInputStream(content), compressed, 6, BLOCK_BYTES, pool, 2);
+            return compressed.toByteArray();
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
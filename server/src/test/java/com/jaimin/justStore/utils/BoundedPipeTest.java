@@ -0,0 +1,65 @@
+package com.jaimin.justStore.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Bytes come out of the pipe in order whatever the buffer size, and a failure on one end is
+ * seen by the other instead of a clean end of stream or a writer blocked forever.
+ */
+class BoundedPipeTest {
+
+    private final Random random = new Random(42);
+
+    @Test
+    void passesContentThroughASmallBuffer() throws Exception {
+        byte[] content = new byte[1_000_003];
+        random.nextBytes(content);
+        BoundedPipe pipe = new BoundedPipe(4096);
+
+        CompletableFuture<byte[]> read = CompletableFuture.supplyAsync(() -> {
+            try (InputStream source = pipe.source()) {
+                return source.readAllBytes();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        try (OutputStream sink = pipe.sink()) {
+            for (int offset = 0; offset < content.length; ) {
+                int length = Math.min(content.length - offset, 1 + random.nextInt(10_000));
+                sink.write(content, offset, length);
+                offset += length;
+            }
+        }
+
+        assertArrayEquals(content, read.get());
+    }
+
+    @Test
+    void readerFailsWhenTheWriterFails() throws IOException {
+        BoundedPipe pipe = new BoundedPipe(1024);
+        pipe.sink().write(new byte[100]);
+        pipe.fail(new IOException("encoder crashed"));
+        pipe.sink().close();
+
+        assertThrows(IOException.class, () -> pipe.source().readAllBytes());
+    }
+
+    @Test
+    void writerFailsWhenTheReaderCloses() throws IOException {
+        BoundedPipe pipe = new BoundedPipe(1024);
+        pipe.sink().write(new byte[1024]);
+        pipe.source().close();
+
+        // The buffer is full, so without the close this write would block forever
+        assertThrows(IOException.class, () -> pipe.sink().write(new byte[1]));
+    }
+}
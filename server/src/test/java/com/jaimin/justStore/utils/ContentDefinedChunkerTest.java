@@ -0,0 +1,82 @@
+package com.jaimin.justStore.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Chunks cover the stream exactly, stay within the size bounds, and an edit in the middle of a
+ * stream leaves the chunks away from it unchanged.
+ */
+class ContentDefinedChunkerTest {
+
+    private static final int MIN_BYTES = 2 * 1024;
+    private static final int AVERAGE_BYTES = 8 * 1024;
+    private static final int MAX_BYTES = 32 * 1024;
+
+    private final Random random = new Random(42);
+
+    @Test
+    void chunksCoverTheStreamWithinBounds() throws IOException {
+        byte[] content = new byte[1_000_003];
+        random.nextBytes(content);
+
+        List<byte[]> chunks = chunk(content);
+        ByteArrayOutputStream joined = new ByteArrayOutputStream();
+        for (int i = 0; i < chunks.size(); i++) {
+            int length = chunks.get(i).length;
+            assertTrue(length <= MAX_BYTES, "chunk " + i + " is " + length + " bytes");
+            assertTrue(length >= MIN_BYTES || i == chunks.size() - 1, "chunk " + i + " is " + length + " bytes");
+            joined.write(chunks.get(i));
+        }
+
+        assertArrayEquals(content, joined.toByteArray());
+        int average = content.length / chunks.size();
+        assertTrue(average > AVERAGE_BYTES / 2 && average < AVERAGE_BYTES * 2, "average chunk is " + average + " bytes");
+    }
+
+    @Test
+    void insertionOnlyChangesNearbyChunks() throws IOException {
+        byte[] original = new byte[500_000];
+        random.nextBytes(original);
+        byte[] inserted = new byte[100];
+        random.nextBytes(inserted);
+        int at = original.length / 2;
+        byte[] edited = new byte[original.length + inserted.length];
+        System.arraycopy(original, 0, edited, 0, at);
+        System.arraycopy(inserted, 0, edited, at, inserted.length);
+        System.arraycopy(original, at, edited, at + inserted.length, original.length - at);
+
+        Set<String> originalChunks = new HashSet<>();
+        for (byte[] chunk : chunk(original)) {
+            originalChunks.add(Arrays.toString(chunk));
+        }
+        List<byte[]> editedChunks = chunk(edited);
+        long changed = editedChunks.stream().filter(chunk -> !originalChunks.contains(Arrays.toString(chunk))).count();
+
+        assertTrue(changed <= 2, changed + " of " + editedChunks.size() + " chunks changed");
+    }
+
+    private static List<byte[]> chunk(byte[] content) throws IOException {
+        ContentDefinedChunker chunker = new ContentDefinedChunker(new ByteArrayInputStream(content),
+                MIN_BYTES, AVERAGE_BYTES, MAX_BYTES);
+        byte[] buffer = new byte[chunker.getMaxBytes()];
+        List<byte[]> chunks = new ArrayList<>();
+        int length;
+        while ((length = chunker.next(buffer)) > 0) {
+            chunks.add(Arrays.copyOf(buffer, length));
+        }
+        return chunks;
+    }
+}
@@ -0,0 +1,111 @@
+package com.jaimin.justStore.utils;
+
+import com.jaimin.justStore.enums.EncoderBackend;
+import com.jaimin.justStore.enums.EncodingProfile;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Encode throughput by number of render workers, and backends side by side
+ * (encode and decode rate, decoded bit error rate).
+ * Not picked up by the default test run; use {@code mvn test -Dtest=CreateVideoUtilBenchmark}.
+ */
+class CreateVideoUtilBenchmark {
+
+    private static final EncodingProfile PROFILE = EncodingProfile.BW_1080P;
+    // Payload size, in frames' worth of raw bytes; the video has more frames than that
+    private static final int PAYLOAD_FRAMES = 48;
+
+    @Test
+    void encodeThroughputByParallelism() throws Exception {
+        byte[] payload = payload(PROFILE, PAYLOAD_FRAMES);
+        long frames = videoFrames(PROFILE, payload.length);
+        Path output = Files.createTempFile("benchmark_", ".mp4");
+
+        try {
+            // Warm up the JIT before measuring
+            encode(payload, PROFILE, EncoderBackend.JCODEC, output, 1);
+
+            int cores = Runtime.getRuntime().availableProcessors();
+            for (int parallelism = 1; parallelism <= cores; parallelism *= 2) {
+                long start = System.nanoTime();
+                encode(payload, PROFILE, EncoderBackend.JCODEC, output, parallelism);
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.printf("parallelism %2d: %6.2f frames/s%n", parallelism, frames / seconds);
+            }
+        } finally {
+            Files.deleteIfExists(output);
+        }
+    }
+
+    @Test
+    void backendsSideBySide() throws Exception {
+        Path output = Files.createTempFile("benchmark_", ".mp4");
+        int parallelism = Runtime.getRuntime().availableProcessors();
+
+        try {
+            for (EncodingProfile profile : EncodingProfile.values()) {
+                byte[] payload = payload(profile, 12);
+                long frames = videoFrames(profile, payload.length);
+                for (EncoderBackend backend : EncoderBackend.values()) {
+                    long start = System.nanoTime();
+                    encode(payload, profile, backend, output, parallelism);
+                    double seconds = (System.nanoTime() - start) / 1e9;
+
+                    byte[] decoded;
+                    start = System.nanoTime();
+                    try (InputStream video = Files.newInputStream(output)) {
+                        decoded = RetrieveVideo.decodeVideo(video, profile);
+                    }
+                    double decodeSeconds = (System.nanoTime() - start) / 1e9;
+                    System.out.printf("%-20s %-7s %4d frames, encode %6.2f frames/s, decode %6.2f frames/s, %9d bytes, bit error rate %.2e%n",
+                            profile, backend, frames, frames / seconds, frames / decodeSeconds, Files.size(output),
+                            bitErrorRate(payload, decoded));
+                }
+            }
+        } finally {
+            Files.deleteIfExists(output);
+        }
+    }
+
+    private static byte[] payload(EncodingProfile profile, int frames) {
+        byte[] payload = new byte[profile.getBytesPerFrame() * frames];
+        new Random(42).nextBytes(payload);
+        return payload;
+    }
+
+    /**
+     * Frames in the video of a {@code payloadBytes} long file: header, data frames, FEC parity
+     * included, and trailer.
+     */
+    private static long videoFrames(EncodingProfile profile, long payloadBytes) {
+        return VideoHeader.of(profile, payloadBytes, FecOptions.forProfile(profile)).getDataFrames() + 2;
+    }
+
+    private static double bitErrorRate(byte[] expected, byte[] actual) {
+        long errors = 8L * Math.abs(expected.length - actual.length);
+        for (int i = 0; i < Math.min(expected.length, actual.length); i++) {
+            errors += Integer.bitCount((expected[i] ^ actual[i]) & 0xFF);
+        }
+        return errors / (8.0 * expected.length);
+    }
+
+    private static void encode(byte[] payload, EncodingProfile profile, EncoderBackend backend,
+                               Path output, int parallelism) throws IOException {
+        ExecutorService renderPool = Executors.newFixedThreadPool(parallelism);
+        try (VideoSink sink = CreateVideoUtil.openSink(profile, backend, FFmpegEncoderOptions.defaults(), output.toString())) {
+            CreateVideoUtil.createVideo(new ByteArrayInputStream(payload), payload.length,
+                    profile, sink, FecOptions.forProfile(profile), renderPool, parallelism);
+        } finally {
+            renderPool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.jaimin.justStore.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Entries only appear once committed, the least recently used ones go first when the cache is
+ * over its budget, and a cache opened again after a crash drops interrupted writes but keeps
+ * its entries in the order they were used.
+ */
+class DiskCacheTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void entryIsOnlyVisibleOnceCommitted() throws IOException {
+        DiskCache cache = new DiskCache(directory, 1000);
+        byte[] content = "decoded file".getBytes();
+
+        DiskCache.Writer writer = cache.write("abc123");
+        writer.write(content);
+        assertNull(cache.open("abc123"));
+        writer.commit();
+
+        assertArrayEquals(content, read(cache, "abc123"));
+        assertArrayEquals(content, Files.readAllBytes(cache.path("abc123")));
+        assertEquals(content.length, cache.getTotalBytes());
+
+        DiskCache.Writer abandoned = cache.write("def456");
+        abandoned.write(content);
+        abandoned.close();
+        assertNull(cache.open("def456"));
+        assertNull(cache.path("def456"));
+        assertEquals(1, fileCount(directory));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedEntries() throws IOException {
+        DiskCache cache = new DiskCache(directory, 300);
+        put(cache, "a", 100);
+        put(cache, "b", 100);
+        put(cache, "c", 100);
+        // "a" is used again, so "b" is the least recently used one
+        read(cache, "a");
+
+        put(cache, "d", 100);
+
+        assertNull(cache.open("b"));
+        assertEquals(100, read(cache, "a").length);
+        assertEquals(100, read(cache, "c").length);
+        assertEquals(100, read(cache, "d").length);
+        assertEquals(300, cache.getTotalBytes());
+
+        // Larger than the whole cache, never stored
+        put(cache, "e", 301);
+        assertNull(cache.open("e"));
+        assertEquals(300, cache.getTotalBytes());
+    }
+
+    @Test
+    void reopenedCacheDropsInterruptedWritesAndKeepsUseOrder() throws Exception {
+        DiskCache cache = new DiskCache(directory, 300);
+        put(cache, "old", 100);
+        Thread.sleep(20);
+        put(cache, "new", 100);
+        // A crash in the middle of a write leaves its temp file behind
+        cache.write("crashed").write(new byte[50]);
+
+        DiskCache reopened = new DiskCache(directory, 300);
+
+        assertEquals(200, reopened.getTotalBytes());
+        assertEquals(2, fileCount(directory));
+        put(reopened, "next", 200);
+        assertNull(reopened.open("old"));
+        assertNotNull(reopened.open("new"));
+    }
+
+    private static void put(DiskCache cache, String key, int bytes) throws IOException {
+        DiskCache.Writer writer = cache.write(key);
+        writer.write(new byte[bytes]);
+        writer.commit();
+    }
+
+    private static byte[] read(DiskCache cache, String key) throws IOException {
+        try (FileChannel channel = cache.open(key)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // Fill the buffer
+            }
+            return buffer.array();
+        }
+    }
+
+    private static long fileCount(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+}
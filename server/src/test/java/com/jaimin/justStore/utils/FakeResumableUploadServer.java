@@ -0,0 +1,125 @@
+package com.jaimin.justStore.utils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Local stand-in for Google's resumable upload endpoint: {@code POST /upload} opens a session at
+ * {@code /session}, {@code PUT}s to it append chunks and answer 308 with the committed range until
+ * the declared total is reached, then 200 with {@code {"id": "fake-video"}}. Like Google's, it
+ * answers 400 to a chunk that does not end the upload and is not a multiple of 256 KiB.
+ * <p>
+ * Faults are queued per {@code PUT} with {@link #fail(Fault)}, to see how a client recovers.
+ */
+class FakeResumableUploadServer implements AutoCloseable {
+
+    enum Fault {
+        // Answer normally, to let earlier chunks through
+        NONE,
+        // Answer 503 without committing anything
+        SERVICE_UNAVAILABLE,
+        // Commit half of the chunk, then drop the connection without an answer
+        DROP_AFTER_HALF,
+        // Commit half of the chunk and answer 308 with it, as a server may legitimately do
+        COMMIT_HALF,
+        // Answer 503 to this and every later request
+        DOWN
+    }
+
+    private final HttpServer server;
+    private final ByteArrayOutputStream received = new ByteArrayOutputStream();
+    private final Deque<Fault> faults = new ArrayDeque<>();
+    private boolean down;
+
+    FakeResumableUploadServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/upload", this::open);
+        server.createContext("/session", this::put);
+        server.start();
+    }
+
+    String initiationUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/upload";
+    }
+
+    synchronized void fail(Fault fault) {
+        faults.add(fault);
+    }
+
+    synchronized void recover() {
+        down = false;
+    }
+
+    synchronized byte[] received() {
+        return received.toByteArray();
+    }
+
+
+    private void open(HttpExchange exchange) throws IOException {
+        exchange.getRequestBody().readAllBytes();
+        exchange.getResponseHeaders().set("Location", "http://127.0.0.1:" + server.getAddress().getPort() + "/session");
+        exchange.sendResponseHeaders(200, -1);
+        exchange.close();
+    }
+
+    private synchronized void put(HttpExchange exchange) throws IOException {
+        byte[] body = exchange.getRequestBody().readAllBytes();
+        Fault fault = down ? Fault.DOWN : faults.poll();
+        if (fault == Fault.DOWN) {
+            down = true;
+        }
+        if (fault == Fault.SERVICE_UNAVAILABLE || fault == Fault.DOWN) {
+            exchange.sendResponseHeaders(503, -1);
+            exchange.close();
+            return;
+        }
+
+        // "bytes first-last/total", "bytes */total", total may be "*"
+        String range = exchange.getRequestHeaders().getFirst("Content-Range").substring("bytes ".length());
+        String totalPart = range.substring(range.indexOf('/') + 1);
+        long total = totalPart.equals("*") ? -1 : Long.parseLong(totalPart);
+        if (body.length > 0) {
+            long first = Long.parseLong(range.substring(0, range.indexOf('-')));
+            boolean last = total >= 0 && first + body.length == total;
+            if (first != received.size() || (!last && body.length % ResumableUpload.CHUNK_GRANULARITY != 0)) {
+                exchange.sendResponseHeaders(400, -1);
+                exchange.close();
+                return;
+            }
+            int accepted = fault == Fault.DROP_AFTER_HALF || fault == Fault.COMMIT_HALF ? body.length / 2 : body.length;
+            received.write(body, 0, accepted);
+            if (fault == Fault.DROP_AFTER_HALF) {
+                exchange.close();
+                return;
+            }
+        }
+
+        if (total >= 0 && received.size() == total) {
+            byte[] video = "{\"id\": \"fake-video\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, video.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(video);
+            }
+            return;
+        }
+        if (received.size() > 0) {
+            exchange.getResponseHeaders().set("Range", "bytes=0-" + (received.size() - 1));
+        }
+        exchange.sendResponseHeaders(308, -1);
+        exchange.close();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
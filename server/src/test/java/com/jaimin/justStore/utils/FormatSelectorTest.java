@@ -0,0 +1,58 @@
+package com.jaimin.justStore.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Only video streams of the encoded frame size are kept, the preferred codec first and the
+ * smallest stream first within a codec, with streams of unknown size last.
+ */
+class FormatSelectorTest {
+
+    private final FormatSelector selector = new FormatSelector(List.of("avc1", "vp9", "av01"));
+
+    @Test
+    void prefersFastestCodecThenSmallestStream() {
+        List<VideoFormat> formats = List.of(
+                new VideoFormat("399", "av01.0.08M.08", 1920, 1072, 40_000_000),
+                new VideoFormat("248", "vp9", 1920, 1072, 50_000_000),
+                new VideoFormat("137", "avc1.640028", 1920, 1072, 90_000_000),
+                new VideoFormat("270", "avc1.640028", 1920, 1072, 80_000_000),
+                new VideoFormat("616", "vp09.00.40.08", 1920, 1072, -1));
+
+        assertEquals(List.of("270", "137", "248", "616", "399"), ids(selector.select(formats, 1920, 1072)));
+    }
+
+    @Test
+    void keepsOnlyVideoOfTheEncodedSize() {
+        List<VideoFormat> formats = List.of(
+                new VideoFormat("136", "avc1.4d401f", 1280, 720, 10_000_000),
+                new VideoFormat("140", "none", 0, 0, 1_000_000),
+                new VideoFormat("137", "avc1.640028", 1920, 1072, 90_000_000),
+                new VideoFormat("sb0", null, 1920, 1072, -1));
+
+        assertEquals(List.of("137"), ids(selector.select(formats, 1920, 1072)));
+        assertEquals(List.of(), ids(selector.select(formats, 3840, 2160)));
+    }
+
+    @Test
+    void placesUnlistedCodecsLast() {
+        FormatSelector vp9First = new FormatSelector(List.of(" VP9 ", ""));
+        List<VideoFormat> formats = List.of(
+                new VideoFormat("137", "avc1.640028", 1920, 1072, 10),
+                new VideoFormat("248", "vp9", 1920, 1072, 50));
+
+        assertEquals(List.of("248", "137"), ids(vp9First.select(formats, 1920, 1072)));
+        assertEquals("avc1", FormatSelector.codecFamily("avc1.640028"));
+        assertEquals("hevc", FormatSelector.codecFamily("hevc"));
+        assertNull(FormatSelector.codecFamily("none"));
+    }
+
+    private static List<String> ids(List<VideoFormat> formats) {
+        return formats.stream().map(VideoFormat::id).toList();
+    }
+}
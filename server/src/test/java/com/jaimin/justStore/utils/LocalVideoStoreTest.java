@@ -0,0 +1,71 @@
+package com.jaimin.justStore.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Videos put in the local store read back the same and are gone once deleted, and a video whose
+ * writer failed leaves nothing behind.
+ */
+class LocalVideoStoreTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void storedVideoReadsBackUntilDeleted() throws IOException {
+        LocalVideoStore store = new LocalVideoStore(directory);
+        byte[] video = "encoded video".getBytes();
+        long[] reported = new long[1];
+
+        VideoStore.StoredVideo stored = store.put("title", Set.of(), (sessionUri, committedBytes, totalBytes) ->
+                reported[0] = committedBytes, out -> out.write(video));
+
+        assertEquals(video.length, reported[0]);
+        assertTrue(stored.videoUrl().startsWith("file:"), stored.videoUrl());
+        try (InputStream in = store.open(stored.videoId(), stored.videoUrl())) {
+            assertArrayEquals(video, in.readAllBytes());
+        }
+        assertArrayEquals(video, Files.readAllBytes(store.localPath(stored.videoId())));
+
+        store.delete(stored.videoId());
+        assertThrows(NoSuchFileException.class, () -> store.open(stored.videoId(), stored.videoUrl()));
+        // Deleting it again succeeds
+        store.delete(stored.videoId());
+    }
+
+    @Test
+    void failedWriteStoresNothing() throws IOException {
+        LocalVideoStore store = new LocalVideoStore(directory);
+
+        assertThrows(IOException.class, () -> store.put("title", Set.of(), null, out -> {
+            out.write(new byte[100]);
+            throw new IOException("encoder failed");
+        }));
+
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void refusesIdsOutsideTheStore() throws IOException {
+        LocalVideoStore store = new LocalVideoStore(directory);
+
+        assertThrows(IllegalArgumentException.class, () -> store.open("../secret", null));
+        assertThrows(IllegalArgumentException.class, () -> store.delete("dQw4w9WgXcQ"));
+    }
+}
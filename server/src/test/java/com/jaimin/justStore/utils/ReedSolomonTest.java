@@ -0,0 +1,69 @@
+package com.jaimin.justStore.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Codewords are repaired up to {@code 2 * errors + erasures <= parity}, and decoding reports
+ * failure beyond it instead of returning a wrong codeword as repaired.
+ */
+class ReedSolomonTest {
+
+    private static final int PARITY = 32;
+
+    private final ReedSolomon reedSolomon = new ReedSolomon(PARITY);
+    private final Random random = new Random(42);
+
+    @Test
+    void repairsErrorsAndErasuresWithinParity() {
+        for (int erasureCount = 0; erasureCount <= PARITY; erasureCount += 4) {
+            int errorCount = (PARITY - erasureCount) / 2;
+            byte[] original = randomCodeword();
+            byte[] damaged = original.clone();
+            int[] positions = distinctPositions(erasureCount + errorCount);
+            for (int position : positions) {
+                damaged[position] ^= (byte) (1 + random.nextInt(255));
+            }
+
+            assertTrue(reedSolomon.decode(damaged, positions, erasureCount),
+                    errorCount + " errors, " + erasureCount + " erasures");
+            assertArrayEquals(original, damaged, errorCount + " errors, " + erasureCount + " erasures");
+        }
+    }
+
+    @Test
+    void reportsTooManyErrors() {
+        byte[] damaged = randomCodeword();
+        for (int position : distinctPositions(PARITY / 2 + 4)) {
+            damaged[position] ^= (byte) (1 + random.nextInt(255));
+        }
+
+        assertFalse(reedSolomon.decode(damaged, new int[0], 0));
+    }
+
+    private byte[] randomCodeword() {
+        byte[] codeword = new byte[ReedSolomon.CODEWORD_SYMBOLS];
+        random.nextBytes(codeword);
+        reedSolomon.encode(codeword);
+        return codeword;
+    }
+
+    private int[] distinctPositions(int count) {
+        boolean[] taken = new boolean[ReedSolomon.CODEWORD_SYMBOLS];
+        int[] positions = new int[count];
+        for (int i = 0; i < count; i++) {
+            int position;
+            do {
+                position = random.nextInt(ReedSolomon.CODEWORD_SYMBOLS);
+            } while (taken[position]);
+            taken[position] = true;
+            positions[i] = position;
+        }
+        return positions;
+    }
+}
@@ -0,0 +1,142 @@
+package com.jaimin.justStore.utils;
+
+import com.google.api.client.http.ByteArrayContent;
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpRequestFactory;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.GenericJson;
+import com.google.api.client.json.JsonObjectParser;
+import com.google.api.client.json.gson.GsonFactory;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Uploads against {@link FakeResumableUploadServer} arrive whole through server errors, dropped
+ * connections and partial commits, and a session that failed can be resumed from the server's offset.
+ */
+class ResumableUploadTest {
+
+    private static final int CHUNK_BYTES = ResumableUpload.CHUNK_GRANULARITY;
+
+    private final HttpRequestFactory requestFactory = new NetHttpTransport()
+            .createRequestFactory(request -> request.setParser(new JsonObjectParser(GsonFactory.getDefaultInstance())));
+    private final Random random = new Random(42);
+    private final List<Long> progress = new ArrayList<>();
+
+    @Test
+    void uploadsThroughFaults() throws IOException {
+        byte[] content = randomContent(4 * CHUNK_BYTES + 12_345);
+        try (FakeResumableUploadServer server = new FakeResumableUploadServer()) {
+            server.fail(FakeResumableUploadServer.Fault.NONE);
+            server.fail(FakeResumableUploadServer.Fault.SERVICE_UNAVAILABLE);
+            server.fail(FakeResumableUploadServer.Fault.DROP_AFTER_HALF);
+            server.fail(FakeResumableUploadServer.Fault.COMMIT_HALF);
+
+            GenericJson video = upload(server, new ByteArrayInputStream(content), content.length, 3);
+
+            assertEquals("fake-video", video.get("id"));
+            assertArrayEquals(content, server.received());
+            assertEquals(content.length, (long) progress.getLast());
+        }
+    }
+
+    @Test
+    void uploadsStreamOfUnknownLength() throws IOException {
+        // A whole number of chunks, so the total only goes up in an empty last request
+        byte[] content = randomContent(3 * CHUNK_BYTES);
+        try (FakeResumableUploadServer server = new FakeResumableUploadServer()) {
+            GenericJson video = upload(server, new ByteArrayInputStream(content), -1, 0);
+
+            assertEquals("fake-video", video.get("id"));
+            assertArrayEquals(content, server.received());
+        }
+    }
+
+    @Test
+    void realignsChunksAfterPartialCommit() throws IOException {
+        byte[] content = randomContent(3 * CHUNK_BYTES + 99);
+        try (FakeResumableUploadServer server = new FakeResumableUploadServer()) {
+            // Half a chunk is committed, so the rest must be topped up before it is sent again
+            server.fail(FakeResumableUploadServer.Fault.COMMIT_HALF);
+            server.fail(FakeResumableUploadServer.Fault.COMMIT_HALF);
+
+            GenericJson video = upload(server, new ByteArrayInputStream(content), -1, 0);
+
+            assertEquals("fake-video", video.get("id"));
+            assertArrayEquals(content, server.received());
+        }
+    }
+
+    @Test
+    void reportsCommittedChunksAtMostOncePerInterval() throws IOException {
+        byte[] content = randomContent(6 * CHUNK_BYTES);
+        try (FakeResumableUploadServer server = new FakeResumableUploadServer()) {
+            ResumableUpload upload = new ResumableUpload(requestFactory,
+                    new UploadOptions(CHUNK_BYTES, 0, 1, 60_000),
+                    (sessionUri, committedBytes, totalBytes) -> progress.add(committedBytes));
+            String sessionUri = upload.start(new GenericUrl(server.initiationUrl()), metadata(), "video/*", content.length);
+            upload.upload(sessionUri, new ByteArrayInputStream(content), content.length, GenericJson.class);
+
+            // The opened session and the finished upload only
+            assertEquals(List.of(0L, (long) content.length), progress);
+        }
+    }
+
+    @Test
+    void resumesSessionAfterGivingUp() throws IOException {
+        byte[] content = randomContent(5 * CHUNK_BYTES + 7);
+        try (FakeResumableUploadServer server = new FakeResumableUploadServer()) {
+            server.fail(FakeResumableUploadServer.Fault.NONE);
+            server.fail(FakeResumableUploadServer.Fault.NONE);
+            server.fail(FakeResumableUploadServer.Fault.DOWN);
+            ResumableUpload upload = newUpload(1);
+            String sessionUri = upload.start(new GenericUrl(server.initiationUrl()), metadata(), "video/*", content.length);
+
+            assertThrows(IOException.class, () -> upload.upload(sessionUri, new ByteArrayInputStream(content),
+                    content.length, GenericJson.class));
+
+            server.recover();
+            long committed = upload.committedBytes(sessionUri, content.length);
+            assertEquals(2L * CHUNK_BYTES, committed);
+            InputStream rest = new ByteArrayInputStream(content);
+            rest.skipNBytes(committed);
+            GenericJson video = upload.resume(sessionUri, rest, committed, content.length, GenericJson.class);
+
+            assertEquals("fake-video", video.get("id"));
+            assertArrayEquals(content, server.received());
+        }
+    }
+
+    private GenericJson upload(FakeResumableUploadServer server, InputStream content, long totalBytes, int maxRetries)
+            throws IOException {
+        ResumableUpload upload = newUpload(maxRetries);
+        String sessionUri = upload.start(new GenericUrl(server.initiationUrl()), metadata(), "video/*", totalBytes);
+        return upload.upload(sessionUri, content, totalBytes, GenericJson.class);
+    }
+
+    private ResumableUpload newUpload(int maxRetries) {
+        return new ResumableUpload(requestFactory, new UploadOptions(CHUNK_BYTES, maxRetries, 1),
+                (sessionUri, committedBytes, totalBytes) -> progress.add(committedBytes));
+    }
+
+    private static ByteArrayContent metadata() {
+        return new ByteArrayContent("application/json", "{}".getBytes(StandardCharsets.UTF_8));
+    }
+
+    private byte[] randomContent(int length) {
+        byte[] content = new byte[length];
+        random.nextBytes(content);
+        return content;
+    }
+}
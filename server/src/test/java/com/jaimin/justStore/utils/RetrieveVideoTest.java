@@ -0,0 +1,196 @@
+package com.jaimin.justStore.utils;
+
+import com.jaimin.justStore.enums.EncoderBackend;
+import com.jaimin.justStore.enums.EncodingProfile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Videos encoded with the FFmpeg backend decode back to their content, whole or by range, read
+ * by path or as a stream; a damaged data frame is repaired by FEC, and without FEC fails a strict
+ * decode.
+ */
+class RetrieveVideoTest {
+
+    private static final int PARALLELISM = 4;
+    // qp 0 is lossless with libx264, so every difference comes from the frame damaged on purpose
+    private static final FFmpegEncoderOptions LOSSLESS =
+            new FFmpegEncoderOptions("libx264", "ultrafast", -1, 0, 0, 0, 24);
+    // Video frame 0 is the header, this is data frame 1
+    private static final int DAMAGED_FRAME = 2;
+    private static final int NO_DAMAGE = -1;
+
+    @TempDir
+    Path directory;
+
+    private final Random random = new Random(42);
+    private final ExecutorService pool = Executors.newFixedThreadPool(PARALLELISM);
+
+    @AfterEach
+    void shutdown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    void decodesWholeVideosOfEveryProfile() throws Exception {
+        for (EncodingProfile profile : EncodingProfile.values()) {
+            byte[] content = content(profile.getBytesPerFrame() * 5 / 2);
+            Path video = encode(profile, content, FecOptions.forProfile(profile), NO_DAMAGE);
+
+            try (InputStream stream = Files.newInputStream(video)) {
+                assertArrayEquals(content, RetrieveVideo.decodeVideo(stream, profile), profile + " streamed");
+            }
+            ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+            RetrieveVideo.decodeRange(VideoInput.of(video), profile, decoded, pool, PARALLELISM, true,
+                    0, Long.MAX_VALUE, ChecksumUtil.newDigest(), RetrieveVideo.NOT_LEGACY);
+            assertArrayEquals(content, decoded.toByteArray(), profile + " on disk");
+        }
+    }
+
+    @Test
+    void decodesRangesOfEveryProfile() throws Exception {
+        for (EncodingProfile profile : EncodingProfile.values()) {
+            FecOptions fec = FecOptions.forProfile(profile);
+            byte[] content = content(profile.getBytesPerFrame() * 5 / 2);
+            Path video = encode(profile, content, fec, NO_DAMAGE);
+            VideoHeader header = VideoHeader.of(profile, content.length, fec);
+            long frameEnd = header.payloadBytesPerFrame();
+            long last = content.length - 1;
+
+            long[][] ranges = {
+                    {0, 99},
+                    {frameEnd - 10, frameEnd + 10},
+                    {frameEnd + 5, last},
+                    {last - 49, last},
+                    // Capped at the end of the file
+                    {last - 9, Long.MAX_VALUE},
+            };
+            for (long[] range : ranges) {
+                byte[] expected = Arrays.copyOfRange(content, (int) range[0], (int) Math.min(range[1], last) + 1);
+                String name = profile + " bytes " + range[0] + "-" + range[1];
+
+                ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+                try (InputStream stream = Files.newInputStream(video)) {
+                    RetrieveVideo.decodeRange(stream, profile, streamed, pool, PARALLELISM, true, range[0], range[1]);
+                }
+                assertArrayEquals(expected, streamed.toByteArray(), name + " streamed");
+
+                ByteArrayOutputStream seeked = new ByteArrayOutputStream();
+                RetrieveVideo.decodeRange(VideoInput.of(video), profile, seeked, pool, PARALLELISM, true,
+                        range[0], range[1], null, RetrieveVideo.NOT_LEGACY);
+                assertArrayEquals(expected, seeked.toByteArray(), name + " on disk");
+            }
+        }
+    }
+
+    @Test
+    void fecRepairsADamagedFrame() throws Exception {
+        EncodingProfile profile = EncodingProfile.BW_1080P_BLOCK2;
+        // A group of 8 frames puts about 32 symbols of each codeword in a frame, within 64 erasures
+        FecOptions fec = new FecOptions(64, 8);
+        byte[] content = content((int) VideoHeader.of(profile, 1, fec).getGroupDataBytes() * 2);
+        Path video = encode(profile, content, fec, DAMAGED_FRAME);
+
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        RetrieveVideo.decodeRange(VideoInput.of(video), profile, decoded, pool, PARALLELISM, true,
+                0, Long.MAX_VALUE, ChecksumUtil.newDigest(), RetrieveVideo.NOT_LEGACY);
+
+        assertArrayEquals(content, decoded.toByteArray());
+    }
+
+    @Test
+    void damagedFrameFailsAStrictDecodeWithoutFec() throws Exception {
+        EncodingProfile profile = EncodingProfile.BW_1080P_BLOCK2;
+        byte[] content = content(profile.getBytesPerFrame() * 3);
+        Path video = encode(profile, content, FecOptions.none(), DAMAGED_FRAME);
+
+        try (InputStream stream = Files.newInputStream(video)) {
+            assertThrows(ChecksumMismatchException.class, () -> RetrieveVideo.decodeVideo(stream, profile));
+        }
+        MessageDigest digest = ChecksumUtil.newDigest();
+        assertThrows(ChecksumMismatchException.class, () -> RetrieveVideo.decodeRange(VideoInput.of(video),
+                profile, OutputStream.nullOutputStream(), pool, PARALLELISM, true,
+                0, Long.MAX_VALUE, digest, RetrieveVideo.NOT_LEGACY));
+    }
+
+    /**
+     * Encode {@code content} to a fragmented MP4, as videos are streamed to their store, with
+     * video frame {@code damagedFrame} inverted, or none when it is {@link #NO_DAMAGE}.
+     */
+    private Path encode(EncodingProfile profile, byte[] content, FecOptions fec, int damagedFrame)
+            throws IOException {
+        Path video = Files.createTempFile(directory, profile.name(), ".mp4");
+        try (OutputStream out = Files.newOutputStream(video);
+             VideoSink sink = new DamagingSink(
+                     CreateVideoUtil.openSink(profile, EncoderBackend.FFMPEG, LOSSLESS, out), damagedFrame)) {
+            CreateVideoUtil.createVideo(new ByteArrayInputStream(content), content.length, profile, sink, fec,
+                    pool, PARALLELISM);
+        }
+        return video;
+    }
+
+    private byte[] content(int length) {
+        byte[] content = new byte[length];
+        random.nextBytes(content);
+        return content;
+    }
+
+    /**
+     * Inverts every sample of one frame on its way to the encoder.
+     */
+    private static final class DamagingSink implements VideoSink {
+        private final VideoSink sink;
+        private final int damagedFrame;
+        private int frame;
+
+        private DamagingSink(VideoSink sink, int damagedFrame) {
+            this.sink = sink;
+            this.damagedFrame = damagedFrame;
+        }
+
+        @Override
+        public SampleFormat getSampleFormat() {
+            return sink.getSampleFormat();
+        }
+
+        @Override
+        public void encode(byte[] plane) throws IOException {
+            if (frame++ != damagedFrame) {
+                sink.encode(plane);
+                return;
+            }
+            byte[] damaged = plane.clone();
+            for (int i = 0; i < damaged.length; i++) {
+                damaged[i] = (byte) ~damaged[i];
+            }
+            sink.encode(damaged);
+        }
+
+        @Override
+        public void finish() throws IOException {
+            sink.finish();
+        }
+
+        @Override
+        public void close() throws IOException {
+            sink.close();
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.jaimin.justStore.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Readers of a shared download get the decoded bytes of their range whenever they attach, the
+ * decode is cancelled once the last reader left, and a failed decode fails every reader.
+ */
+class SharedDownloadTest {
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @TempDir
+    Path directory;
+
+    private final Random random = new Random(42);
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void readersAtDifferentOffsetsGetTheDecodedBytes() throws Exception {
+        byte[] content = content(1_000_003);
+        CountDownLatch readersWaiting = new CountDownLatch(1);
+        CountDownLatch ended = new CountDownLatch(1);
+        SharedDownload download = newDownload(content.length);
+
+        download.start(executor, sink -> {
+            readersWaiting.await();
+            writeInPieces(content, 0, content.length, sink);
+        }, ended::countDown);
+        assertTrue(download.attach());
+        assertTrue(download.attach());
+        CompletableFuture<byte[]> whole = readAsync(download, 0, content.length - 1);
+        CompletableFuture<byte[]> middle = readAsync(download, 300_000, 700_000);
+        readersWaiting.countDown();
+
+        assertArrayEquals(content, whole.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertArrayEquals(Arrays.copyOfRange(content, 300_000, 700_001), middle.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(ended.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(ChecksumUtil.calculateChecksum(content), download.checksum());
+        assertFalse(download.detach());
+        assertFalse(download.detach());
+    }
+
+    @Test
+    void lateReaderGetsWhatWasDecodedBeforeIt() throws Exception {
+        byte[] content = content(200_000);
+        CountDownLatch halfWritten = new CountDownLatch(1);
+        CountDownLatch lateReaderAttached = new CountDownLatch(1);
+        SharedDownload download = newDownload(content.length);
+
+        download.start(executor, sink -> {
+            writeInPieces(content, 0, content.length / 2, sink);
+            halfWritten.countDown();
+            lateReaderAttached.await();
+            writeInPieces(content, content.length / 2, content.length, sink);
+        }, () -> {
+        });
+        assertTrue(download.attach());
+        CompletableFuture<byte[]> first = readAsync(download, 0, content.length - 1);
+        assertTrue(halfWritten.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(download.attach());
+        CompletableFuture<byte[]> late = readAsync(download, 10, content.length - 1);
+        lateReaderAttached.countDown();
+
+        assertArrayEquals(content, first.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertArrayEquals(Arrays.copyOfRange(content, 10, content.length), late.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void cancelsTheDecodeOnceTheLastReaderLeaves() throws Exception {
+        byte[] content = content(10_000);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        CountDownLatch ended = new CountDownLatch(1);
+        SharedDownload download = newDownload(content.length * 2L);
+
+        download.start(executor, sink -> {
+            sink.write(content);
+            try {
+                // Stands for a decode blocked on its download
+                new CountDownLatch(1).await();
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw e;
+            }
+        }, ended::countDown);
+        assertTrue(download.attach());
+        assertTrue(download.attach());
+        ByteArrayOutputStream read = new ByteArrayOutputStream();
+        download.read(read, 0, 99);
+
+        assertFalse(download.detach());
+        assertTrue(download.detach());
+        assertTrue(interrupted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(ended.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertArrayEquals(Arrays.copyOf(content, 100), read.toByteArray());
+        // Turned away, the next request starts a download of its own
+        assertFalse(download.attach());
+    }
+
+    @Test
+    void endsADecodeCancelledBeforeItStarted() throws Exception {
+        CountDownLatch busy = new CountDownLatch(1);
+        ExecutorService single = Executors.newSingleThreadExecutor();
+        try {
+            single.submit(() -> {
+                busy.await();
+                return null;
+            });
+            CountDownLatch ended = new CountDownLatch(1);
+            SharedDownload download = newDownload(100);
+            download.start(single, sink -> sink.write(new byte[100]), ended::countDown);
+            assertTrue(download.attach());
+
+            assertTrue(download.detach());
+            // The decode never ran, the end did not wait for it
+            assertEquals(0, ended.getCount());
+            assertFalse(download.attach());
+        } finally {
+            busy.countDown();
+            single.shutdownNow();
+        }
+    }
+
+    @Test
+    void decoderFailureReachesEveryReader() throws Exception {
+        CountDownLatch readersWaiting = new CountDownLatch(1);
+        SharedDownload download = newDownload(1000);
+
+        download.start(executor, sink -> {
+            sink.write(new byte[10]);
+            readersWaiting.await();
+            throw new IOException("decoder crashed");
+        }, () -> {
+        });
+        assertTrue(download.attach());
+        assertTrue(download.attach());
+        CompletableFuture<byte[]> first = readAsync(download, 0, 999);
+        CompletableFuture<byte[]> second = readAsync(download, 500, 999);
+        readersWaiting.countDown();
+
+        for (CompletableFuture<byte[]> reader : List.of(first, second)) {
+            ExecutionException failure = assertThrows(ExecutionException.class,
+                    () -> reader.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            assertInstanceOf(UncheckedIOException.class, failure.getCause());
+        }
+        assertFalse(download.detach());
+        assertFalse(download.detach());
+        assertFalse(download.attach());
+    }
+
+    private SharedDownload newDownload(long length) throws IOException {
+        return new SharedDownload("file 1", length, Files.createTempFile(directory, "spool", ".download"));
+    }
+
+    private CompletableFuture<byte[]> readAsync(SharedDownload download, long first, long last) {
+        return CompletableFuture.supplyAsync(() -> {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try {
+                download.read(out, first, last);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return out.toByteArray();
+        }, executor);
+    }
+
+    private void writeInPieces(byte[] content, int from, int to, OutputStream sink) throws IOException {
+        for (int offset = from; offset < to; ) {
+            int length = Math.min(to - offset, 1 + random.nextInt(10_000));
+            sink.write(content, offset, length);
+            offset += length;
+        }
+    }
+
+    private byte[] content(int length) {
+        byte[] content = new byte[length];
+        random.nextBytes(content);
+        return content;
+    }
+}
@@ -0,0 +1,87 @@
+package com.jaimin.justStore.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Shell scripts stand in for yt-dlp: output is only complete once the process exited with 0,
+ * a full standard error never stalls it, and it is killed with its children at its deadline
+ * or when its output is closed early.
+ */
+class SupervisedProcessTest {
+
+    private static final long TIMEOUT_MILLIS = 10_000;
+
+    @Test
+    void readsOutputOfSuccessfulProcess() throws IOException {
+        SupervisedProcess process = start("printf 'video bytes'", TIMEOUT_MILLIS);
+
+        try (InputStream output = process.getOutput()) {
+            assertEquals("video bytes", new String(output.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void failsEndOfOutputWithStandardErrorOfFailedProcess() throws IOException {
+        SupervisedProcess process = start("printf 'partial'; echo 'ERROR: video unavailable' >&2; exit 3", TIMEOUT_MILLIS);
+
+        try (InputStream output = process.getOutput()) {
+            IOException e = assertThrows(IOException.class, output::readAllBytes);
+            assertTrue(e.getMessage().contains("exited with code 3"), e.getMessage());
+            assertTrue(e.getMessage().contains("ERROR: video unavailable"), e.getMessage());
+        }
+    }
+
+    @Test
+    void drainsChattyStandardError() throws IOException {
+        // Far more than a pipe buffer, which would block the process if nobody read it
+        SupervisedProcess process = start("head -c 4000000 /dev/zero | tr '\\0' 'x' >&2; printf 'done'", TIMEOUT_MILLIS);
+
+        try (InputStream output = process.getOutput()) {
+            assertEquals("done", new String(output.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void killsProcessAtDeadline() throws IOException {
+        SupervisedProcess process = start("sleep 30", 200);
+
+        try (InputStream output = process.getOutput()) {
+            IOException e = assertThrows(IOException.class, output::readAllBytes);
+            assertTrue(e.getMessage().contains("killed after running for 200 ms"), e.getMessage());
+        }
+    }
+
+    @Test
+    void killsProcessTreeWhenOutputIsClosedEarly() throws Exception {
+        SupervisedProcess process = start("sleep 30 & echo $!; wait", TIMEOUT_MILLIS);
+
+        InputStream output = process.getOutput();
+        long childPid = Long.parseLong(new BufferedReader(new InputStreamReader(output, StandardCharsets.UTF_8))
+                .readLine().trim());
+        output.close();
+
+        process.onExit().get(5, TimeUnit.SECONDS);
+        ProcessHandle child = ProcessHandle.of(childPid).orElse(null);
+        if (child != null) {
+            child.onExit().get(5, TimeUnit.SECONDS);
+        }
+        assertFalse(child != null && child.isAlive());
+    }
+
+    private static SupervisedProcess start(String script, long timeoutMillis) throws IOException {
+        return SupervisedProcess.start("test-process", List.of("/bin/sh", "-c", script), timeoutMillis);
+    }
+}